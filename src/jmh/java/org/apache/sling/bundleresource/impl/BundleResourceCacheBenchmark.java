@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the entry and child entry lookups of a {@link BundleResourceCache}
+ * for a {@link SyntheticBundle}, with the entry paths of the lookups drawn from
+ * more entries than the caches hold by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundleResourceCacheBenchmark {
+
+    /**
+     * The number of paths in the lookup sequences.
+     */
+    private static final int SEQUENCE_LENGTH = 4096;
+
+    @Param({"1000", "10000"})
+    public int entries;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"0.2"})
+    public double jsonRatio;
+
+    @Param({"0.8"})
+    public double hitRatio;
+
+    @Param({"false", "true"})
+    public boolean index;
+
+    @Param({"false"})
+    public boolean filter;
+
+    @Param({"count"})
+    public String sizing;
+
+    private BundleResourceCache cache;
+
+    private String[] entryPaths;
+
+    private String[] folderPaths;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final SyntheticBundle bundle = new SyntheticBundle(entries, depth, jsonRatio);
+
+        final Dictionary<String, Object> props = new Hashtable<>(); // NOSONAR
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, index);
+        props.put(BundleResourceConfiguration.PROP_FILTER_ENABLED, filter);
+        props.put(BundleResourceConfiguration.PROP_CACHE_SIZING, sizing);
+        this.cache = new BundleResourceCache(
+                bundle, new BundleResourceConfiguration(props), PathMapping.getRoots(SyntheticBundle.ROOT));
+
+        final Random random = new Random(42);
+        final List<String> files = new ArrayList<>(bundle.getFilePaths());
+        for (final String path : bundle.getJsonResourcePaths()) {
+            files.add(path.concat(".json"));
+        }
+        this.entryPaths = new String[SEQUENCE_LENGTH];
+        for (int i = 0; i < entryPaths.length; i++) {
+            final String path = files.get(random.nextInt(files.size()));
+            entryPaths[i] = random.nextDouble() < hitRatio ? path : path.concat("-missing");
+        }
+
+        final List<String> folders = bundle.getFolderPaths();
+        this.folderPaths = new String[SEQUENCE_LENGTH];
+        for (int i = 0; i < folderPaths.length; i++) {
+            folderPaths[i] = folders.get(random.nextInt(folders.size())).concat("/");
+        }
+    }
+
+    /**
+     * The position of each thread in the lookup sequences.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            // start each thread somewhere else in the sequences
+            position = (int) Thread.currentThread().getId() * 997;
+        }
+
+        int next() {
+            position = (position + 1) % SEQUENCE_LENGTH;
+            return position;
+        }
+    }
+
+    @Benchmark
+    public URL getEntry(final Cursor cursor) {
+        return cache.getEntry(entryPaths[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public URL getEntryConcurrent(final Cursor cursor) {
+        return getEntry(cursor);
+    }
+
+    @Benchmark
+    public List<String> getEntryPaths(final Cursor cursor) {
+        return cache.getEntryPaths(folderPaths[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<String> getEntryPathsConcurrent(final Cursor cursor) {
+        return getEntryPaths(cursor);
+    }
+}
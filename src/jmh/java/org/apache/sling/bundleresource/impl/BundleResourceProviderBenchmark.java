@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.spi.resource.provider.ResolveContext;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures resource lookups and child listings of a
+ * {@link BundleResourceProvider} serving a {@link SyntheticBundle}.
+ * <p>
+ * Each lookup takes the next path of a fixed random sequence mixing folders,
+ * files, JSON resources and their nested child resources with paths which do
+ * not exist according to {@link #hitRatio}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundleResourceProviderBenchmark {
+
+    /**
+     * The number of paths in the lookup sequence.
+     */
+    private static final int SEQUENCE_LENGTH = 4096;
+
+    @Param({"1000", "10000"})
+    public int entries;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"0.2"})
+    public double jsonRatio;
+
+    @Param({"0.8"})
+    public double hitRatio;
+
+    @Param({"false", "true"})
+    public boolean index;
+
+    @Param({"false"})
+    public boolean filter;
+
+    private BundleResourceProvider provider;
+
+    private ResolveContext<Object> context;
+
+    private String[] lookupPaths;
+
+    private Resource[] folders;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final SyntheticBundle bundle = new SyntheticBundle(entries, depth, jsonRatio);
+
+        final Dictionary<String, Object> props = new Hashtable<>(); // NOSONAR
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, index);
+        props.put(BundleResourceConfiguration.PROP_FILTER_ENABLED, filter);
+        final PathMapping[] roots = PathMapping.getRoots(SyntheticBundle.ROOT + ";" + PathMapping.DIR_JSON + ":=json");
+        final BundleResourceCache cache =
+                new BundleResourceCache(bundle, new BundleResourceConfiguration(props), roots);
+        this.provider = new BundleResourceProvider(cache, roots[0]);
+        this.context = new BenchmarkResolveContext();
+
+        final Random random = new Random(42);
+        final List<List<String>> hits = new ArrayList<>();
+        hits.add(bundle.getFolderPaths());
+        hits.add(bundle.getFilePaths());
+        if (!bundle.getJsonResourcePaths().isEmpty()) {
+            hits.add(bundle.getJsonResourcePaths());
+            final List<String> children = new ArrayList<>();
+            for (final String path : bundle.getJsonResourcePaths()) {
+                children.add(path.concat("/child"));
+            }
+            hits.add(children);
+        }
+
+        this.lookupPaths = new String[SEQUENCE_LENGTH];
+        for (int i = 0; i < lookupPaths.length; i++) {
+            final List<String> paths = hits.get(random.nextInt(hits.size()));
+            final String path = paths.get(random.nextInt(paths.size()));
+            lookupPaths[i] = random.nextDouble() < hitRatio ? path : path.concat("-missing");
+        }
+
+        final List<String> folderPaths = bundle.getFolderPaths();
+        this.folders = new Resource[folderPaths.size()];
+        for (int i = 0; i < folders.length; i++) {
+            folders[i] = provider.getResource(context, folderPaths.get(i), null, null);
+        }
+    }
+
+    /**
+     * The position of each thread in the lookup sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            // start each thread somewhere else in the sequence
+            position = (int) Thread.currentThread().getId() * 997;
+        }
+
+        int next(final int length) {
+            position = (position + 1) % length;
+            return position;
+        }
+    }
+
+    @Benchmark
+    public Resource getResource(final Cursor cursor) {
+        return provider.getResource(context, lookupPaths[cursor.next(lookupPaths.length)], null, null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Resource getResourceConcurrent(final Cursor cursor) {
+        return getResource(cursor);
+    }
+
+    @Benchmark
+    public void getResourceProperties(final Cursor cursor, final Blackhole blackhole) {
+        final Resource resource = getResource(cursor);
+        if (resource != null) {
+            blackhole.consume(resource.adaptTo(ValueMap.class));
+            blackhole.consume(resource.getResourceMetadata());
+        }
+    }
+
+    @Benchmark
+    public void listChildren(final Cursor cursor, final Blackhole blackhole) {
+        final Iterator<Resource> children = provider.listChildren(context, folders[cursor.next(folders.length)]);
+        while (children.hasNext()) {
+            blackhole.consume(children.next());
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void listChildrenConcurrent(final Cursor cursor, final Blackhole blackhole) {
+        listChildren(cursor, blackhole);
+    }
+
+    /**
+     * A resolve context without resource resolver, which the provider only
+     * hands to the resources it creates and which is thus never used for a
+     * bulk traversal.
+     */
+    private static class BenchmarkResolveContext implements ResolveContext<Object> {
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return null;
+        }
+
+        @Override
+        public Object getProviderState() {
+            return null;
+        }
+
+        @Override
+        public ResolveContext<?> getParentResolveContext() {
+            return null;
+        }
+
+        @Override
+        public ResourceProvider<?> getParentResourceProvider() {
+            return null;
+        }
+    }
+}
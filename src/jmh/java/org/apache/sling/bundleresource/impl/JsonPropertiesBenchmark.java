@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading JSON properties files with {@link JsonProperties} and
+ * their binary form with {@link BinaryProperties} against reading the object
+ * tree with a {@link JsonReader} and converting it to maps and lists, which is
+ * how the files were read before.
+ * <p>
+ * The files resemble content definitions, with nested objects for child
+ * resources, string, number and boolean properties and arrays of strings and
+ * numbers. Run with the default <code>-prof gc</code> to compare the
+ * allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPropertiesBenchmark {
+
+    private static final int MAX_DEPTH = 3;
+
+    /**
+     * The number of objects in the file.
+     */
+    @Param({"10", "1000"})
+    public int objects;
+
+    /**
+     * The number of properties of each object.
+     */
+    @Param({"20"})
+    public int properties;
+
+    private byte[] json;
+
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder();
+        final int[] remaining = {objects - 1};
+        appendObject(sb, random, remaining, 0);
+        this.json = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProperties.write(JsonProperties.read(new ByteArrayInputStream(json)), json, out);
+        this.binary = out.toByteArray();
+    }
+
+    private void appendObject(final StringBuilder sb, final Random random, final int[] remaining, final int depth) {
+        sb.append('{');
+        for (int i = 0; i < properties; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"property").append(i).append("\":");
+            switch (i % 5) {
+                case 0:
+                    sb.append("\"value ").append(random.nextInt()).append('"');
+                    break;
+                case 1:
+                    sb.append(random.nextInt(100_000));
+                    break;
+                case 2:
+                    sb.append(random.nextBoolean());
+                    break;
+                case 3:
+                    sb.append("[\"tag").append(random.nextInt(100)).append("\",\"tag");
+                    sb.append(random.nextInt(100)).append("\",\"tag").append(random.nextInt(100)).append("\"]");
+                    break;
+                default:
+                    sb.append('[').append(random.nextDouble()).append(',').append(random.nextDouble()).append(']');
+                    break;
+            }
+        }
+        // up to ten children on each of the first levels, which hold more
+        // than the largest number of objects
+        for (int i = 0; depth < MAX_DEPTH && i < 10 && remaining[0] > 0; i++) {
+            remaining[0]--;
+            sb.append(",\"child").append(i).append("\":");
+            appendObject(sb, random, remaining, depth + 1);
+        }
+        sb.append('}');
+    }
+
+    @Benchmark
+    public Map<String, Object> stream() throws IOException {
+        return JsonProperties.read(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public Map<String, Object> binary() throws IOException {
+        // checked against the length of the JSON like when reading the
+        // properties of a bundle
+        return BinaryProperties.read(new ByteArrayInputStream(binary), json.length);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> tree() {
+        try (JsonReader reader = Json.createReader(new ByteArrayInputStream(json))) {
+            return (Map<String, Object>) getValue(reader.readObject());
+        }
+    }
+
+    private static Object getValue(final JsonValue value) {
+        switch (value.getValueType()) {
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case STRING:
+                return ((JsonString) value).getString();
+            case NUMBER:
+                final JsonNumber num = (JsonNumber) value;
+                if (num.isIntegral()) {
+                    return num.longValue();
+                }
+                return num.doubleValue();
+            case ARRAY:
+                final List<Object> array = new ArrayList<>();
+                for (final JsonValue x : ((JsonArray) value)) {
+                    array.add(getValue(x));
+                }
+                return Collections.unmodifiableList(array);
+            case OBJECT:
+                final Map<String, Object> map = new HashMap<>();
+                for (final Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    map.put(entry.getKey(), getValue(entry.getValue()));
+                }
+                return Collections.unmodifiableMap(map);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the time and garbage of mapping resource paths to the entry paths
+ * probed by a resource lookup, with and without an entry root differing from
+ * the resource root. Run with <code>-prof gc</code> to see the bytes
+ * allocated per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathMappingBenchmark {
+
+    @Param({"/libs/bench", "/libs/bench;path:=/SLING-INF/libs/bench"})
+    public String mapping;
+
+    private PathMapping path;
+
+    private String resourcePath;
+
+    private String otherPath;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.path = PathMapping.getRoots(mapping + ";" + PathMapping.DIR_JSON + ":=json")[0];
+        this.resourcePath = "/libs/bench/f1/f2/f3/node7";
+        this.otherPath = "/apps/bench/f1/f2/f3/node7";
+    }
+
+    @Benchmark
+    public boolean isChild() {
+        return path.isChild(resourcePath) | path.isChild(otherPath);
+    }
+
+    /**
+     * The entry paths probed by a lookup of a missing resource: the folder,
+     * the file and the JSON properties file.
+     */
+    @Benchmark
+    public void getEntryPaths(final Blackhole blackhole) {
+        blackhole.consume(path.getEntryPath(resourcePath, "/"));
+        blackhole.consume(path.getEntryPath(resourcePath));
+        blackhole.consume(path.getEntryPath(resourcePath, path.getJSONPropertiesExtension()));
+    }
+
+    @Benchmark
+    public String getResourcePath() {
+        return path.getResourcePath(path.getEntryPath(resourcePath));
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
+
+/**
+ * The <code>SyntheticBundle</code> is an in-memory bundle used by the
+ * benchmarks. Its entries form a folder tree below {@link #ROOT} with the
+ * requested number of files distributed over the leaf folders of the
+ * requested depth. A share of the files are JSON property files, each
+ * describing a resource with a nested child resource.
+ */
+class SyntheticBundle implements Bundle {
+
+    /**
+     * The entry path of the root folder of all entries.
+     */
+    static final String ROOT = "/libs/bench";
+
+    /**
+     * The number of files in each leaf folder.
+     */
+    private static final int FILES_PER_FOLDER = 32;
+
+    private final Map<String, URL> entries = new HashMap<>();
+
+    private final Map<String, List<String>> children = new HashMap<>();
+
+    private final Map<String, byte[]> contents = new HashMap<>();
+
+    private final List<String> folderPaths = new ArrayList<>();
+
+    private final List<String> filePaths = new ArrayList<>();
+
+    private final List<String> jsonResourcePaths = new ArrayList<>();
+
+    private final long lastModified = System.currentTimeMillis();
+
+    private final URLStreamHandler handler = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(final URL u) {
+            return new URLConnection(u) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public int getContentLength() {
+                    final byte[] content = contents.get(url.getPath());
+                    return content == null ? -1 : content.length;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    final byte[] content = contents.get(url.getPath());
+                    if (content == null) {
+                        throw new IOException("Not a file: " + url);
+                    }
+                    return new ByteArrayInputStream(content);
+                }
+            };
+        }
+    };
+
+    /**
+     * Creates the bundle.
+     *
+     * @param entryCount The number of files
+     * @param depth The depth of the folder tree below the root
+     * @param jsonRatio The share of files being JSON property files
+     */
+    SyntheticBundle(final int entryCount, final int depth, final double jsonRatio) {
+        addFolder(ROOT.concat("/"));
+
+        final int leafCount = Math.max(1, (entryCount + FILES_PER_FOLDER - 1) / FILES_PER_FOLDER);
+        final int branching = Math.max(1, (int) Math.ceil(Math.pow(leafCount, 1.0 / Math.max(1, depth))));
+
+        final int jsonEvery = jsonRatio > 0 ? Math.max(1, (int) Math.round(1 / jsonRatio)) : Integer.MAX_VALUE;
+        int files = 0;
+        for (int leaf = 0; leaf < leafCount && files < entryCount; leaf++) {
+            // the digits of the leaf number in base branching form the folder path
+            final StringBuilder folder = new StringBuilder(ROOT).append('/');
+            int rest = leaf;
+            for (int level = 0; level < depth; level++) {
+                folder.append("f").append(rest % branching).append('/');
+                rest /= branching;
+                addFolder(folder.toString());
+            }
+
+            for (int i = 0; i < FILES_PER_FOLDER && files < entryCount; i++, files++) {
+                if (files % jsonEvery == 0) {
+                    final String name = "node" + i;
+                    addFile(
+                            folder + name + ".json",
+                            "{\"sling:resourceType\":\"bench/node\",\"title\":\"Node " + i
+                                    + "\",\"rank\":" + i + ",\"tags\":[\"a\",\"b\",\"c\"],"
+                                    + "\"child\":{\"sling:resourceType\":\"bench/child\",\"enabled\":true}}");
+                    jsonResourcePaths.add(folder + name);
+                } else {
+                    final String path = folder + "file" + i + ".html";
+                    addFile(path, "<p>Content of " + path + "</p>");
+                    filePaths.add(path);
+                }
+            }
+        }
+    }
+
+    private void addFolder(final String path) {
+        if (entries.containsKey(path)) {
+            return;
+        }
+        entries.put(path, createURL(path));
+        folderPaths.add(path.substring(0, path.length() - 1));
+        addToParent(path);
+    }
+
+    private void addFile(final String path, final String content) {
+        entries.put(path, createURL(path));
+        contents.put(path, content.getBytes(StandardCharsets.UTF_8));
+        addToParent(path);
+    }
+
+    private void addToParent(final String path) {
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        final int slash = path.lastIndexOf('/', end - 1);
+        if (slash > 0) {
+            // like Apache Felix, return entry paths without leading slash
+            children.computeIfAbsent(path.substring(0, slash + 1), k -> new ArrayList<>())
+                    .add(path.substring(1));
+        }
+    }
+
+    private URL createURL(final String path) {
+        try {
+            return new URL("bundle", "synthetic", -1, path, handler);
+        } catch (final MalformedURLException mue) {
+            throw new IllegalStateException(mue);
+        }
+    }
+
+    /**
+     * Returns the paths of all folders without trailing slash.
+     */
+    List<String> getFolderPaths() {
+        return folderPaths;
+    }
+
+    /**
+     * Returns the paths of all files which are not JSON property files.
+     */
+    List<String> getFilePaths() {
+        return filePaths;
+    }
+
+    /**
+     * Returns the paths of the resources defined by JSON property files, which
+     * are the file paths without the extension.
+     */
+    List<String> getJsonResourcePaths() {
+        return jsonResourcePaths;
+    }
+
+    // ---------- Bundle
+
+    @Override
+    public URL getEntry(final String path) {
+        return entries.get(path);
+    }
+
+    @Override
+    public Enumeration<String> getEntryPaths(final String path) {
+        final List<String> list = children.get(path);
+        return list == null ? null : Collections.enumeration(list);
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public int getState() {
+        return ACTIVE;
+    }
+
+    @Override
+    public Dictionary<String, String> getHeaders() {
+        final Dictionary<String, String> headers = new Hashtable<>(); // NOSONAR
+        headers.put(Activator.BUNDLE_RESOURCE_ROOTS, ROOT);
+        return headers;
+    }
+
+    @Override
+    public Dictionary<String, String> getHeaders(final String locale) {
+        return getHeaders();
+    }
+
+    @Override
+    public long getBundleId() {
+        return 1;
+    }
+
+    @Override
+    public String getLocation() {
+        return "synthetic:" + ROOT;
+    }
+
+    @Override
+    public String getSymbolicName() {
+        return "org.apache.sling.bundleresource.synthetic";
+    }
+
+    @Override
+    public Version getVersion() {
+        return Version.emptyVersion;
+    }
+
+    @Override
+    public void start(final int options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void start() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void stop(final int options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void stop() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void update(final InputStream input) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void update() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void uninstall() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ServiceReference<?>[] getRegisteredServices() {
+        return null;
+    }
+
+    @Override
+    public ServiceReference<?>[] getServicesInUse() {
+        return null;
+    }
+
+    @Override
+    public boolean hasPermission(final Object permission) {
+        return true;
+    }
+
+    @Override
+    public URL getResource(final String name) {
+        return null;
+    }
+
+    @Override
+    public Class<?> loadClass(final String name) throws ClassNotFoundException {
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(final String name) {
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findEntries(final String path, final String filePattern, final boolean recurse) {
+        return null;
+    }
+
+    @Override
+    public BundleContext getBundleContext() {
+        return null;
+    }
+
+    @Override
+    public Map<X509Certificate, List<X509Certificate>> getSignerCertificates(final int signersType) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public <A> A adapt(final Class<A> type) {
+        return null;
+    }
+
+    @Override
+    public File getDataFile(final String filename) {
+        return null;
+    }
+
+    @Override
+    public int compareTo(final Bundle o) {
+        return Long.compare(getBundleId(), o.getBundleId());
+    }
+}
@@ -18,8 +18,20 @@
  */
 package org.apache.sling.bundleresource.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.annotation.bundle.Header;
 import org.osgi.framework.Bundle;
@@ -28,6 +40,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,24 +58,99 @@ public class Activator implements BundleActivator, BundleListener {
 
     private final Map<Long, BundleResourceProvider[]> bundleResourceProviderMap = new HashMap<>();
 
+    /** The global configuration applied to new and existing caches */
+    private volatile BundleResourceConfiguration configuration = BundleResourceConfiguration.DEFAULT;
+
+    /** The configuration properties set as framework properties */
+    private Dictionary<String, Object> frameworkProperties = new Hashtable<>(); // NOSONAR
+
+    /** The registration of the managed service or null without Configuration Admin */
+    private ServiceRegistration<?> configurationRegistration;
+
+    /** The pool shared by the caches of all bundles or null if not enabled */
+    private volatile CachePool cachePool;
+
+    /** The sizer adapting the cache limits or null if not enabled */
+    private AdaptiveCacheSizer adaptiveCacheSizer;
+
+    /** The thread registering the providers in the background or null */
+    private Thread registrationThread;
+
+    /** Whether this bundle is stopped, such that no providers are added */
+    private boolean stopped;
+
     /**
      * @see org.osgi.framework.BundleActivator#start(org.osgi.framework.BundleContext)
      */
     @Override
     public void start(final BundleContext context) throws Exception {
+        this.frameworkProperties = BundleResourceConfiguration.getFrameworkProperties(context);
+        this.configuration = new BundleResourceConfiguration(this.frameworkProperties);
+        this.cachePool = createCachePool(this.configuration);
+        synchronized (this) {
+            this.stopped = false;
+        }
+
+        if (BundleResourceManagedService.isAvailable()) {
+            configurationRegistration = BundleResourceManagedService.register(context, this);
+        } else {
+            log.info("start: Configuration Admin is not available, using the framework properties only");
+        }
+
+        // track the services deciding whether the resolver may be bypassed
+        // before the providers are registered
+        ResolverBypass.open(context);
+
         context.addBundleListener(this);
 
-        final Bundle[] bundles = context.getBundles();
-        for (final Bundle bundle : bundles) {
+        final long start = System.nanoTime();
+        final List<Bundle> bundles = new ArrayList<>();
+        for (final Bundle bundle : context.getBundles()) {
             if (bundle.getState() == Bundle.ACTIVE) {
-                // add bundle resource provider for active bundles
+                bundles.add(bundle);
+            }
+        }
+
+        // add bundle resource provider for active bundles
+        final BundleResourceConfiguration config = this.configuration;
+        if (config.isAsyncRegistration() && bundles.size() > 1) {
+            // the providers are registered after this bundle has started
+            final int threads = config.getRegistrationThreads();
+            registrationThread = new Thread(
+                    () -> {
+                        addBundleResourceProviders(bundles, threads);
+                        logRegistration(bundles, start, "prepared by " + threads + " threads");
+                    },
+                    "Sling Bundle Resource Provider Registration");
+            registrationThread.setDaemon(true);
+            registrationThread.start();
+        } else {
+            for (final Bundle bundle : bundles) {
                 addBundleResourceProvider(bundle);
             }
+            logRegistration(bundles, start, "sequential");
+        }
+
+        synchronized (this) {
+            updateAdaptiveCacheSizer(this.configuration);
         }
 
         BundleResourceWebConsolePlugin.initPlugin(context);
     }
 
+    private void logRegistration(final List<Bundle> bundles, final long start, final String mode) {
+        final int count;
+        synchronized (this) {
+            count = this.bundleResourceProviderMap.size();
+        }
+        log.info(
+                "start: Registered bundle resource providers for {} of {} active bundles in {}ms ({})",
+                count,
+                bundles.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                mode);
+    }
+
     /**
      * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
      */
@@ -70,8 +158,40 @@ public class Activator implements BundleActivator, BundleListener {
     public void stop(final BundleContext context) throws Exception {
         BundleResourceWebConsolePlugin.destroyPlugin();
 
+        // the providers not registered yet are not added anymore
+        synchronized (this) {
+            this.stopped = true;
+        }
+        if (registrationThread != null) {
+            registrationThread.interrupt();
+            registrationThread.join();
+            registrationThread = null;
+        }
+
+        if (configurationRegistration != null) {
+            try {
+                configurationRegistration.unregister();
+            } catch (final IllegalStateException ise) {
+                // might happen on shutdown
+            }
+            configurationRegistration = null;
+        }
+
+        synchronized (this) {
+            updateAdaptiveCacheSizer(null);
+        }
+
         context.removeBundleListener(this);
-        for (final BundleResourceProvider[] providers : this.bundleResourceProviderMap.values()) {
+        ResolverBypass.close();
+        final List<BundleResourceProvider[]> registered;
+        synchronized (this) {
+            registered = new ArrayList<>(this.bundleResourceProviderMap.values());
+            this.bundleResourceProviderMap.clear();
+        }
+        for (final BundleResourceProvider[] providers : registered) {
+            if (providers.length > 0) {
+                providers[0].getBundleResourceCache().close();
+            }
             for (final BundleResourceProvider p : providers) {
                 try {
                     p.unregisterService();
@@ -80,7 +200,6 @@ public class Activator implements BundleActivator, BundleListener {
                 }
             }
         }
-        this.bundleResourceProviderMap.clear();
     }
 
     /**
@@ -103,51 +222,261 @@ public class Activator implements BundleActivator, BundleListener {
         }
     }
 
+    /**
+     * Applies the configuration to the caches of all registered providers and
+     * keeps it for providers registered later. The configuration is provided
+     * by the {@link BundleResourceManagedService} if Configuration Admin is
+     * available.
+     *
+     * @param properties The configuration properties or <code>null</code> if
+     *            the configuration has been deleted.
+     */
+    void updated(final Dictionary<String, ?> properties) {
+        // framework properties are the defaults for missing properties
+        final Dictionary<String, Object> props = new Hashtable<>(); // NOSONAR
+        for (final Enumeration<String> keys = frameworkProperties.keys(); keys.hasMoreElements(); ) {
+            final String key = keys.nextElement();
+            props.put(key, frameworkProperties.get(key));
+        }
+        if (properties != null) {
+            for (final Enumeration<String> keys = properties.keys(); keys.hasMoreElements(); ) {
+                final String key = keys.nextElement();
+                props.put(key, properties.get(key));
+            }
+        }
+
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+        log.debug("updated: Applying {}", config);
+        // the caches are recreated anyway, so is the pool
+        final CachePool pool = createCachePool(config);
+        final Collection<BundleResourceCache> caches;
+        synchronized (this) {
+            this.configuration = config;
+            this.cachePool = pool;
+            caches = getBundleResourceCaches();
+            updateAdaptiveCacheSizer(config);
+        }
+        // configuring may build indexes and filters, which must not block
+        // bundle events, providers added meanwhile use the new configuration
+        for (final BundleResourceCache cache : caches) {
+            cache.configure(config, pool);
+        }
+        // the caches of bundles removed meanwhile must not take up the pool
+        final Collection<BundleResourceCache> removed = new ArrayList<>(caches);
+        removed.removeAll(getBundleResourceCaches());
+        for (final BundleResourceCache cache : removed) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Restarts the adaptive cache sizing with the configuration or stops it
+     * if the configuration is <code>null</code> or does not enable it. As the
+     * limit of the pool shared by all bundles is not adapted, adaptive sizing
+     * is not started if the configuration defines a global cache limit. This
+     * is only called while synchronized on this instance.
+     */
+    private void updateAdaptiveCacheSizer(final BundleResourceConfiguration config) {
+        if (adaptiveCacheSizer != null) {
+            adaptiveCacheSizer.stop();
+            adaptiveCacheSizer = null;
+        }
+        if (config != null && config.isAdaptiveSizing() && config.getGlobalCacheLimit() > 0) {
+            log.warn(
+                    "Ignoring {} as {} is set, the limit of the shared cache pool is not adapted",
+                    BundleResourceConfiguration.PROP_ADAPTIVE_ENABLED,
+                    BundleResourceConfiguration.PROP_GLOBAL_CACHE_LIMIT);
+        } else if (config != null && config.isAdaptiveSizing()) {
+            adaptiveCacheSizer = new AdaptiveCacheSizer(config, this::getBundleResourceCaches);
+            adaptiveCacheSizer.start();
+        }
+    }
+
+    /**
+     * Returns the pool shared by the caches of all bundles if the
+     * configuration defines a global cache limit, otherwise <code>null</code>.
+     */
+    private static CachePool createCachePool(final BundleResourceConfiguration config) {
+        return (config.getGlobalCacheLimit() > 0) ? new CachePool(config.getGlobalCacheLimit()) : null;
+    }
+
+    /**
+     * Returns the caches of all bundles with registered providers.
+     */
+    private synchronized Collection<BundleResourceCache> getBundleResourceCaches() {
+        final List<BundleResourceCache> caches = new ArrayList<>();
+        for (final BundleResourceProvider[] providers : this.bundleResourceProviderMap.values()) {
+            // all providers of a bundle share the same cache
+            if (providers.length > 0) {
+                caches.add(providers[0].getBundleResourceCache());
+            }
+        }
+        return caches;
+    }
+
     // ---------- Bundle provided resources -----------------------------------
 
+    /**
+     * Adds the bundle resource providers for the bundle. The providers are
+     * created, which includes building the index of the cache, without
+     * holding the lock, such that bundle events are not blocked meanwhile.
+     */
     private void addBundleResourceProvider(final Bundle bundle) {
-        BundleResourceProvider[] providers = null;
         try {
             synchronized (this) {
                 // on startup we might get here twice for a bundle (listener and activator)
                 if (bundleResourceProviderMap.get(bundle.getBundleId()) != null) {
                     return;
                 }
-                final String prefixes = bundle.getHeaders().get(BUNDLE_RESOURCE_ROOTS);
-                if (prefixes != null) {
-                    log.debug(
-                            "addBundleResourceProvider: Registering resources '{}' for bundle {}:{} ({}) as service ",
-                            prefixes,
-                            bundle.getSymbolicName(),
-                            bundle.getVersion(),
-                            bundle.getBundleId());
-
-                    final PathMapping[] roots = PathMapping.getRoots(prefixes);
-                    providers = new BundleResourceProvider[roots.length];
-
-                    int index = 0;
-                    final BundleResourceCache cache = new BundleResourceCache(bundle);
-                    for (final PathMapping path : roots) {
-                        final BundleResourceProvider brp = new BundleResourceProvider(cache, path);
-                        providers[index] = brp;
-
-                        index++;
+            }
+            addBundleResourceProvider(bundle, createBundleResourceProviders(bundle));
+        } catch (final Throwable t) { // NOSONAR
+            logRegistrationProblem(bundle, t);
+        }
+    }
+
+    /**
+     * Adds the bundle resource providers for the bundles, preparing the
+     * providers of each bundle in parallel, which includes parsing the header,
+     * creating the cache and building its index. The providers are still
+     * registered sequentially in the order of the bundles by the calling
+     * thread, which stops when interrupted by stopping this bundle.
+     */
+    private void addBundleResourceProviders(final List<Bundle> bundles, final int threads) {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, bundles.size()), r -> {
+            final Thread thread =
+                    new Thread(r, "Sling Bundle Resource Provider Preparation #" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<BundleResourceProvider[]>> prepared = new ArrayList<>();
+            for (final Bundle bundle : bundles) {
+                prepared.add(executor.submit(() -> createBundleResourceProviders(bundle)));
+            }
+
+            for (int i = 0; i < bundles.size(); i++) {
+                final Bundle bundle = bundles.get(i);
+                try {
+                    addBundleResourceProvider(bundle, prepared.get(i).get());
+                } catch (final ExecutionException ee) {
+                    logRegistrationProblem(bundle, ee.getCause());
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds and registers the prepared providers for the bundle unless
+     * providers have been added for the bundle in the meantime, for example by
+     * a bundle event, the bundle is no longer active or this bundle is
+     * stopped. Only adding the providers holds the lock, such that neither
+     * configuring the cache nor the service listeners called while registering
+     * block bundle events. Providers removed while being registered are
+     * unregistered again.
+     */
+    private void addBundleResourceProvider(final Bundle bundle, final BundleResourceProvider[] providers) {
+        if (providers == null) {
+            return;
+        }
+        try {
+            // all providers of a bundle share the same cache
+            final BundleResourceCache cache = providers.length > 0 ? providers[0].getBundleResourceCache() : null;
+            while (true) {
+                final BundleResourceConfiguration config;
+                final CachePool pool;
+                synchronized (this) {
+                    if (stopped
+                            || bundleResourceProviderMap.containsKey(bundle.getBundleId())
+                            || bundle.getState() != Bundle.ACTIVE) {
+                        // return the share of the unused cache in the pool
+                        if (cache != null) {
+                            cache.close();
+                        }
+                        return;
+                    }
+                    config = this.configuration;
+                    pool = this.cachePool;
+                    // updates after adding the providers reconfigure the cache
+                    if (cache == null || (cache.getConfiguration() == config && cache.getCachePool() == pool)) {
+                        bundleResourceProviderMap.put(bundle.getBundleId(), providers);
+                        break;
                     }
-                    bundleResourceProviderMap.put(bundle.getBundleId(), providers);
                 }
+                // the configuration has been updated while preparing
+                cache.configure(config, pool);
+            }
+
+            registerBundleResourceProviders(providers);
+
+            final boolean removed;
+            synchronized (this) {
+                removed = bundleResourceProviderMap.get(bundle.getBundleId()) != providers;
             }
-            if (providers != null) {
+            if (removed) {
                 for (final BundleResourceProvider provider : providers) {
-                    final long id = provider.registerService();
-                    log.debug("addBundleResourceProvider: Service ID = {}", id);
+                    provider.unregisterService();
                 }
             }
         } catch (final Throwable t) { // NOSONAR
-            log.error(
-                    "activate: Problem while registering bundle resources for bundle " + bundle.getSymbolicName() + ":"
-                            + bundle.getVersion() + " (" + bundle.getBundleId() + ")",
-                    t);
+            logRegistrationProblem(bundle, t);
+        }
+    }
+
+    /**
+     * Creates the providers for the roots declared by the bundle, which all
+     * share a single cache.
+     *
+     * @return The providers or <code>null</code> if the bundle does not
+     *         provide resources
+     */
+    private BundleResourceProvider[] createBundleResourceProviders(final Bundle bundle) {
+        final String prefixes = bundle.getHeaders().get(BUNDLE_RESOURCE_ROOTS);
+        if (prefixes == null) {
+            return null;
+        }
+
+        log.debug(
+                "addBundleResourceProvider: Registering resources '{}' for bundle {}:{} ({}) as service ",
+                prefixes,
+                bundle.getSymbolicName(),
+                bundle.getVersion(),
+                bundle.getBundleId());
+
+        final PathMapping[] roots = PathMapping.getRoots(prefixes);
+        final BundleResourceProvider[] providers = new BundleResourceProvider[roots.length];
+
+        int index = 0;
+        final BundleResourceCache cache = new BundleResourceCache(bundle, this.configuration, roots, this.cachePool);
+        for (final PathMapping path : roots) {
+            final BundleResourceProvider brp = new BundleResourceProvider(cache, path);
+            providers[index] = brp;
+
+            index++;
         }
+        return providers;
+    }
+
+    private void registerBundleResourceProviders(final BundleResourceProvider[] providers) {
+        if (providers != null) {
+            for (final BundleResourceProvider provider : providers) {
+                final long id = provider.registerService();
+                log.debug("addBundleResourceProvider: Service ID = {}", id);
+            }
+        }
+    }
+
+    private void logRegistrationProblem(final Bundle bundle, final Throwable t) {
+        log.error(
+                "activate: Problem while registering bundle resources for bundle " + bundle.getSymbolicName() + ":"
+                        + bundle.getVersion() + " (" + bundle.getBundleId() + ")",
+                t);
     }
 
     private void removeBundleResourceProvider(final Bundle bundle) {
@@ -168,6 +497,10 @@ public class Activator implements BundleActivator, BundleListener {
                     // might happen on shutdown
                 }
             }
+            // return the share of the bundle in the shared cache pool
+            if (brp.length > 0) {
+                brp[0].getBundleResourceCache().close();
+            }
         }
     }
 }
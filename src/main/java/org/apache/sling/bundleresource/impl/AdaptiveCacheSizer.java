@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AdaptiveCacheSizer</code> periodically adapts the limits of the
+ * caches of all bundles to their use, see
+ * {@link BundleResourceCache#adaptLimits(boolean, boolean)}. The limits of
+ * caches of busy bundles are raised while the heap usage is below the
+ * configured threshold, the limits of idle bundles are lowered.
+ * <p>
+ * To react on heap pressure, the sizer sets the collection usage threshold
+ * of the heap memory pools to the configured percentage, unless a threshold
+ * has already been set by someone else, and listens to the notifications of
+ * the <code>MemoryMXBean</code>. Once the heap still exceeds the threshold
+ * after a garbage collection, the limits of all caches are lowered at once.
+ */
+class AdaptiveCacheSizer implements NotificationListener {
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BundleResourceConfiguration configuration;
+
+    private final Supplier<Collection<BundleResourceCache>> caches;
+
+    private final MemoryMXBean memory;
+
+    private final List<MemoryPoolMXBean> pools;
+
+    /**
+     * The pools whose collection usage threshold has been set by this sizer.
+     */
+    private final List<MemoryPoolMXBean> thresholdPools = new ArrayList<>();
+
+    /**
+     * Whether the heap has exceeded the threshold since the last adaptation.
+     */
+    private final AtomicBoolean pressure = new AtomicBoolean();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a sizer for the caches of the JVM heap.
+     *
+     * @param configuration The configuration defining the interval and the
+     *            heap threshold
+     * @param caches Provides the caches of all bundles
+     */
+    AdaptiveCacheSizer(
+            final BundleResourceConfiguration configuration, final Supplier<Collection<BundleResourceCache>> caches) {
+        this(configuration, caches, ManagementFactory.getMemoryMXBean(), ManagementFactory.getMemoryPoolMXBeans());
+    }
+
+    AdaptiveCacheSizer(
+            final BundleResourceConfiguration configuration,
+            final Supplier<Collection<BundleResourceCache>> caches,
+            final MemoryMXBean memory,
+            final List<MemoryPoolMXBean> pools) {
+        this.configuration = configuration;
+        this.caches = caches;
+        this.memory = memory;
+        this.pools = pools;
+    }
+
+    /**
+     * Starts listening to heap pressure and adapting the cache limits.
+     */
+    synchronized void start() {
+        final int threshold = configuration.getAdaptiveHeapThreshold();
+        for (final MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isCollectionUsageThresholdSupported()
+                    && pool.getCollectionUsageThreshold() == 0) {
+                final long max = pool.getUsage().getMax();
+                if (max > 0) {
+                    pool.setCollectionUsageThreshold(max / 100 * threshold);
+                    thresholdPools.add(pool);
+                }
+            }
+        }
+        if (memory instanceof NotificationEmitter emitter) {
+            emitter.addNotificationListener(this, null, null);
+        }
+
+        final int interval = configuration.getAdaptiveInterval();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "Sling Bundle Resource Cache Sizing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::adapt, interval, interval, TimeUnit.SECONDS);
+        log.debug("start: Adapting the cache limits every {}s, heap threshold {}%", interval, threshold);
+    }
+
+    /**
+     * Stops adapting the cache limits. The limits are kept as they are until
+     * the caches are configured again.
+     */
+    synchronized void stop() {
+        if (memory instanceof NotificationEmitter emitter) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (final ListenerNotFoundException lnfe) {
+                // not started
+            }
+        }
+        for (final MemoryPoolMXBean pool : thresholdPools) {
+            // zero disables the threshold again
+            pool.setCollectionUsageThreshold(0);
+        }
+        thresholdPools.clear();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Lowers the cache limits right away once the heap exceeds the threshold
+     * after a garbage collection.
+     */
+    @Override
+    public void handleNotification(final Notification notification, final Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            pressure.set(true);
+            final ScheduledExecutorService current;
+            synchronized (this) {
+                current = executor;
+            }
+            if (current != null) {
+                try {
+                    current.execute(this::adapt);
+                } catch (final RejectedExecutionException ree) {
+                    // stopped in the meantime
+                }
+            }
+        }
+    }
+
+    /**
+     * Adapts the limits of the caches of all bundles.
+     */
+    void adapt() {
+        try {
+            final boolean heapPressure = pressure.getAndSet(false);
+            final boolean heapAvailable = !heapPressure && isHeapAvailable();
+            for (final BundleResourceCache cache : caches.get()) {
+                cache.adaptLimits(heapPressure, heapAvailable);
+            }
+        } catch (final RuntimeException re) {
+            // keep the schedule, which an exception would cancel
+            log.warn("adapt: Failed to adapt the cache limits", re);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the heap usage is below the threshold.
+     */
+    private boolean isHeapAvailable() {
+        final MemoryUsage heap = memory.getHeapMemoryUsage();
+        final long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return heap.getUsed() < max / 100 * configuration.getAdaptiveHeapThreshold();
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The <code>BinaryProperties</code> class reads and writes the binary form of
+ * JSON properties files, which may be precompiled when building a bundle by
+ * the <code>BinaryPropertiesCompiler</code> build tool. The binary form of a JSON properties file
+ * is the entry {@link #getEntryPath(String)}, outside of the resource tree of
+ * the bundle, and is preferred over the JSON properties file if present. The
+ * binary form starts with the length and the CRC-32 checksum of the JSON
+ * properties file it has been compiled from. The checksum is compared by the
+ * build tool, which compiles the binary form again if the JSON properties file
+ * has changed, see {@link #isCompiledFrom(InputStream, byte[])}. At runtime
+ * only the length is compared with the length of the entry of the JSON
+ * properties file, such that the JSON properties file is not read, see
+ * {@link #read(InputStream, long)}.
+ * <p>
+ * The binary form holds a table of all distinct strings of the file, keys
+ * and values alike, followed by the outermost object. Each value is encoded
+ * as a type tag followed by its length-prefixed, fixed size data, such that
+ * reading the file only copies the values and decodes each string once. The
+ * properties read are the same as read by {@link JsonProperties}, including
+ * the path index of the nested objects and the typed arrays.
+ */
+final class BinaryProperties {
+
+    /**
+     * The folder of the binary forms of the JSON properties files, below which
+     * each has the entry path of its JSON properties file with
+     * {@link #EXTENSION} appended.
+     */
+    static final String ROOT = "/META-INF/bundleresource";
+
+    /**
+     * The extension appended to the entry path of the binary form.
+     */
+    static final String EXTENSION = ".bin";
+
+    /** The first bytes of the binary form, being "SBRP" */
+    private static final int MAGIC = 0x53425250;
+
+    /** The version of the binary form, to be increased on any change */
+    private static final byte VERSION = 3;
+
+    private static final byte NULL = 0;
+
+    private static final byte FALSE = 1;
+
+    private static final byte TRUE = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte STRING = 5;
+
+    private static final byte OBJECT = 6;
+
+    private static final byte LIST = 7;
+
+    private static final byte STRING_ARRAY = 8;
+
+    private static final byte LONG_ARRAY = 9;
+
+    private static final byte DOUBLE_ARRAY = 10;
+
+    private static final byte BOOLEAN_ARRAY = 11;
+
+    private BinaryProperties() {
+        // static methods only
+    }
+
+    /**
+     * Returns the entry path of the binary form of the JSON properties file
+     * at the given entry path.
+     */
+    static String getEntryPath(final String jsonEntryPath) {
+        return ROOT.concat(jsonEntryPath).concat(EXTENSION);
+    }
+
+    /**
+     * Reads the binary form of a JSON properties file from the stream, which
+     * is closed afterwards, without checking the JSON properties file it has
+     * been compiled from.
+     *
+     * @param stream The stream providing the binary form
+     * @return The unmodifiable map of the properties of the outermost object
+     * @throws IOException If the stream cannot be read or does not provide
+     *             the binary form of this version
+     */
+    static JsonPropertiesMap read(final InputStream stream) throws IOException {
+        return read(stream, -1, false);
+    }
+
+    /**
+     * Reads the binary form of a JSON properties file from the stream, which
+     * is closed afterwards, if it has been compiled from a JSON properties
+     * file of the given length. Changes of the JSON properties file keeping
+     * its length are not detected, which is left to the build tool. If the
+     * length is not known, the binary form is taken to be stale as it cannot
+     * be checked at all.
+     *
+     * @param stream The stream providing the binary form
+     * @param jsonLength The length of the JSON properties file or a negative
+     *            value if it is not known
+     * @return The unmodifiable map of the properties of the outermost object
+     *         or <code>null</code> if the binary form is stale, having been
+     *         compiled from a JSON properties file of another or an unknown
+     *         length
+     * @throws IOException If the stream cannot be read or does not provide
+     *             the binary form of this version
+     */
+    static JsonPropertiesMap read(final InputStream stream, final long jsonLength) throws IOException {
+        return read(stream, jsonLength, true);
+    }
+
+    private static JsonPropertiesMap read(final InputStream stream, final long jsonLength, final boolean checkLength)
+            throws IOException {
+        final ByteBuffer buffer;
+        try (InputStream in = stream) {
+            if (checkLength && jsonLength < 0) {
+                return null;
+            }
+            buffer = ByteBuffer.wrap(in.readAllBytes());
+        }
+        try {
+            readHeader(buffer);
+            final int compiledLength = buffer.getInt();
+            if (checkLength && compiledLength != jsonLength) {
+                return null;
+            }
+            // the checksum is only compared by the build tool
+            buffer.getInt();
+            final String[] strings = new String[getCount(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                final int length = getCount(buffer);
+                strings[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            if (buffer.get() != OBJECT) {
+                throw new IOException("Binary properties must be an object");
+            }
+            return readObject(buffer, strings, new JsonPropertiesMap.Builder());
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt binary properties file", e);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the binary form provided by the stream,
+     * which is closed afterwards, is of this version and has been compiled
+     * from the given contents of the JSON properties file.
+     *
+     * @param stream The stream providing the binary form
+     * @param json The contents of the JSON properties file
+     * @throws IOException If the stream cannot be read
+     */
+    static boolean isCompiledFrom(final InputStream stream, final byte[] json) throws IOException {
+        // only the header is read
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 3 + 1);
+        try (InputStream in = stream) {
+            final int length = in.readNBytes(buffer.array(), 0, buffer.capacity());
+            buffer.limit(length);
+        }
+        try {
+            readHeader(buffer);
+            return buffer.getInt() == json.length && buffer.getInt() == checksum(json);
+        } catch (final BufferUnderflowException | IOException e) {
+            return false;
+        }
+    }
+
+    private static void readHeader(final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            throw new IOException("Not a binary properties file of version " + VERSION);
+        }
+    }
+
+    private static int getCount(final ByteBuffer buffer) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IOException("Invalid length " + count + " in binary properties file");
+        }
+        return count;
+    }
+
+    private static JsonPropertiesMap readObject(
+            final ByteBuffer buffer, final String[] strings, final JsonPropertiesMap.Builder builder)
+            throws IOException {
+        final int size = getCount(buffer);
+        for (int i = 0; i < size; i++) {
+            final String name = strings[buffer.getInt()];
+            final byte type = buffer.get();
+            if (type == OBJECT) {
+                builder.put(name, readObject(buffer, strings, builder.child(name)));
+            } else {
+                builder.put(name, readValue(buffer, strings, type));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Object readValue(final ByteBuffer buffer, final String[] strings, final byte type)
+            throws IOException {
+        switch (type) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case STRING:
+                return strings[buffer.getInt()];
+            case OBJECT:
+                // not a child resource, thus not part of the file index
+                return readObject(buffer, strings, new JsonPropertiesMap.Builder());
+            case LIST:
+                final Object[] values = new Object[getCount(buffer)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readValue(buffer, strings, buffer.get());
+                }
+                return Collections.unmodifiableList(Arrays.asList(values));
+            case STRING_ARRAY:
+                final String[] stringArray = new String[getCount(buffer)];
+                for (int i = 0; i < stringArray.length; i++) {
+                    stringArray[i] = strings[buffer.getInt()];
+                }
+                return stringArray;
+            case LONG_ARRAY:
+                final long[] longArray = new long[getCount(buffer)];
+                buffer.asLongBuffer().get(longArray);
+                buffer.position(buffer.position() + longArray.length * Long.BYTES);
+                return longArray;
+            case DOUBLE_ARRAY:
+                final double[] doubleArray = new double[getCount(buffer)];
+                buffer.asDoubleBuffer().get(doubleArray);
+                buffer.position(buffer.position() + doubleArray.length * Double.BYTES);
+                return doubleArray;
+            case BOOLEAN_ARRAY:
+                final boolean[] booleanArray = new boolean[getCount(buffer)];
+                for (int i = 0; i < booleanArray.length; i++) {
+                    booleanArray[i] = buffer.get() != 0;
+                }
+                return booleanArray;
+            default:
+                throw new IOException("Unknown type " + type + " in binary properties file");
+        }
+    }
+
+    /**
+     * Writes the binary form of the properties to the stream, which is left
+     * open.
+     *
+     * @param properties The properties of the outermost object, as read by
+     *            {@link JsonProperties#read(InputStream)}
+     * @param json The contents of the JSON properties file the properties
+     *            have been read from
+     * @param stream The stream to write to
+     * @throws IOException If writing to the stream fails
+     * @throws IllegalArgumentException If a value is of a type not read from
+     *             JSON
+     */
+    static void write(final Map<String, Object> properties, final byte[] json, final OutputStream stream)
+            throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        collectStrings(properties, strings);
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(json.length);
+        out.writeInt(checksum(json));
+        out.writeInt(strings.size());
+        for (final String string : strings.keySet()) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        writeValue(out, properties, strings);
+        out.flush();
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the contents of a JSON properties file.
+     */
+    private static int checksum(final byte[] json) {
+        final CRC32 crc = new CRC32();
+        crc.update(json);
+        return (int) crc.getValue();
+    }
+
+    private static void collectStrings(final Object value, final Map<String, Integer> strings) {
+        if (value instanceof String string) {
+            strings.putIfAbsent(string, strings.size());
+        } else if (value instanceof String[] array) {
+            for (final String string : array) {
+                strings.putIfAbsent(string, strings.size());
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                strings.putIfAbsent(entry.getKey().toString(), strings.size());
+                collectStrings(entry.getValue(), strings);
+            }
+        } else if (value instanceof List<?> list) {
+            for (final Object element : list) {
+                collectStrings(element, strings);
+            }
+        }
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value, final Map<String, Integer> strings)
+            throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(bool ? TRUE : FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number number) {
+            out.writeByte(LONG);
+            out.writeLong(number.longValue());
+        } else if (value instanceof String string) {
+            out.writeByte(STRING);
+            out.writeInt(strings.get(string));
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(OBJECT);
+            out.writeInt(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                out.writeInt(strings.get(entry.getKey().toString()));
+                writeValue(out, entry.getValue(), strings);
+            }
+        } else if (value instanceof List<?> list) {
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (final Object element : list) {
+                writeValue(out, element, strings);
+            }
+        } else if (value instanceof String[] array) {
+            out.writeByte(STRING_ARRAY);
+            out.writeInt(array.length);
+            for (final String string : array) {
+                out.writeInt(strings.get(string));
+            }
+        } else if (value instanceof long[] array) {
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (final long element : array) {
+                out.writeLong(element);
+            }
+        } else if (value instanceof double[] array) {
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for (final double element : array) {
+                out.writeDouble(element);
+            }
+        } else if (value instanceof boolean[] array) {
+            out.writeByte(BOOLEAN_ARRAY);
+            out.writeInt(array.length);
+            for (final boolean element : array) {
+                out.writeBoolean(element);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported property value " + value.getClass());
+        }
+    }
+}
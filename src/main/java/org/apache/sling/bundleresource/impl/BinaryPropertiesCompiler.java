@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jakarta.json.JsonException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>BinaryPropertiesCompiler</code> precompiles the JSON properties
+ * files of a bundle into their binary form, see {@link BinaryProperties}. It
+ * is a build tool, which is not used at runtime, but is part of this bundle
+ * such that the builds of bundles providing resources can run it from the
+ * artifact of this bundle, which is always the version reading the binary
+ * forms it writes. It is in this private package as it uses the package
+ * private classes of the format, {@link BinaryProperties}, {@link
+ * JsonProperties} and {@link PathMapping}, which are not API. As the package
+ * is not exported, the class is not visible to other bundles. It is only
+ * public for its {@link #main(String[])} method to be run from the class path
+ * of a build. It is run on the output directory of a bundle
+ * build holding its manifest before packaging, for example by the
+ * <code>java</code> goal of the exec-maven-plugin, or in this project with the
+ * <code>binary-properties</code> profile:
+ *
+ * <pre>
+ * mvn -Pbinary-properties compile exec:java -Dbinary.properties.directory=&lt;output directory&gt;
+ * </pre>
+ *
+ * Besides this bundle, running it requires the Sling Commons OSGi bundle, the
+ * Jakarta JSON API with an implementation and SLF4J on the class path.
+ * <p>
+ * Only the files with the JSON properties extension of the mappings of the
+ * <code>Sling-Bundle-Resources</code> header defining one are compiled, as
+ * only these are read as JSON properties. Files not holding a JSON object are
+ * skipped. Binary forms compiled from the current contents of a JSON
+ * properties file are kept, others are replaced. As only the length of the
+ * JSON properties file is checked at runtime, the binary forms must be
+ * compiled whenever the bundle is built.
+ */
+public final class BinaryPropertiesCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryPropertiesCompiler.class);
+
+    private BinaryPropertiesCompiler() {
+        // static methods only
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: BinaryPropertiesCompiler <output directory>");
+        }
+        final Path directory = Paths.get(args[0]);
+        final int count = compile(directory);
+        log.info("Compiled {} JSON properties files in {}", count, directory);
+    }
+
+    /**
+     * Compiles the JSON properties files of the mappings of the
+     * <code>Sling-Bundle-Resources</code> header of the manifest in the
+     * directory, which is the root of the entries of the bundle.
+     *
+     * @param directory The directory holding the bundle entries
+     * @return The number of binary forms compiled or up to date
+     * @throws IOException If reading or writing a file fails
+     */
+    static int compile(final Path directory) throws IOException {
+        final Path manifestFile = directory.resolve("META-INF/MANIFEST.MF");
+        if (!Files.isRegularFile(manifestFile)) {
+            log.warn("No manifest in {}, nothing to compile", directory);
+            return 0;
+        }
+        final Manifest manifest;
+        try (InputStream in = Files.newInputStream(manifestFile)) {
+            manifest = new Manifest(in);
+        }
+        final String header = manifest.getMainAttributes().getValue(Activator.BUNDLE_RESOURCE_ROOTS);
+        if (header == null) {
+            log.warn("No {} header in {}, nothing to compile", Activator.BUNDLE_RESOURCE_ROOTS, manifestFile);
+            return 0;
+        }
+
+        int count = 0;
+        for (final PathMapping mapping : PathMapping.getRoots(header)) {
+            final String extension = mapping.getJSONPropertiesExtension();
+            if (extension != null) {
+                count += compile(directory, mapping.getEntryPath(mapping.getResourceRoot()), extension);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compiles the JSON properties files below the entry root of a mapping.
+     *
+     * @param directory The directory holding the bundle entries
+     * @param entryRoot The entry path of the root of the mapping
+     * @param extension The JSON properties extension of the mapping
+     * @return The number of binary forms compiled or up to date
+     * @throws IOException If reading or writing a file fails
+     */
+    static int compile(final Path directory, final String entryRoot, final String extension) throws IOException {
+        final Path start =
+                (entryRoot == null || "/".equals(entryRoot)) ? directory : directory.resolve(entryRoot.substring(1));
+        if (!Files.isDirectory(start)) {
+            return 0;
+        }
+        final Path root = directory.resolve(BinaryProperties.ROOT.substring(1));
+        final List<Path> files;
+        try (Stream<Path> paths = Files.walk(start)) {
+            files = paths.filter(path -> !path.startsWith(root)
+                            && Files.isRegularFile(path)
+                            && path.getFileName().toString().endsWith(extension))
+                    .collect(Collectors.toList());
+        }
+
+        int count = 0;
+        for (final Path file : files) {
+            final byte[] json = Files.readAllBytes(file);
+            final String entryPath = "/" + directory.relativize(file).toString().replace('\\', '/');
+            final Path target =
+                    directory.resolve(BinaryProperties.getEntryPath(entryPath).substring(1));
+            if (isCompiledFrom(target, json)) {
+                // the JSON is only checked here, not when reading the bundle
+                count++;
+                continue;
+            }
+
+            final JsonPropertiesMap properties;
+            try {
+                properties = JsonProperties.read(new ByteArrayInputStream(json));
+            } catch (final IOException | JsonException e) {
+                log.info("Skipping {}: {}", file, e.getMessage());
+                // a binary form of former contents must not be read instead
+                Files.deleteIfExists(target);
+                continue;
+            }
+
+            Files.createDirectories(target.getParent());
+            try (OutputStream out = Files.newOutputStream(target)) {
+                BinaryProperties.write(properties, json, out);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns <code>true</code> if the binary form exists and has been
+     * compiled from the JSON properties file with this version.
+     */
+    private static boolean isCompiledFrom(final Path target, final byte[] json) throws IOException {
+        if (!Files.isRegularFile(target)) {
+            return false;
+        }
+        return BinaryProperties.isCompiledFrom(Files.newInputStream(target), json);
+    }
+}
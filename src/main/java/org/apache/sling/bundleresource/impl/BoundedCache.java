@@ -0,0 +1,701 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * The <code>BoundedCache</code> is a size limited, thread-safe map used by the
+ * {@link BundleResourceCache} to hold bundle entries and child entry lists.
+ * <p>
+ * Entries are kept in a <code>ConcurrentHashMap</code> so that a cache hit
+ * never takes a lock. Eviction uses the CLOCK (second chance) approximation of
+ * LRU: a hit just sets the referenced flag of the entry, and when the cache
+ * exceeds its limit, the entries are scanned in insertion order, clearing the
+ * flag of referenced entries and evicting the first entry not referenced since
+ * the last scan. Only one thread evicts at any time; other threads adding
+ * entries while eviction is in progress do not wait for it.
+ * <p>
+ * The limit of the cache applies to the sum of the weights of the entries. By
+ * default each entry has a weight of one, such that the limit is the maximum
+ * number of entries. A custom weigher may be used to limit the cache by an
+ * estimate of the memory used by the entries instead. The limit, the CLOCK and
+ * the sum of the weights are held by a {@link CachePool}, which may be shared
+ * by multiple caches to limit them together.
+ * <p>
+ * Optionally the cache applies the TinyLFU admission policy, which makes it
+ * resistant to scans: the accesses of all keys are recorded in the
+ * {@link FrequencySketch} of the pool, buffered on the hit path and counted
+ * under the eviction lock, and a new entry only replaces the entry chosen for
+ * eviction if its key has been accessed more often recently. Otherwise the new
+ * entry is dropped, such that a single pass over many keys accessed once does
+ * not evict the entries in regular use.
+ * <p>
+ * The limit may be adapted while the cache is in use, see
+ * {@link #adaptLimit(int, int, boolean, boolean)}.
+ * <p>
+ * Values missing in the cache may be loaded through
+ * {@link #get(Object, Function)}, which coalesces concurrent misses of the
+ * same key: only one thread loads the value while the other threads wait for
+ * its result.
+ */
+class BoundedCache<K, V> {
+
+    /**
+     * The default size of a bounded cache (value is 20).
+     */
+    static final int DEFAULT_LIMIT = 20;
+
+    /**
+     * The cached entries.
+     */
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+
+    /**
+     * The pool limiting this cache, possibly together with other caches.
+     */
+    private final CachePool pool;
+
+    /**
+     * Whether the pool is shared with other caches.
+     */
+    private final boolean sharedPool;
+
+    /**
+     * The sum of the weights of all entries in the cache.
+     */
+    private final AtomicLong weight = new AtomicLong();
+
+    /**
+     * The loads in progress by key, see {@link #get(Object, Function)}.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * The number of values loaded.
+     */
+    private final LongAdder loadCount = new LongAdder();
+
+    /**
+     * The number of loads saved by waiting for the load of another thread.
+     */
+    private final LongAdder savedLoadCount = new LongAdder();
+
+    /**
+     * The number of lookups of keys or <code>null</code> unless statistics
+     * are recorded, see {@link #recordStats()}.
+     */
+    private volatile LongAdder requestCount;
+
+    /**
+     * The number of lookups of keys finding a cached value or
+     * <code>null</code> unless statistics are recorded.
+     */
+    private volatile LongAdder hitCount;
+
+    /**
+     * The statistics of the last adaptation of the limit, only accessed by
+     * the thread adapting the limit.
+     */
+    private long lastRequestCount;
+
+    private long lastHitCount;
+
+    private double lastHitRatio;
+
+    private boolean grown;
+
+    /**
+     * The weigher calculating the weight of a single entry.
+     */
+    private final ToIntBiFunction<K, V> weigher;
+
+    /**
+     * Whether the accesses of the keys are recorded in the frequency sketch of
+     * the pool to apply the admission policy, otherwise all new entries are
+     * admitted to the cache.
+     */
+    private final boolean admission;
+
+    /**
+     * The number of new entries not admitted to the cache.
+     */
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Creates a new instance of this size limited cache.
+     *
+     * @param limit The maximum number of entries in this cache. If this value
+     *            is less than or equal to zero, the default size of
+     *            {@link #DEFAULT_LIMIT} is used.
+     */
+    BoundedCache(int limit) {
+        this(limit, null);
+    }
+
+    /**
+     * Creates a new instance of this weight limited cache.
+     *
+     * @param limit The maximum sum of the weights of the entries in this
+     *            cache. If this value is less than or equal to zero, the
+     *            default size of {@link #DEFAULT_LIMIT} is used.
+     * @param weigher The weigher calculating the weight of an entry. If this
+     *            is <code>null</code>, each entry has a weight of one.
+     */
+    BoundedCache(int limit, final ToIntBiFunction<K, V> weigher) {
+        this(limit, weigher, false);
+    }
+
+    /**
+     * Creates a new instance of this weight limited cache.
+     *
+     * @param limit The maximum sum of the weights of the entries in this
+     *            cache. If this value is less than or equal to zero, the
+     *            default size of {@link #DEFAULT_LIMIT} is used.
+     * @param weigher The weigher calculating the weight of an entry. If this
+     *            is <code>null</code>, each entry has a weight of one.
+     * @param admission Whether new entries are admitted to a full cache by
+     *            the TinyLFU policy instead of always
+     */
+    BoundedCache(int limit, final ToIntBiFunction<K, V> weigher, final boolean admission) {
+        // normalize size to a positive number
+        if (limit <= 0) {
+            limit = DEFAULT_LIMIT;
+        }
+
+        this.pool = new CachePool(limit);
+        this.sharedPool = false;
+        this.weigher = weigher;
+        this.admission = admission;
+        if (admission) {
+            // the number of entries of a weighted cache is not known upfront,
+            // the sketch grows with the cache, see CachePool.ensureSketchCapacity()
+            pool.enableAdmission(weigher == null ? limit : 0);
+        }
+    }
+
+    /**
+     * Creates a new instance of this cache limited together with the other
+     * caches of the shared pool.
+     *
+     * @param pool The shared pool
+     * @param weigher The weigher calculating the weight of an entry. If this
+     *            is <code>null</code>, each entry has a weight of one.
+     * @param admission Whether new entries are admitted to the full pool by
+     *            the TinyLFU policy instead of always, comparing the
+     *            frequencies recorded by all caches of the pool
+     */
+    BoundedCache(final CachePool pool, final ToIntBiFunction<K, V> weigher, final boolean admission) {
+        this.pool = pool;
+        this.sharedPool = true;
+        this.weigher = weigher;
+        this.admission = admission;
+        if (admission) {
+            pool.enableAdmission(0);
+        }
+    }
+
+    /**
+     * Returns the value cached for the <code>key</code> or <code>null</code>
+     * if the key is not cached.
+     */
+    V get(final K key) {
+        final FrequencySketch frequencies = admission ? pool.getSketch() : null;
+        if (frequencies != null && frequencies.record(key)) {
+            drainAccesses(frequencies);
+        }
+
+        final LongAdder requests = this.requestCount;
+        if (requests != null) {
+            requests.increment();
+        }
+        final Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        final LongAdder hits = this.hitCount;
+        if (hits != null) {
+            hits.increment();
+        }
+
+        // only write the flag if needed to not dirty the cache line on every hit
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns the value cached for the <code>key</code> or <code>null</code>
+     * if the key is not cached. Unlike {@link #get(Object)} this does not count
+     * as an access of the key and thus does not keep the entry in the cache.
+     */
+    V peek(final K key) {
+        final Node<K, V> node = map.get(key);
+        return (node == null) ? null : node.value;
+    }
+
+    /**
+     * Returns the value cached for the <code>key</code>, loading and caching
+     * it if the key is not cached. If another thread is already loading the
+     * value for the key, the current thread waits for its result instead of
+     * loading the value again.
+     *
+     * @param key The key of the value
+     * @param loader The function loading the value, which must not return
+     *            <code>null</code>
+     * @return The cached or loaded value
+     * @throws RuntimeException thrown by the loader, also to the threads
+     *             waiting for its result
+     */
+    V get(final K key, final Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        final CompletableFuture<V> load = new CompletableFuture<>();
+        final CompletableFuture<V> pending = loading.putIfAbsent(key, load);
+        if (pending != null) {
+            savedLoadCount.increment();
+            return await(pending);
+        }
+
+        try {
+            // the value may have been cached by a load just completed
+            value = peek(key);
+            if (value == null) {
+                value = loader.apply(key);
+                loadCount.increment();
+                put(key, value);
+            }
+            load.complete(value);
+            return value;
+        } catch (final RuntimeException | Error e) { // NOSONAR
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private static <V> V await(final CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (final CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else if (ce.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ce;
+        }
+    }
+
+    /**
+     * Caches the <code>value</code> for the <code>key</code>, evicting
+     * entries not recently used if the limit of the cache is exceeded.
+     */
+    void put(final K key, final V value) {
+        while (true) {
+            Node<K, V> node = map.get(key);
+            if (node == null) {
+                final Node<K, V> newNode = new Node<>(this, key, value, weigh(key, value));
+                node = map.putIfAbsent(key, newNode);
+                if (node == null) {
+                    weight.addAndGet(newNode.weight);
+                    pool.size.incrementAndGet();
+                    if (pool.weight.addAndGet(newNode.weight) <= pool.getLimit()) {
+                        pool.clock.offer(newNode);
+                    } else if (admission) {
+                        // the node is only added to the clock if admitted
+                        evict(newNode);
+                    } else {
+                        pool.clock.offer(newNode);
+                        evict(null);
+                    }
+                    return;
+                }
+                // lost the race against another thread, just update
+            }
+
+            if (replace(node, value)) {
+                return;
+            }
+            // the entry has been evicted concurrently, try again
+        }
+    }
+
+    /**
+     * Removes all entries from the cache. With a shared pool this returns the
+     * weight of the entries to the pool at once.
+     */
+    void clear() {
+        pool.evictionLock.lock();
+        try {
+            for (final Node<K, V> node : map.values()) {
+                remove(node);
+            }
+            if (sharedPool) {
+                pool.clock.removeIf(node -> node.owner == this);
+            } else {
+                pool.clock.clear();
+            }
+        } finally {
+            pool.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current number of entries in the cache.
+     */
+    int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the sum of the weights of the entries in the cache. Unless a
+     * weigher is used, this is the same as the number of entries.
+     */
+    long weight() {
+        return weight.get();
+    }
+
+    /**
+     * Returns the number of values loaded through
+     * {@link #get(Object, Function)}.
+     */
+    long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * Returns the number of loads saved by waiting for the concurrent load of
+     * the same key by another thread.
+     */
+    long getSavedLoadCount() {
+        return savedLoadCount.sum();
+    }
+
+    /**
+     * Returns the number of new entries dropped by the admission policy
+     * instead of evicting an entry accessed more often.
+     */
+    long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Returns <code>true</code> if new entries are admitted to the full cache
+     * by the TinyLFU policy.
+     */
+    boolean isAdmission() {
+        return admission;
+    }
+
+    /**
+     * Returns the number of lookups of keys through {@link #get(Object)},
+     * which includes the lookups by {@link #get(Object, Function)}, or zero
+     * unless statistics are recorded.
+     */
+    long getRequestCount() {
+        final LongAdder requests = this.requestCount;
+        return (requests == null) ? 0 : requests.sum();
+    }
+
+    /**
+     * Returns the number of lookups of keys finding a cached value or zero
+     * unless statistics are recorded.
+     */
+    long getHitCount() {
+        final LongAdder hits = this.hitCount;
+        return (hits == null) ? 0 : hits.sum();
+    }
+
+    /**
+     * Returns the maximum sum of the weights of the entries in the cache.
+     * Unless a weigher is used, this is the maximum number of entries.
+     */
+    int getLimit() {
+        return pool.getLimit();
+    }
+
+    /**
+     * Returns the limit this cache has been created with.
+     */
+    int getConfiguredLimit() {
+        return pool.getConfiguredLimit();
+    }
+
+    /**
+     * Returns the pool limiting this cache.
+     */
+    CachePool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns <code>true</code> if this cache is limited together with other
+     * caches sharing the same pool.
+     */
+    boolean isSharedPool() {
+        return sharedPool;
+    }
+
+    /**
+     * Sets the maximum sum of the weights of the entries in the cache,
+     * evicting entries if the cache exceeds the new limit.
+     *
+     * @param limit The new limit, which must be positive
+     */
+    void setLimit(final int limit) {
+        pool.setLimit(limit);
+        if (pool.weight() > limit) {
+            evict(null);
+        }
+    }
+
+    /**
+     * Starts counting the lookups and hits of keys, which are only needed to
+     * {@link #adaptLimit(int, int, boolean, boolean) adapt the limit} and are
+     * thus not counted by default to keep the hit path cheap.
+     */
+    void recordStats() {
+        this.hitCount = new LongAdder();
+        this.requestCount = new LongAdder();
+    }
+
+    /**
+     * Adapts the limit of this cache to its use since the last adaptation.
+     * The limit is halved if the heap is short of memory or if the cache has
+     * not been used at all. The limit is doubled if the cache is full and
+     * misses keys, unless the hit ratio did not improve since the limit has
+     * last been raised. The limit is not raised if the heap is not plentiful.
+     * <p>
+     * This method is expected to be called periodically by a single thread
+     * once {@link #recordStats()} has been called. The limit of a shared pool
+     * is not adapted.
+     *
+     * @param minLimit The lower bound of the limit
+     * @param maxLimit The upper bound of the limit
+     * @param pressure Whether the heap is short of memory
+     * @param heapAvailable Whether there is enough heap to raise the limit
+     * @return The new limit
+     */
+    int adaptLimit(final int minLimit, final int maxLimit, final boolean pressure, final boolean heapAvailable) {
+        if (sharedPool) {
+            return pool.getLimit();
+        }
+
+        final long requests = getRequestCount();
+        final long hits = getHitCount();
+        final long intervalRequests = requests - lastRequestCount;
+        final long intervalHits = hits - lastHitCount;
+        lastRequestCount = requests;
+        lastHitCount = hits;
+
+        final int current = pool.getLimit();
+        int target = current;
+        if (pressure || intervalRequests == 0) {
+            target = Math.max(minLimit, current / 2);
+            grown = false;
+        } else {
+            final double hitRatio = (double) intervalHits / intervalRequests;
+            final boolean full = weight.get() >= current * 9L / 10;
+            final boolean improving = !grown || hitRatio > lastHitRatio;
+            if (heapAvailable && full && intervalHits < intervalRequests && improving) {
+                target = (int) Math.min(maxLimit, current * 2L);
+            }
+            grown = target > current;
+            lastHitRatio = hitRatio;
+        }
+
+        // never leave the bounds, also if these changed
+        target = Math.max(minLimit, Math.min(maxLimit, target));
+        if (target != current) {
+            setLimit(target);
+        }
+        return target;
+    }
+
+    // ---------- internal
+
+    private int weigh(final K key, final V value) {
+        return (weigher == null) ? 1 : weigher.applyAsInt(key, value);
+    }
+
+    private boolean replace(final Node<K, V> node, final V value) {
+        // replacing is rare, so synchronize the weight update on the entry
+        synchronized (node) {
+            if (map.get(node.key) != node) {
+                return false;
+            }
+            final int newWeight = weigh(node.key, value);
+            node.value = value;
+            weight.addAndGet((long) newWeight - node.weight);
+            pool.weight.addAndGet((long) newWeight - node.weight);
+            node.weight = newWeight;
+        }
+        if (pool.weight() > pool.getLimit()) {
+            evict(null);
+        }
+        return true;
+    }
+
+    private void remove(final Node<K, V> node) {
+        synchronized (node) {
+            if (map.remove(node.key, node)) {
+                pool.size.decrementAndGet();
+                weight.addAndGet(-node.weight);
+                pool.weight.addAndGet(-node.weight);
+            }
+        }
+    }
+
+    private boolean contains(final Node<K, V> node) {
+        return map.get(node.key) == node;
+    }
+
+    /**
+     * Returns the estimated access frequency of the key of the node, which is
+     * only called while holding the eviction lock.
+     */
+    private int frequency(final Node<K, V> node) {
+        // the keys of caches not applying the policy are not recorded
+        final FrequencySketch frequencies = admission ? pool.getSketch() : null;
+        if (frequencies == null) {
+            return 0;
+        }
+        frequencies.drain();
+        return frequencies.frequency(node.key);
+    }
+
+    /**
+     * Drains the accesses buffered by the sketch unless another thread holds
+     * the eviction lock, which drains them with the next eviction.
+     */
+    private void drainAccesses(final FrequencySketch frequencies) {
+        if (pool.evictionLock.tryLock()) {
+            try {
+                frequencies.drain();
+            } finally {
+                pool.evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the weight of the cache is within its limit.
+     *
+     * @param candidate The new entry not yet added to the clock, which is
+     *            added unless the admission policy drops it, or
+     *            <code>null</code>
+     */
+    private void evict(Node<K, V> candidate) {
+        // another thread is already evicting, which will also take care
+        // of the entry just added by the current thread
+        if (!pool.evictionLock.tryLock()) {
+            if (candidate != null) {
+                pool.clock.offer(candidate);
+            }
+            return;
+        }
+
+        try {
+            pool.ensureSketchCapacity();
+            while (pool.weight() > pool.getLimit()) {
+                final Node<?, ?> node = pool.clock.peek();
+                if (node == null) {
+                    break;
+                }
+
+                if (!isCached(node)) {
+                    // entry has been removed by clear() in the meantime
+                    pool.clock.poll();
+                    continue;
+                }
+
+                if (node.referenced) {
+                    // second chance
+                    pool.clock.poll();
+                    node.referenced = false;
+                    pool.clock.offer(node);
+                } else if (candidate != null && admission && frequency(candidate) <= frequencyOf(node)) {
+                    // the victim is accessed at least as often, keep it
+                    remove(candidate);
+                    rejectedCount.increment();
+                    candidate = null;
+                } else {
+                    pool.clock.poll();
+                    removeNode(node);
+                }
+            }
+        } finally {
+            pool.evictionLock.unlock();
+        }
+
+        if (candidate != null) {
+            pool.clock.offer(candidate);
+        }
+    }
+
+    // the entries of a shared pool belong to caches of other types
+
+    private static <K, V> boolean isCached(final Node<K, V> node) {
+        return node.owner.contains(node);
+    }
+
+    private static <K, V> int frequencyOf(final Node<K, V> node) {
+        return node.owner.frequency(node);
+    }
+
+    private static <K, V> void removeNode(final Node<K, V> node) {
+        node.owner.remove(node);
+    }
+
+    /**
+     * The <code>Node</code> holds a cached value together with its weight and
+     * the referenced flag of the CLOCK algorithm.
+     */
+    static final class Node<K, V> {
+
+        final BoundedCache<K, V> owner;
+
+        final K key;
+
+        volatile V value;
+
+        volatile int weight;
+
+        volatile boolean referenced;
+
+        Node(final BoundedCache<K, V> owner, final K key, final V value, final int weight) {
+            this.owner = owner;
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.osgi.framework.Bundle;
+
+/**
+ * The <code>BundleEntryFilter</code> is a Bloom filter over the paths of all
+ * bundle entries below a set of root folders. It detects most lookups of
+ * entries which do not exist without accessing the framework, while using
+ * about {@value #BITS_PER_ENTRY} bits per entry instead of holding the paths
+ * like the {@link BundleEntryIndex}.
+ * <p>
+ * The filter never reports an existing entry as absent. With the chosen
+ * number of bits and hash functions about one percent of the lookups of
+ * missing entries are not detected and are left to the entry cache and the
+ * bundle. Like the index the filter is immutable and built when the bundle
+ * resource provider is registered.
+ */
+class BundleEntryFilter {
+
+    /**
+     * The number of bits of the filter for each entry (value is 10).
+     */
+    static final int BITS_PER_ENTRY = 10;
+
+    /**
+     * The number of bits set for each entry, which is optimal for the number
+     * of bits per entry (value is 7).
+     */
+    private static final int HASH_COUNT = 7;
+
+    /**
+     * The filtered root folders, each ending with a slash.
+     */
+    private final String[] roots;
+
+    private final long[] bits;
+
+    private final int bitCount;
+
+    private final int size;
+
+    private BundleEntryFilter(final String[] roots, final int size) {
+        this.roots = roots;
+        this.size = size;
+        this.bits = new long[Math.max(1, (size * BITS_PER_ENTRY + 63) / 64)];
+        this.bitCount = bits.length * 64;
+    }
+
+    /**
+     * Builds the filter of all entries of the bundle below the given root
+     * folder entry paths. Roots which are not folders in the bundle are not
+     * filtered and are thus left to be looked up in the bundle.
+     *
+     * @param bundle The bundle whose entries are filtered
+     * @param rootPaths The absolute entry paths of the root folders
+     * @return The filter
+     */
+    static BundleEntryFilter build(final Bundle bundle, final Iterable<String> rootPaths) {
+        // the bits only depend on the hash codes of the paths, which are
+        // collected in a single walk until the size of the filter is known
+        final List<String> folderRoots = new ArrayList<>();
+        final HashCodes hashCodes = new HashCodes();
+        for (final String root : BundleEntryIndex.toRoots(rootPaths)) {
+            if (walk(bundle, root, hashCodes)) {
+                folderRoots.add(root);
+            }
+        }
+
+        final BundleEntryFilter filter =
+                new BundleEntryFilter(folderRoots.toArray(new String[folderRoots.size()]), hashCodes.size);
+        for (int i = 0; i < hashCodes.size; i++) {
+            filter.add(hashCodes.values[i]);
+        }
+        return filter;
+    }
+
+    /**
+     * Walks the folder tree starting at the root collecting the hash codes of
+     * the paths of all entries. Returns <code>false</code> if the root is not a
+     * folder with children, in which case no hash codes are collected.
+     */
+    private static boolean walk(final Bundle bundle, final String root, final HashCodes hashCodes) {
+        final List<String> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            final String folder = pending.remove(pending.size() - 1);
+            final Enumeration<String> entries = bundle.getEntryPaths(folder);
+            if (entries == null || !entries.hasMoreElements()) {
+                // empty folder or, for the root, no folder at all
+                if (folder.equals(root)) {
+                    return false;
+                }
+                continue;
+            }
+
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement();
+                if (!entry.startsWith("/")) {
+                    entry = "/".concat(entry);
+                }
+                hashCodes.add(entry.hashCode());
+                if (entry.endsWith("/")) {
+                    pending.add(entry);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void add(final int hash) {
+        final int step = mix(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = Math.floorMod(hash + i * step, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the entry path is below one of the
+     * filtered roots and the filter can thus answer queries for it.
+     */
+    boolean covers(final String path) {
+        for (final String root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the entry path is covered by this filter
+     * and there is definitely no such entry in the bundle.
+     */
+    boolean isAbsent(final String path) {
+        return covers(path) && !mightContain(path);
+    }
+
+    /**
+     * Returns <code>false</code> if the filter does not contain the entry
+     * path. A path ending with a slash denotes a folder. The filtered roots
+     * are always contained.
+     */
+    boolean mightContain(final String path) {
+        for (final String root : roots) {
+            if (root.equals(path)) {
+                return true;
+            }
+        }
+
+        final int hash = path.hashCode();
+        final int step = mix(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = Math.floorMod(hash + i * step, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Derives the second hash from the string hash code, which the string
+     * caches, such that no further pass over the characters is needed.
+     */
+    private static int mix(final int hash) {
+        int h = hash * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        // a zero step would set the same bit for all hash functions
+        return h | 1;
+    }
+
+    /**
+     * Returns the number of entries added to the filter.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bits of the filter.
+     */
+    int getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * A growing array of the hash codes of the entry paths.
+     */
+    private static final class HashCodes {
+
+        int[] values = new int[64];
+
+        int size;
+
+        void add(final int hashCode) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = hashCode;
+        }
+    }
+}
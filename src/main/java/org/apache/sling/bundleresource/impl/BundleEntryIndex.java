@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+
+/**
+ * The <code>BundleEntryIndex</code> is an immutable in-memory table of all
+ * bundle entries below a set of root folders. It is built once when the bundle
+ * resource provider is registered by walking the folders with
+ * <code>Bundle.getEntryPaths(String)</code>, which is the same source the
+ * {@link BundleResourceCache} uses without an index, and answers existence and
+ * child listing queries without accessing the framework afterwards.
+ * <p>
+ * Each folder is stored with the {@link ChildEntries} holding the sorted names
+ * of its direct children. Folder paths and child folder names end with a
+ * slash, all paths start with a slash. As bundle entries only change when the bundle is
+ * updated, which stops the bundle and thus unregisters its providers, the
+ * index is never modified but rebuilt when the bundle is started again.
+ */
+class BundleEntryIndex {
+
+    /**
+     * The indexed root folders, each ending with a slash.
+     */
+    private final String[] roots;
+
+    /**
+     * The child entries of each indexed folder having children.
+     */
+    private final Map<String, ChildEntries> folders;
+
+    /**
+     * The number of indexed entries.
+     */
+    private final int size;
+
+    private BundleEntryIndex(final String[] roots, final Map<String, ChildEntries> folders) {
+        this.roots = roots;
+        this.folders = folders;
+
+        int count = 0;
+        for (final ChildEntries children : folders.values()) {
+            count += children.size();
+        }
+        this.size = count;
+    }
+
+    /**
+     * Builds the index of all entries of the bundle below the given root
+     * folder entry paths. Roots which are not folders in the bundle are not
+     * indexed and are thus left to be looked up in the bundle.
+     *
+     * @param bundle The bundle whose entries are indexed
+     * @param rootPaths The absolute entry paths of the root folders, of which
+     *            <code>null</code> is the root folder of the bundle
+     * @return The index
+     */
+    static BundleEntryIndex build(final Bundle bundle, final Iterable<String> rootPaths) {
+        final List<String> folderRoots = new ArrayList<>();
+        final Map<String, ChildEntries> folders = new HashMap<>();
+        for (final String root : toRoots(rootPaths)) {
+            if (walk(bundle, root, folders)) {
+                folderRoots.add(root);
+            }
+        }
+
+        return new BundleEntryIndex(folderRoots.toArray(new String[folderRoots.size()]), folders);
+    }
+
+    /**
+     * Returns the root folders of the given root folder entry paths, each
+     * ending with a slash, without the roots covered by other roots.
+     *
+     * @param rootPaths The absolute entry paths of the root folders, of which
+     *            <code>null</code> is the root folder of the bundle
+     * @return The root folders
+     */
+    static List<String> toRoots(final Iterable<String> rootPaths) {
+        final List<String> roots = new ArrayList<>();
+        for (final String rootPath : rootPaths) {
+            final String root;
+            if (rootPath == null || rootPath.isEmpty()) {
+                root = "/";
+            } else {
+                root = rootPath.endsWith("/") ? rootPath : rootPath.concat("/");
+            }
+            if (!isCovered(roots, root)) {
+                // drop roots covered by this root
+                roots.removeIf(r -> r.startsWith(root));
+                roots.add(root);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Walks the folder tree starting at the root adding the children of each
+     * folder to the map. Returns <code>false</code> if the root is not a folder
+     * with children.
+     */
+    private static boolean walk(final Bundle bundle, final String root, final Map<String, ChildEntries> folders) {
+        final List<String> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            final String folder = pending.remove(pending.size() - 1);
+            final Enumeration<String> entries = bundle.getEntryPaths(folder);
+            if (entries == null || !entries.hasMoreElements()) {
+                // empty folder or, for the root, no folder at all
+                if (folder.equals(root)) {
+                    return false;
+                }
+                continue;
+            }
+
+            final List<String> children = new ArrayList<>();
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement();
+                if (!entry.startsWith("/")) {
+                    entry = "/".concat(entry);
+                }
+                children.add(entry);
+                if (entry.endsWith("/")) {
+                    pending.add(entry);
+                }
+            }
+
+            folders.put(folder, ChildEntries.of(folder, children));
+        }
+        return true;
+    }
+
+    private static boolean isCovered(final List<String> roots, final String path) {
+        for (final String root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry path is below one of the
+     * indexed roots and the index can thus answer queries for it.
+     */
+    boolean covers(final String path) {
+        for (final String root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the entry path is covered by this index and
+     * there is no such entry in the bundle.
+     */
+    boolean isAbsent(final String path) {
+        return covers(path) && !contains(path);
+    }
+
+    /**
+     * Returns <code>true</code> if the index contains the given entry path. A
+     * path ending with a slash denotes a folder.
+     */
+    boolean contains(final String path) {
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        final int slash = path.lastIndexOf('/', end - 1);
+        if (slash < 0) {
+            return false;
+        }
+
+        final ChildEntries siblings = folders.get(path.substring(0, slash + 1));
+        if (siblings == null) {
+            // no parent folder in the index, which is true for the roots
+            return folders.containsKey(path) && !covers(path.substring(0, slash + 1));
+        }
+        return siblings.contains(path);
+    }
+
+    /**
+     * Returns the sorted paths of the direct children of the folder or
+     * <code>null</code> if the folder is not covered by this index.
+     *
+     * @param path The entry path of the folder, ending with a slash
+     * @return The child entries, which are empty if the folder does not
+     *         exist or has no children, or <code>null</code> if this index
+     *         does not cover the folder
+     */
+    ChildEntries getChildren(final String path) {
+        if (!covers(path)) {
+            return null;
+        }
+
+        final ChildEntries children = folders.get(path);
+        if (children == null) {
+            return ChildEntries.EMPTY;
+        }
+        return children;
+    }
+
+    /**
+     * Returns the number of entries held in the index.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of folders with children held in the index.
+     */
+    int getFolderCount() {
+        return folders.size();
+    }
+}
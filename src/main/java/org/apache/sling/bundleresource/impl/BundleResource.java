@@ -20,34 +20,41 @@ package org.apache.sling.bundleresource.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import jakarta.json.Json;
-import jakarta.json.JsonArray;
-import jakarta.json.JsonNumber;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
-import jakarta.json.JsonString;
-import jakarta.json.JsonValue;
 import org.apache.sling.api.resource.AbstractResource;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
-import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.bundleresource.impl.BundleResourceCache.EntryType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.apache.jackrabbit.JcrConstants.NT_FILE;
 import static org.apache.jackrabbit.JcrConstants.NT_FOLDER;
 
-/** A Resource that wraps a Bundle entry */
+/**
+ * A Resource that wraps a Bundle entry.
+ * <p>
+ * The resource only holds its path, mapping and type when created. The
+ * properties, including those read from a JSON properties file, and the
+ * metadata are computed when first requested, such that iterating over
+ * resources only looking at their paths and names does not access the bundle
+ * entries.
+ * <p>
+ * Child resources are looked up and checked for directly against the
+ * {@link BundleResourceCache} and the sub resources read from JSON, instead
+ * of going through the resource resolver, such that navigating the resources
+ * of a bundle costs cached lookups only.
+ */
 public class BundleResource extends AbstractResource {
 
     /** default log */
@@ -61,15 +68,27 @@ public class BundleResource extends AbstractResource {
 
     private final String path;
 
-    private URL resourceUrl;
+    private final boolean isFolder;
 
-    private final ResourceMetadata metadata;
+    /** The properties read from the JSON file of the parent resource */
+    private final Map<String, Object> readProps;
 
-    private final ValueMap valueMap;
+    /**
+     * The parent resource if this resource was created by it, may be null.
+     * The parent is weakly referenced, such that a child does not retain the
+     * chain of its ancestors and their properties.
+     */
+    private final WeakReference<BundleResource> parent;
 
-    private final Map<String, Map<String, Object>> subResources;
+    /** Whether the resource resolver is used for a bulk traversal */
+    private final boolean bulk;
+
+    private URL resourceUrl;
+
+    private volatile ResourceMetadata metadata;
+
+    private volatile Properties properties;
 
-    @SuppressWarnings("unchecked")
     public BundleResource(
             final ResourceResolver resourceResolver,
             final BundleResourceCache cache,
@@ -77,39 +96,80 @@ public class BundleResource extends AbstractResource {
             final String resourcePath,
             final Map<String, Object> readProps,
             final boolean isFolder) {
+        this(resourceResolver, cache, mappedPath, resourcePath, readProps, isFolder, null, false);
+    }
+
+    /**
+     * Creates a child resource of the given parent resource, which is
+     * returned as the parent of the resource, see
+     * {@link BundleResourceProvider#getParent(org.apache.sling.spi.resource.provider.ResolveContext, Resource)}.
+     * The child is used for a bulk traversal like its parent.
+     */
+    BundleResource(
+            final ResourceResolver resourceResolver,
+            final BundleResourceCache cache,
+            final PathMapping mappedPath,
+            final String resourcePath,
+            final Map<String, Object> readProps,
+            final boolean isFolder,
+            final BundleResource parent) {
+        this(
+                resourceResolver,
+                cache,
+                mappedPath,
+                resourcePath,
+                readProps,
+                isFolder,
+                parent,
+                parent != null && parent.bulk);
+    }
+
+    /**
+     * Creates a resource with the given parent resource, which may be
+     * <code>null</code>, for a resource resolver which may be used for a bulk
+     * traversal, see {@link BundleResourceProvider#PROP_BULK_TRAVERSAL}.
+     */
+    BundleResource(
+            final ResourceResolver resourceResolver,
+            final BundleResourceCache cache,
+            final PathMapping mappedPath,
+            final String resourcePath,
+            final Map<String, Object> readProps,
+            final boolean isFolder,
+            final BundleResource parent,
+            final boolean bulk) {
 
         this.resourceResolver = resourceResolver;
         this.cache = cache;
         this.mappedPath = mappedPath;
-
-        metadata = new ResourceMetadata();
-        metadata.setResolutionPath(resourcePath);
-        metadata.setCreationTime(this.cache.getBundle().getLastModified());
-        metadata.setModificationTime(this.cache.getBundle().getLastModified());
-
         this.path = resourcePath;
+        this.readProps = readProps;
+        this.isFolder = isFolder;
+        this.parent = parent != null ? new WeakReference<>(parent) : null;
+        this.bulk = bulk;
+    }
 
-        final Map<String, Object> properties = new HashMap<>();
-        this.valueMap = new ValueMapDecorator(Collections.unmodifiableMap(properties));
-        if (isFolder) {
-
-            properties.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, NT_FOLDER);
-
-        } else {
-
-            properties.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, NT_FILE);
-
-            try {
-                final URL url = this.cache.getEntry(mappedPath.getEntryPath(resourcePath));
-                if (url != null) {
-                    metadata.setContentLength(url.openConnection().getContentLength());
-                }
-            } catch (final Exception e) {
-                // don't care, we just have no content length
-            }
+    /**
+     * Returns the properties and child resources of this resource, which are
+     * computed on first access. Concurrent first accesses may compute them
+     * more than once, which is harmless as the results are equal.
+     */
+    private Properties getProperties() {
+        Properties result = this.properties;
+        if (result == null) {
+            result = readProperties();
+            this.properties = result;
         }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Properties readProperties() {
+        // only created if there are properties besides the resource type
+        Map<String, Object> properties = null;
 
         Map<String, Map<String, Object>> children = null;
+        boolean propsChildren = false;
         if (readProps != null) {
             for (final Map.Entry<String, Object> entry : readProps.entrySet()) {
                 if (entry.getValue() instanceof Map) {
@@ -118,59 +178,71 @@ public class BundleResource extends AbstractResource {
                     }
                     children.put(entry.getKey(), (Map<String, Object>) entry.getValue());
                 } else {
-                    properties.put(entry.getKey(), entry.getValue());
+                    properties = addProperty(properties, entry.getKey(), entry.getValue());
                 }
             }
         }
         if (this.mappedPath.getJSONPropertiesExtension() != null) {
-            String propsPath =
-                    mappedPath.getEntryPath(resourcePath.concat(this.mappedPath.getJSONPropertiesExtension()));
-            if (propsPath == null && resourcePath.equals(mappedPath.getResourceRoot())) {
-                // SLING-10140 - Handle the special case when the resourceRoot points to a file.
-                //   In that case, the JSONProperties sibling entry may still exist
-                //   in the bundle but it would not be contained within the mappedPath set.
-
-                // Start with mapped path for the original resource
-                String entryPath = mappedPath.getEntryPath(resourcePath);
-                if (entryPath != null) {
-                    // and then add the extension for the candidate sibling path
-                    propsPath = entryPath.concat(this.mappedPath.getJSONPropertiesExtension());
-                }
-            }
+            // SLING-10140 - if the resourceRoot points to a file, the
+            // JSONProperties sibling entry of the root entry is used
+            final String propsPath = mappedPath.getEntryPath(path, this.mappedPath.getJSONPropertiesExtension());
             if (propsPath != null) {
 
                 try {
-                    final URL url = this.cache.getEntry(propsPath);
-                    if (url != null) {
-                        final JsonObject obj;
-                        try (JsonReader reader = Json.createReader(url.openStream())) {
-                            obj = reader.readObject();
-                        }
-                        for (final Map.Entry<String, JsonValue> entry : obj.entrySet()) {
-                            final Object value = getValue(entry.getValue());
+                    final Map<String, Object> props = this.cache.getProperties(propsPath);
+                    if (props != null) {
+                        for (final Map.Entry<String, Object> entry : props.entrySet()) {
+                            final Object value = entry.getValue();
                             if (value != null) {
                                 if (value instanceof Map) {
                                     if (children == null) {
                                         children = new HashMap<>();
                                     }
                                     children.put(entry.getKey(), (Map<String, Object>) value);
+                                    propsChildren = true;
                                 } else {
-                                    properties.put(entry.getKey(), value);
+                                    properties = addProperty(properties, entry.getKey(), value);
                                 }
                             }
                         }
                     }
                 } catch (final IOException ioe) {
-                    log.error("getInputStream: Cannot get input stream for " + propsPath, ioe);
+                    log.error("readProperties: Cannot read JSON properties from " + propsPath, ioe);
                 }
             }
         }
-        this.subResources = children;
+        // the names of sub resources only read from JSON are already sorted
+        final List<String> subResourceNames = (!propsChildren && readProps instanceof JsonPropertiesMap)
+                ? ((JsonPropertiesMap) readProps).getChildNames()
+                : null;
+        final BundleResourceValueMap valueMap;
+        if (properties == null) {
+            valueMap = isFolder ? BundleResourceValueMap.FOLDER : BundleResourceValueMap.FILE;
+        } else {
+            valueMap = BundleResourceValueMap.of(properties);
+        }
+        return new Properties(valueMap, children, subResourceNames);
+    }
+
+    private Map<String, Object> addProperty(
+            final Map<String, Object> properties, final String name, final Object value) {
+        Map<String, Object> result = properties;
+        if (result == null) {
+            result = new HashMap<>();
+            result.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, isFolder ? NT_FOLDER : NT_FILE);
+        }
+        result.put(name, value);
+        return result;
     }
 
     Resource getChildResource(final String path) {
-        Resource result = null;
-        Map<String, Map<String, Object>> resources = this.subResources;
+        final Resource direct = getNestedResource(path);
+        if (direct != null) {
+            return direct;
+        }
+        BundleResource result = null;
+        BundleResource resultParent = this;
+        Map<String, Map<String, Object>> resources = getSubResources();
         String subPath = null;
         for (String segment : path.split("/")) {
             if (resources != null) {
@@ -183,8 +255,10 @@ public class BundleResource extends AbstractResource {
                             this.mappedPath,
                             this.getPath().concat("/").concat(subPath),
                             props,
-                            false);
-                    resources = ((BundleResource) result).subResources;
+                            false,
+                            resultParent);
+                    resources = result.getSubResources();
+                    resultParent = result;
                 } else {
                     result = null;
                 }
@@ -198,47 +272,72 @@ public class BundleResource extends AbstractResource {
         return result;
     }
 
-    private static Object getValue(final JsonValue value) {
-        switch (value.getValueType()) {
-            // type NULL -> return null
-            case NULL:
+    /**
+     * Returns the resource at the relative path of several segments defined
+     * by the JSON properties file defining the first segment. The path index
+     * of the file tells at once whether there is such a resource, and the
+     * resources in between are created from the nested objects without
+     * reading their properties. This only holds if none of them has a JSON
+     * properties file of its own, which would add further sub resources.
+     * Otherwise <code>null</code> is returned and the path is resolved one
+     * segment at a time.
+     */
+    private Resource getNestedResource(final String path) {
+        final int slash = path.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        final Map<String, Map<String, Object>> resources = getSubResources();
+        final Map<String, Object> first = resources != null ? resources.get(path.substring(0, slash)) : null;
+        if (!(first instanceof JsonPropertiesMap)
+                || ((JsonPropertiesMap) first).getDescendant(path.substring(slash + 1)) == null) {
+            return null;
+        }
+
+        final String jsonExtension = mappedPath.getJSONPropertiesExtension();
+        final String prefix = this.path.concat("/");
+        JsonPropertiesMap props = (JsonPropertiesMap) first;
+        BundleResource result = this;
+        int end = slash;
+        while (true) {
+            final String resourcePath = prefix.concat(path.substring(0, end));
+            result = new BundleResource(resourceResolver, cache, mappedPath, resourcePath, props, false, result);
+            if (end == path.length()) {
+                return result;
+            }
+            final String entryPath = mappedPath.getEntryPath(resourcePath);
+            if (entryPath == null || cache.getEntryType(entryPath, jsonExtension, bulk) != EntryType.ABSENT) {
                 return null;
-            // type TRUE or FALSE -> return boolean
-            case FALSE:
-                return false;
-            case TRUE:
-                return true;
-            // type String -> return String
-            case STRING:
-                return ((JsonString) value).getString();
-            // type Number -> return long or double
-            case NUMBER:
-                final JsonNumber num = (JsonNumber) value;
-                if (num.isIntegral()) {
-                    return num.longValue();
-                }
-                return num.doubleValue();
-            // type ARRAY -> return list and call this method for each value
-            case ARRAY:
-                final List<Object> array = new ArrayList<>();
-                for (final JsonValue x : ((JsonArray) value)) {
-                    array.add(getValue(x));
-                }
-                return array;
-            // type OBJECT -> return map
-            case OBJECT:
-                final Map<String, Object> map = new HashMap<>();
-                final JsonObject obj = (JsonObject) value;
-                for (final Map.Entry<String, JsonValue> entry : obj.entrySet()) {
-                    map.put(entry.getKey(), getValue(entry.getValue()));
-                }
-                return map;
+            }
+            final int start = end + 1;
+            end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            props = props.getDescendant(path.substring(start, end));
         }
-        return null;
     }
 
     Map<String, Map<String, Object>> getSubResources() {
-        return this.subResources;
+        return getProperties().subResources;
+    }
+
+    /**
+     * Returns the sorted names of the sub resources if this resource is only
+     * defined by the JSON properties of an ancestor, such that its children
+     * are just its sub resources. Otherwise returns <code>null</code> and the
+     * sub resources are merged with the child entries of the folder.
+     */
+    List<String> getJsonChildNames() {
+        if (isFolder || readProps == null) {
+            return null;
+        }
+        final String entryPath = mappedPath.getEntryPath(path);
+        if (entryPath == null
+                || cache.getEntryType(entryPath, mappedPath.getJSONPropertiesExtension(), bulk) == EntryType.FOLDER) {
+            return null;
+        }
+        return getProperties().getSubResourceNames();
     }
 
     @Override
@@ -248,17 +347,78 @@ public class BundleResource extends AbstractResource {
 
     @Override
     public String getResourceType() {
-        return this.valueMap.get(ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class);
+        return getProperties().valueMap.getResourceType();
     }
 
     @Override
     public String getResourceSuperType() {
-        return this.valueMap.get("sling:resourceSuperType", String.class);
+        return getProperties().valueMap.getResourceSuperType();
+    }
+
+    /**
+     * Returns the child resource at the relative path, which is either a
+     * bundle entry or defined by the JSON properties of this resource or an
+     * ancestor. Paths which are not plain relative paths are resolved by the
+     * resource resolver, as are all paths if the resolver might return another
+     * resource, see {@link ResolverBypass}.
+     */
+    @Override
+    public Resource getChild(final String relPath) {
+        if (!isChildPath(relPath)
+                || !ResolverBypass.isAllowed(
+                        resourceResolver, path, cache.getBundle().getBundleId())) {
+            return super.getChild(relPath);
+        }
+        final String childPath =
+                path.endsWith("/") ? path.concat(relPath) : path.concat("/").concat(relPath);
+        return BundleResourceProvider.getResource(resourceResolver, cache, mappedPath, childPath, this, bulk);
+    }
+
+    /**
+     * Returns <code>true</code> if this resource has sub resources read from
+     * JSON or if there are entries in the folder of this resource, which are
+     * the children listed for this resource. The entries are taken from the
+     * index or the child entry cache also if child listings are streamed,
+     * such that repeated checks do not enumerate the folder again. The
+     * resource resolver is asked instead if it might list other children, see
+     * {@link ResolverBypass}.
+     */
+    @Override
+    public boolean hasChildren() {
+        if (!ResolverBypass.isAllowed(resourceResolver, path, cache.getBundle().getBundleId())) {
+            return super.hasChildren();
+        }
+        final Map<String, Map<String, Object>> subResources = getSubResources();
+        if (subResources != null && !subResources.isEmpty()) {
+            return true;
+        }
+        // the folder of a file resource not read from JSON is never an entry
+        if (!isFolder && readProps == null) {
+            return false;
+        }
+
+        final String folderPath = mappedPath.getEntryPath(path, "/");
+        if (folderPath == null) {
+            return false;
+        }
+        return !cache.getEntryPaths(folderPath, bulk).isEmpty();
     }
 
     @Override
     public ResourceMetadata getResourceMetadata() {
-        return metadata;
+        ResourceMetadata result = this.metadata;
+        if (result == null) {
+            // the metadata is modified by the caller, so it must only be
+            // created once
+            synchronized (this) {
+                result = this.metadata;
+                if (result == null) {
+                    result = createMetadata();
+                    this.metadata = result;
+                }
+            }
+        }
+        return result;
     }
 
     @Override
@@ -274,7 +434,7 @@ public class BundleResource extends AbstractResource {
         } else if (type == URL.class) {
             return (T) getURL(); // unchecked cast
         } else if (type == ValueMap.class) {
-            return (T) valueMap; // unchecked cast
+            return (T) getProperties().valueMap; // unchecked cast
         }
 
         // fall back to adapter factories
@@ -288,6 +448,20 @@ public class BundleResource extends AbstractResource {
 
     // ---------- internal -----------------------------------------------------
 
+    private ResourceMetadata createMetadata() {
+        final ResourceMetadata result = new ResourceMetadata();
+        result.setResolutionPath(path);
+        result.setCreationTime(this.cache.getBundle().getLastModified());
+        result.setModificationTime(this.cache.getBundle().getLastModified());
+        if (!isFolder) {
+            final int contentLength = this.cache.getContentLength(mappedPath.getEntryPath(path));
+            if (contentLength >= 0) {
+                result.setContentLength(contentLength);
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns a stream to the bundle entry if it is a file. Otherwise returns
      * <code>null</code>.
@@ -329,6 +503,62 @@ public class BundleResource extends AbstractResource {
         return resourceUrl;
     }
 
+    /**
+     * Returns <code>true</code> if the path is a non-empty relative path
+     * without empty, current or parent segments.
+     */
+    private static boolean isChildPath(final String relPath) {
+        if (relPath == null || relPath.isEmpty()) {
+            return false;
+        }
+        int start = 0;
+        while (start <= relPath.length()) {
+            int end = relPath.indexOf('/', start);
+            if (end < 0) {
+                end = relPath.length();
+            }
+            final int length = end - start;
+            if (length == 0
+                    || (length == 1 && relPath.charAt(start) == '.')
+                    || (length == 2 && relPath.startsWith("..", start))) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the parent resource if this resource was created by its parent
+     * while listing its children or looking up a child defined by JSON and
+     * the parent is still referenced elsewhere. Otherwise returns
+     * <code>null</code>, and the parent has to be resolved by its path.
+     */
+    BundleResource getParentResource() {
+        return parent != null ? parent.get() : null;
+    }
+
+    /**
+     * Returns <code>true</code> if this resource is a bundle entry without
+     * properties from the JSON properties of its parent, such that resolving
+     * its path yields an equal resource.
+     */
+    boolean isEntry() {
+        return readProps == null;
+    }
+
+    boolean isFolder() {
+        return isFolder;
+    }
+
+    /**
+     * Returns <code>true</code> if the resource resolver of this resource is
+     * used for a bulk traversal.
+     */
+    boolean isBulkTraversal() {
+        return bulk;
+    }
+
     BundleResourceCache getBundle() {
         return cache;
     }
@@ -340,4 +570,42 @@ public class BundleResource extends AbstractResource {
     boolean isFile() {
         return NT_FILE.equals(getResourceType());
     }
+
+    /**
+     * The lazily computed properties of the resource and the properties of
+     * its child resources read from JSON.
+     */
+    private static final class Properties {
+
+        final BundleResourceValueMap valueMap;
+
+        final Map<String, Map<String, Object>> subResources;
+
+        /** The sorted names of the sub resources, computed on first access */
+        private volatile List<String> subResourceNames;
+
+        Properties(
+                final BundleResourceValueMap valueMap,
+                final Map<String, Map<String, Object>> subResources,
+                final List<String> subResourceNames) {
+            this.valueMap = valueMap;
+            this.subResources = subResources;
+            this.subResourceNames = subResourceNames;
+        }
+
+        List<String> getSubResourceNames() {
+            List<String> result = this.subResourceNames;
+            if (result == null) {
+                if (subResources == null) {
+                    result = Collections.emptyList();
+                } else {
+                    final String[] names = subResources.keySet().toArray(new String[0]);
+                    Arrays.sort(names);
+                    result = Collections.unmodifiableList(Arrays.asList(names));
+                }
+                this.subResourceNames = result;
+            }
+            return result;
+        }
+    }
 }
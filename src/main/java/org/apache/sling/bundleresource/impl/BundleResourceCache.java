@@ -18,17 +18,20 @@
  */
 package org.apache.sling.bundleresource.impl;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.ToIntBiFunction;
 
 import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The <code>BundleResourceCache</code> implements a simple caching for
@@ -36,78 +39,380 @@ import org.osgi.framework.Bundle;
  * instance uses an instance of this class to access the bundle resources (or
  * bundle entries) through the cache.
  * <p>
- * The cache on the one hand caches single entries as URLs. The other part of
+ * The cache on the one hand caches single entries as URLs, along with their
+ * content length once it has been requested. The other part of
  * the cache is for the child entries of a given bundle entry path. This caches
- * lists of strings (entry path).
+ * lists of strings (entry path). For mappings with JSON properties the child
+ * entries merged with the sub resources of the parent are cached as well, such
+ * that listing the same folder repeatedly does not merge and sort them again.
+ * Finally the properties read from the JSON properties files of these mappings
+ * are cached as unmodifiable maps, such that resolving the same resource
+ * repeatedly does not read and parse the file again, along with the nearest
+ * ancestor entry defining each resource resolved from these properties, such
+ * that resolving the same resource or missing resource again does not walk up
+ * its ancestors.
  * <p>
- * Currently the cache limits are fixed at {@value #CACHE_SIZE} for the entries
- * cache and at {@value #LIST_CACHE_SIZE} for the child entries cache.
+ * All parts are held in {@link BoundedCache} instances, which allow lookups
+ * without locking, such that concurrent requests for resources of the same
+ * bundle do not contend with each other. Concurrent misses of the same entry
+ * are coalesced, such that a burst of requests for a resource not cached yet
+ * accesses the bundle only once.
+ * <p>
+ * The entry, entry type and child list caches only admit new entries in place
+ * of entries accessed more often, see {@link BoundedCache}, such that a
+ * traversal of the whole bundle does not evict the entries used to render
+ * requests. Lookups on behalf of such a bulk traversal may also bypass these
+ * caches altogether, see {@link BundleResourceProvider#PROP_BULK_TRAVERSAL}.
+ * <p>
+ * With adaptive sizing the limits of the caches are adapted periodically by
+ * the {@link AdaptiveCacheSizer} between a quarter of the configured limit and
+ * the configured limit multiplied by the
+ * {@link BundleResourceConfiguration#getAdaptiveMaxFactor() maximum factor}.
+ * <p>
+ * If a global cache limit is configured, the caches of all bundles draw from
+ * a single {@link CachePool} instead and the limits of the bundle and the
+ * adaptive sizing do not apply. The entries of a bundle are removed from the
+ * pool once the cache is closed as the bundle stops.
+ * <p>
+ * The cache limits are taken from the {@link BundleResourceConfiguration},
+ * unless the bundle defines its own limits through directives of the
+ * {@link Activator#BUNDLE_RESOURCE_ROOTS} header. Depending on the
+ * configuration the limits are either numbers of entries or estimated numbers
+ * of bytes used by the cached entries. Each cache has a budget of its own: the
+ * entry limit applies to each of the entry, entry type and JSON ancestor caches
+ * and the list limit to each of the child entry and child resource caches, such
+ * that the caches of a bundle may hold up to three times the entry limit and
+ * twice the list limit together.
+ * <p>
+ * If enabled, the entries of the bundle below the entry roots of the mappings
+ * are held in a {@link BundleEntryIndex}. In this case non-existing entries are
+ * detected and child entries are listed without accessing the bundle, such
+ * that only the URLs of existing entries are cached.
+ * <p>
+ * Otherwise, if enabled, the paths of the entries below the entry roots are
+ * held in a {@link BundleEntryFilter}, which detects most non-existing entries
+ * without accessing the cache or the bundle.
  */
 class BundleResourceCache {
 
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Estimated memory in bytes used by the cache internals and the key string
+     * of a single cached entry, excluding the characters of the key.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * Estimated memory in bytes used by a cached URL, excluding the characters
+     * of the path, which are held twice (path and file).
+     */
+    private static final int URL_OVERHEAD = 200;
+
     /**
-     * The maximum size of the single entry cache (value is 50).
+     * Estimated memory in bytes used by each element of a list or array property,
+     * excluding the characters of string elements.
      */
-    private static final int CACHE_SIZE = 50;
+    private static final int LIST_ELEMENT_OVERHEAD = 64;
 
     /**
-     * The maximum size of the child entry cache (value is 20).
+     * Estimated memory in bytes used by each name in a cached child entry
+     * list, excluding the characters of the name.
      */
-    private static final int LIST_CACHE_SIZE = 20;
+    private static final int CHILD_NAME_OVERHEAD = 48;
+
+    /**
+     * Estimated memory in bytes used by each property in a cached property
+     * map, excluding the characters of the name and string values.
+     */
+    private static final int PROPERTY_OVERHEAD = 64;
+
+    /**
+     * The divisor of the configured limits giving the lower bound of the
+     * limits with adaptive sizing (value is 4).
+     */
+    private static final int MIN_LIMIT_DIVISOR = 4;
 
     /**
      * Sentinel for the single entry cache representing a missing entry to
-     * prevent looking for non-existing bundle entries multiple times (value is
-     * "file:///not_found").
+     * prevent looking for non-existing bundle entries multiple times.
      */
-    private static final URL NOT_FOUND_URL;
+    private static final CachedEntry NOT_FOUND = new CachedEntry(null);
 
     /**
      * Sentinel for the child entry cache representing a missing child list for
      * a given path to prevent looking for non-existing bundle entries multiple
      * times (value is an empty list).
      */
-    private static final List<String> NOT_FOUND_CHILDREN = Collections.<String>emptyList();
+    private static final ChildEntries NOT_FOUND_CHILDREN = ChildEntries.EMPTY;
+
+    /**
+     * Single entry cache. This is a concurrent map with a size limit holding
+     * the URL and, once requested, the content length of each entry.
+     */
+    private volatile BoundedCache<String, CachedEntry> cache;
+
+    /**
+     * The entry type cache. This is a concurrent map with a size limit holding
+     * the type of the entries looked up for resource paths and JSON
+     * properties extensions.
+     */
+    private volatile BoundedCache<TypeKey, EntryType> typeCache;
+
+    /**
+     * The child entry cache. This is a concurrent map with a size limit
+     * holding the sorted names of the children of each folder.
+     */
+    private volatile BoundedCache<String, ChildEntries> listCache;
 
     /**
-     * Single entry cache. This is a synchronized map with a size limit.
+     * The child resource cache. This is a concurrent map with a size limit
+     * holding the sorted names of the child resources of each folder of a
+     * mapping with JSON properties. It is limited by the limit of the child
+     * entry cache, which applies to each of the two caches on its own.
      */
-    private final Map<String, URL> cache;
+    private volatile BoundedCache<String, ChildResourceNames> childCache;
 
     /**
-     * The child entry cache. This is a synchronized map with a size limit.
+     * The JSON ancestor cache. This is a concurrent map with a size limit
+     * holding the nearest ancestor entry whose JSON properties define the
+     * resource of each resource path not being an entry. It is limited by the
+     * limit of the entry cache, which applies to each of these caches on its
+     * own.
      */
-    private final Map<String, List<String>> listCache;
+    private volatile BoundedCache<String, JsonAncestor> ancestorCache;
+
+    /**
+     * The JSON properties cache. This is a concurrent map with a size limit
+     * holding the unmodifiable properties read from the JSON properties files.
+     */
+    private volatile BoundedCache<String, Map<String, Object>> propsCache;
 
     /**
      * The Bundle providing the resource entries.
      */
     private final Bundle bundle;
 
-    // static initializer setting the NOT_FOUND_URL. Because the
-    // constructor may throw an exception we use a static initializer
-    // which fails the class initialization in the unlikely case
-    // of the URL constructor failing.
-    static {
-        try {
-            NOT_FOUND_URL = new URL("file:/not_found");
-        } catch (MalformedURLException mue) {
-            throw new ExceptionInInitializerError(mue);
-        }
-    }
+    /**
+     * Whether the bundle contains precompiled binary forms of its JSON
+     * properties files, see {@link BinaryProperties}, or <code>null</code> if
+     * not looked up yet.
+     */
+    private volatile Boolean binaryProperties;
+
+    /**
+     * The mappings of the bundle, all sharing this cache.
+     */
+    private final PathMapping[] roots;
+
+    /**
+     * The number of entries the bundle defines as the entry cache limit or
+     * zero to use the limit of the configuration. The bundle may only raise
+     * the global limit and, if the caches of all bundles share a pool, its
+     * entry caches are kept out of the pool.
+     */
+    private final int bundleEntryCacheLimit;
+
+    /**
+     * The number of entries the bundle defines as the child entry cache limit
+     * or zero to use the limit of the configuration, see
+     * {@link #bundleEntryCacheLimit}.
+     */
+    private final int bundleListCacheLimit;
+
+    /**
+     * The pool shared by the caches of all bundles or <code>null</code> if
+     * the caches of this bundle are limited on their own.
+     */
+    private volatile CachePool pool;
+
+    /**
+     * The configuration currently applied to the caches.
+     */
+    private volatile BundleResourceConfiguration configuration;
+
+    /**
+     * The index of the bundle entries or <code>null</code> if the entries are
+     * not indexed.
+     */
+    private volatile BundleEntryIndex index;
+
+    /**
+     * The Bloom filter of the bundle entry paths or <code>null</code> if the
+     * entries are not filtered.
+     */
+    private volatile BundleEntryFilter filter;
 
     /**
      * Creates a new instance of this class providing access to the entries in
-     * the given <code>bundle</code>.
+     * the given <code>bundle</code> using the default configuration.
      *
      * @param bundle
      */
     BundleResourceCache(Bundle bundle) {
+        this(bundle, BundleResourceConfiguration.DEFAULT, new PathMapping[0]);
+    }
+
+    /**
+     * Creates a new instance of this class providing access to the entries in
+     * the given <code>bundle</code>.
+     *
+     * @param bundle The bundle providing the entries
+     * @param configuration The global configuration
+     * @param roots The mappings of the bundle, which may define their own
+     *            cache limits and whether they are indexed
+     */
+    BundleResourceCache(
+            final Bundle bundle, final BundleResourceConfiguration configuration, final PathMapping[] roots) {
+        this(bundle, configuration, roots, null);
+    }
+
+    /**
+     * Creates a new instance of this class providing access to the entries in
+     * the given <code>bundle</code>.
+     *
+     * @param bundle The bundle providing the entries
+     * @param configuration The global configuration
+     * @param roots The mappings of the bundle, which may define their own
+     *            cache limits and whether they are indexed
+     * @param pool The pool shared by the caches of all bundles or
+     *            <code>null</code> to limit the caches of the bundle on their
+     *            own
+     */
+    BundleResourceCache(
+            final Bundle bundle,
+            final BundleResourceConfiguration configuration,
+            final PathMapping[] roots,
+            final CachePool pool) {
         this.bundle = bundle;
+        this.roots = roots;
 
-        // create the limited maps wrapping in synchronized maps
-        this.cache = Collections.synchronizedMap(new BundleResourceMap<String, URL>(CACHE_SIZE));
-        this.listCache = Collections.synchronizedMap(new BundleResourceMap<String, List<String>>(LIST_CACHE_SIZE));
+        // the bundle may raise the cache limits for any of its roots
+        int entryCacheLimit = 0;
+        int listCacheLimit = 0;
+        for (final PathMapping path : roots) {
+            entryCacheLimit = Math.max(entryCacheLimit, path.getEntryCacheLimit());
+            listCacheLimit = Math.max(listCacheLimit, path.getListCacheLimit());
+        }
+        this.bundleEntryCacheLimit = entryCacheLimit;
+        this.bundleListCacheLimit = listCacheLimit;
+
+        configure(configuration, pool);
+    }
+
+    /**
+     * Applies the configuration to this cache. As the limits and the way
+     * entries are weighed may change, the caches are recreated and thus
+     * emptied. The index and the filter are built if they are enabled and
+     * have not been built yet and are dropped if they are disabled.
+     *
+     * @param configuration The new global configuration
+     */
+    void configure(final BundleResourceConfiguration configuration) {
+        configure(configuration, this.pool);
+    }
+
+    /**
+     * Applies the configuration to this cache like
+     * {@link #configure(BundleResourceConfiguration)}, drawing the caches
+     * from the given pool.
+     *
+     * @param configuration The new global configuration
+     * @param pool The pool shared by the caches of all bundles or
+     *            <code>null</code> to limit the caches of the bundle on their
+     *            own
+     */
+    void configure(final BundleResourceConfiguration configuration, final CachePool pool) {
+        // entries of the replaced caches must not take up the shared pool
+        close();
+
+        // the limits of the bundle are numbers of entries, scaled to bytes
+        // with memory sizing, and may only raise the global limits
+        final int entryLimit = configuration.getEntryCacheLimit(bundleEntryCacheLimit);
+        final int listLimit = configuration.getListCacheLimit(bundleListCacheLimit);
+
+        // caches limited by the bundle are kept out of a shared pool, such
+        // that busy bundles cannot evict the entries the bundle asked for
+        final CachePool entryPool = (bundleEntryCacheLimit > 0) ? null : pool;
+        final CachePool listPool = (bundleListCacheLimit > 0) ? null : pool;
+
+        final boolean memorySizing = configuration.isMemorySizing();
+        this.cache = newCache(entryPool, entryLimit, memorySizing ? BundleResourceCache::weighEntry : null);
+        this.typeCache = newCache(entryPool, entryLimit, memorySizing ? BundleResourceCache::weighType : null);
+        this.ancestorCache = newCache(entryPool, entryLimit, memorySizing ? BundleResourceCache::weighAncestor : null);
+        this.listCache = newCache(listPool, listLimit, memorySizing ? BundleResourceCache::weighList : null);
+        this.childCache = newCache(listPool, listLimit, memorySizing ? BundleResourceCache::weighChildren : null);
+        if (pool != null) {
+            this.propsCache =
+                    new BoundedCache<>(pool, memorySizing ? BundleResourceCache::weighProperties : null, false);
+        } else {
+            this.propsCache = new BoundedCache<>(
+                    configuration.getPropsCacheLimit(), memorySizing ? BundleResourceCache::weighProperties : null);
+        }
+
+        // the lookups are only counted to adapt the limits
+        if (pool == null && configuration.isAdaptiveSizing()) {
+            for (final BoundedCache<?, ?> boundedCache :
+                    new BoundedCache<?, ?>[] {cache, typeCache, listCache, childCache, ancestorCache, propsCache}) {
+                boundedCache.recordStats();
+            }
+        }
+
+        final List<String> indexRoots = getIndexRoots(configuration);
+        if (indexRoots.isEmpty()) {
+            this.index = null;
+        } else if (this.index == null || !indexRoots.equals(getIndexRoots(this.configuration))) {
+            this.index = BundleEntryIndex.build(bundle, indexRoots);
+        }
+
+        final List<String> filterRoots = getFilterRoots(configuration);
+        if (filterRoots.isEmpty()) {
+            this.filter = null;
+        } else if (this.filter == null || !filterRoots.equals(getFilterRoots(this.configuration))) {
+            this.filter = BundleEntryFilter.build(bundle, filterRoots);
+        }
+        this.pool = pool;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Removes the entries of the caches drawn from the pool shared by all
+     * bundles, returning their share of the pool at once. The caches may still
+     * be used afterwards.
+     */
+    void close() {
+        // the caches are not created yet while constructing
+        for (final BoundedCache<?, ?> boundedCache :
+                new BoundedCache<?, ?>[] {cache, typeCache, listCache, childCache, ancestorCache, propsCache}) {
+            if (boundedCache != null && boundedCache.isSharedPool()) {
+                boundedCache.clear();
+            }
+        }
+    }
+
+    /**
+     * Adapts the limits of the caches to their use since the last adaptation,
+     * see {@link BoundedCache#adaptLimit(int, int, boolean, boolean)}.
+     *
+     * @param pressure Whether the heap is short of memory
+     * @param heapAvailable Whether there is enough heap to raise the limits
+     */
+    void adaptLimits(final boolean pressure, final boolean heapAvailable) {
+        if (pool != null) {
+            // the limit of the shared pool is configured
+            return;
+        }
+        final int factor = configuration.getAdaptiveMaxFactor();
+        for (final BoundedCache<?, ?> boundedCache :
+                new BoundedCache<?, ?>[] {cache, typeCache, listCache, childCache, ancestorCache, propsCache}) {
+            final int configuredLimit = boundedCache.getConfiguredLimit();
+            boundedCache.adaptLimit(
+                    Math.max(1, configuredLimit / MIN_LIMIT_DIVISOR),
+                    (int) Math.min(Integer.MAX_VALUE, (long) configuredLimit * factor),
+                    pressure,
+                    heapAvailable);
+        }
     }
 
     /**
@@ -130,18 +435,125 @@ class BundleResourceCache {
      *         bundle does not contain the request entry.
      */
     URL getEntry(String path) {
-        URL url = cache.get(path);
-        if (url == null) {
-            url = bundle.getEntry(path);
+        final CachedEntry entry = getCachedEntry(path);
+        return (entry == null) ? null : entry.url;
+    }
 
-            if (url == null) {
-                url = NOT_FOUND_URL;
+    /**
+     * Returns the content length of the entry in the underlying bundle at the
+     * given path. The length is taken from a connection to the entry URL once
+     * and kept with the cached entry.
+     *
+     * @param path The path to the bundle entry
+     * @return The content length or -1 if the bundle does not contain the
+     *         entry or its length is not known.
+     */
+    int getContentLength(final String path) {
+        final CachedEntry entry = getCachedEntry(path);
+        if (entry == null) {
+            return -1;
+        }
+
+        int length = entry.contentLength;
+        if (length == CachedEntry.UNKNOWN_LENGTH) {
+            try {
+                length = entry.url.openConnection().getContentLength();
+            } catch (final Exception e) { // NOSONAR
+                // don't care, we just have no content length
+                length = -1;
             }
+            entry.contentLength = length;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the type of the entries in the underlying bundle for the given
+     * path, which is a folder if there is an entry with a trailing slash, a
+     * file if there is an entry for the path or JSON properties if there is
+     * an entry with the JSON properties extension.
+     * <p>
+     * The type is cached as a single record for all these entries, such that
+     * repeated lookups of the same path cost a single cache access. As
+     * mappings of the same entries may differ in the JSON properties
+     * extension, the type is cached for the path and the extension.
+     *
+     * @param path The path to the bundle entry without trailing slash
+     * @param jsonExtension The JSON properties extension of the mapping or
+     *            <code>null</code> if the mapping has no JSON properties
+     * @return The type of the entry, never <code>null</code>
+     */
+    EntryType getEntryType(final String path, final String jsonExtension) {
+        return getEntryType(path, jsonExtension, false);
+    }
 
-            cache.put(path, url);
+    /**
+     * Returns the type of the entries in the underlying bundle for the given
+     * path like {@link #getEntryType(String, String)}. For a bulk traversal
+     * a type not cached yet is looked up without caching it.
+     *
+     * @param path The path to the bundle entry without trailing slash
+     * @param jsonExtension The JSON properties extension of the mapping or
+     *            <code>null</code>
+     * @param bulk Whether the lookup is part of a bulk traversal
+     * @return The type of the entries, never <code>null</code>
+     */
+    EntryType getEntryType(final String path, final String jsonExtension, final boolean bulk) {
+        final TypeKey typeKey = new TypeKey(path, jsonExtension);
+        if (bulk) {
+            final EntryType type = typeCache.peek(typeKey);
+            return (type != null) ? type : loadEntryType(path, jsonExtension);
         }
+        return typeCache.get(typeKey, key -> loadEntryType(key.path, key.jsonExtension));
+    }
 
-        return (url == NOT_FOUND_URL) ? null : url;
+    private EntryType loadEntryType(final String path, final String jsonExtension) {
+        if (exists(path.concat("/"))) {
+            return EntryType.FOLDER;
+        } else if (exists(path)) {
+            return EntryType.FILE;
+        } else if (jsonExtension != null && exists(path.concat(jsonExtension))) {
+            return EntryType.PROPERTIES;
+        }
+        return EntryType.ABSENT;
+    }
+
+    /**
+     * Returns <code>true</code> if the bundle has an entry at the path. Unlike
+     * {@link #getEntry(String)} this does not cache the URL of the entry.
+     */
+    boolean exists(final String path) {
+        final BundleEntryIndex entryIndex = this.index;
+        if (entryIndex != null && entryIndex.covers(path)) {
+            return entryIndex.contains(path);
+        }
+        final BundleEntryFilter entryFilter = this.filter;
+        if (entryFilter != null && entryFilter.isAbsent(path)) {
+            return false;
+        }
+        final CachedEntry entry = cache.peek(path);
+        if (entry != null) {
+            return entry != NOT_FOUND;
+        }
+        return bundle.getEntry(path) != null;
+    }
+
+    private CachedEntry getCachedEntry(final String path) {
+        final BundleEntryIndex entryIndex = this.index;
+        if (entryIndex != null && entryIndex.isAbsent(path)) {
+            return null;
+        }
+        final BundleEntryFilter entryFilter = this.filter;
+        if (entryFilter != null && entryFilter.isAbsent(path)) {
+            return null;
+        }
+
+        final CachedEntry entry = cache.get(path, key -> {
+            final URL url = bundle.getEntry(key);
+            return (url == null) ? NOT_FOUND : new CachedEntry(url);
+        });
+
+        return (entry == NOT_FOUND) ? null : entry;
     }
 
     /**
@@ -150,35 +562,206 @@ class BundleResourceCache {
      * path. If relative it is resolved relative to the bundle root.
      * <p>
      * This method is backed by the <code>Bundle.getEntryPaths(String)</code>
-     * method but returns an <code>Iterator<String></code> instead of an
+     * method but returns the sorted {@link ChildEntries} instead of an
      * <code>Enumeration</code> of strings.
      *
      * @param parentPath The path to the parent entry whose child entries are to
+     *            be returned, ending with a slash.
+     * @return The child entries, providing the paths of entries considered
+     *         direct children of the <code>parentPath</code>, which are empty
+     *         if the parent entry does not exist.
+     */
+    ChildEntries getEntryPaths(String path) {
+        return getEntryPaths(path, false);
+    }
+
+    /**
+     * Returns a list of bundle entry paths considered children of the given
+     * <code>parentPath</code> like {@link #getEntryPaths(String)}. For a bulk
+     * traversal a list not cached yet is read from the bundle without caching
+     * it.
+     *
+     * @param parentPath The path to the parent entry whose child entries are to
      *            be returned.
-     * @return An <code>Iterator<String></code> providing the paths of
-     *         entries considered direct children of the <code>parentPath</code>
-     *         or <code>null</code> if the parent entry does not exist.
-     */
-    List<String> getEntryPaths(String path) {
-        List<String> list = listCache.get(path);
-        if (list == null) {
-
-            Enumeration<String> entries = bundle.getEntryPaths(path);
-            if (entries != null && entries.hasMoreElements()) {
-                list = new LinkedList<>();
-                while (entries.hasMoreElements()) {
-                    list.add(entries.nextElement());
-                }
+     * @param bulk Whether the lookup is part of a bulk traversal
+     * @return The child entries, which are empty if the parent entry does not
+     *         exist.
+     */
+    ChildEntries getEntryPaths(final String path, final boolean bulk) {
+        final BundleEntryIndex entryIndex = this.index;
+        if (entryIndex != null) {
+            final ChildEntries children = entryIndex.getChildren(path);
+            if (children != null) {
+                return children;
             }
+        }
+        final BundleEntryFilter entryFilter = this.filter;
+        if (entryFilter != null && entryFilter.isAbsent(path)) {
+            return NOT_FOUND_CHILDREN;
+        }
 
-            if (list == null) {
-                list = NOT_FOUND_CHILDREN;
-            }
+        if (bulk) {
+            final ChildEntries list = listCache.peek(path);
+            return (list != null) ? list : loadEntryPaths(path);
+        }
+        return listCache.get(path, this::loadEntryPaths);
+    }
+
+    private ChildEntries loadEntryPaths(final String path) {
+        return ChildEntries.of(path, bundle.getEntryPaths(path));
+    }
+
+    /**
+     * Returns the unsorted entry paths of the children of the given parent
+     * path as enumerated by the bundle, if child listings are streamed and
+     * the children are neither indexed nor cached. Otherwise returns
+     * <code>null</code> and the sorted children are to be taken from
+     * {@link #getEntryPaths(String, boolean)}.
+     * <p>
+     * The enumerated entries are not cached, such that listing a large folder
+     * takes time and memory proportional to the number of children read.
+     *
+     * @param path The path to the parent entry, ending with a slash
+     * @return The enumeration of the child entry paths or <code>null</code>
+     * @see BundleResourceConfiguration#isListStreaming()
+     */
+    Enumeration<String> getStreamingEntryPaths(final String path) {
+        if (!configuration.isListStreaming()) {
+            return null;
+        }
+        final BundleEntryIndex entryIndex = this.index;
+        if (entryIndex != null && entryIndex.getChildren(path) != null) {
+            return null;
+        }
+        final BundleEntryFilter entryFilter = this.filter;
+        if (entryFilter != null && entryFilter.isAbsent(path)) {
+            return Collections.emptyEnumeration();
+        }
+        if (listCache.peek(path) != null) {
+            return null;
+        }
+        final Enumeration<String> entries = bundle.getEntryPaths(path);
+        return (entries != null) ? entries : Collections.emptyEnumeration();
+    }
 
-            listCache.put(path, list);
+    /**
+     * Returns the names of the child resources of the folder at the given
+     * entry path for a mapping with JSON properties, which are the child
+     * entries merged with the sub resources of the parent resource, see
+     * {@link ChildResourceNames#merge(ChildEntries, String, Map)}.
+     * <p>
+     * The names are cached by the entry path of the folder. As a folder is
+     * always mapped by the same mapping and its sub resources are read from
+     * the same JSON properties, the names merged for other sub resources are
+     * neither returned nor cached. For a bulk traversal names not cached yet
+     * are merged without caching them.
+     *
+     * @param path The path to the parent entry, ending with a slash
+     * @param jsonExtension The JSON properties extension of the mapping
+     * @param subResources The sub resources of the parent resource, may be
+     *            <code>null</code>
+     * @param bulk Whether the lookup is part of a bulk traversal
+     * @return The names of the child resources
+     */
+    ChildResourceNames getChildResourceNames(
+            final String path, final String jsonExtension, final Map<String, ?> subResources, final boolean bulk) {
+        final ChildResourceNames names = bulk
+                ? childCache.peek(path)
+                : childCache.get(
+                        path, key -> ChildResourceNames.merge(getEntryPaths(key), jsonExtension, subResources));
+        if (names != null && names.isMergedFrom(jsonExtension, subResources)) {
+            return names;
         }
+        return ChildResourceNames.merge(getEntryPaths(path, bulk), jsonExtension, subResources);
+    }
 
-        return list;
+    /**
+     * Returns the nearest ancestor entry defining the resource at the given
+     * path in its JSON properties as cached by
+     * {@link #putJsonAncestor(String, JsonAncestor)}.
+     *
+     * @param resourcePath The path of the resource not being an entry
+     * @return The cached ancestor or <code>null</code> if not cached
+     */
+    JsonAncestor getJsonAncestor(final String resourcePath) {
+        return ancestorCache.get(resourcePath);
+    }
+
+    /**
+     * Caches the nearest ancestor entry defining the resource at the given
+     * path in its JSON properties.
+     *
+     * @param resourcePath The path of the resource not being an entry
+     * @param ancestor The ancestor, which has no path if there is no such
+     *            resource
+     */
+    void putJsonAncestor(final String resourcePath, final JsonAncestor ancestor) {
+        ancestorCache.put(resourcePath, ancestor);
+    }
+
+    /**
+     * Returns the properties read from the JSON properties file at the given
+     * entry path, or from its precompiled binary form if the bundle contains
+     * it. Nested objects are contained as nested maps.
+     *
+     * @param path The path to the bundle entry of the JSON properties file
+     * @return The unmodifiable properties or <code>null</code> if the bundle
+     *         does not contain the entry.
+     * @throws IOException If the entry cannot be read
+     */
+    Map<String, Object> getProperties(final String path) throws IOException {
+        final Map<String, Object> props = propsCache.get(path);
+        if (props != null) {
+            return props;
+        }
+
+        final URL url = getEntry(path);
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            return propsCache.get(path, key -> {
+                try {
+                    return readProperties(key, url);
+                } catch (final IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (final UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Reads the properties of the JSON properties file, preferring its binary
+     * form if the bundle contains it. A binary form which cannot be read, for
+     * example as it has been compiled for another version, or which has been
+     * compiled from a JSON properties file of another length is ignored, as is
+     * a binary form of a JSON properties file whose length is not known. The
+     * JSON properties file is not read to check the binary form, only the
+     * cached length of its entry is compared.
+     */
+    private Map<String, Object> readProperties(final String path, final URL url) throws IOException {
+        Boolean binary = this.binaryProperties;
+        if (binary == null) {
+            // looked up once as only some bundles contain binary forms
+            binary = bundle.getEntryPaths(BinaryProperties.ROOT.concat("/")) != null;
+            this.binaryProperties = binary;
+        }
+        final URL binaryUrl = binary ? bundle.getEntry(BinaryProperties.getEntryPath(path)) : null;
+        if (binaryUrl != null) {
+            try {
+                final Map<String, Object> props = BinaryProperties.read(binaryUrl.openStream(), getContentLength(path));
+                if (props != null) {
+                    return props;
+                }
+                log.warn("Binary properties {} are stale, reading {} instead", binaryUrl, path);
+            } catch (final IOException ioe) {
+                log.warn("Cannot read binary properties {}, reading {} instead", binaryUrl, path, ioe);
+            }
+        }
+        return JsonProperties.read(url.openStream());
     }
 
     // ---------- Management API
@@ -193,11 +776,62 @@ class BundleResourceCache {
     }
 
     /**
-     * Returns the maximum number of entries to be stored in the cache. This
-     * number is currently fixed at {@link #CACHE_SIZE}
+     * Returns the estimated number of bytes used by the entry cache if the
+     * cache is sized by memory. Otherwise this is the number of entries.
+     */
+    long getEntryCacheWeight() {
+        return cache.weight();
+    }
+
+    /**
+     * Returns the maximum number of entries to be stored in the cache or the
+     * maximum number of bytes if the cache is sized by memory.
      */
     int getEntryCacheMaxSize() {
-        return CACHE_SIZE;
+        return cache.getLimit();
+    }
+
+    /**
+     * Returns the configured maximum number of entries to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getEntryCacheConfiguredMaxSize() {
+        return cache.getConfiguredLimit();
+    }
+
+    /**
+     * Returns the current number of entry types stored in the entry type
+     * cache.
+     */
+    int getTypeCacheSize() {
+        return typeCache.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the entry type cache if
+     * the cache is sized by memory. Otherwise this is the number of entries.
+     */
+    long getTypeCacheWeight() {
+        return typeCache.weight();
+    }
+
+    /**
+     * Returns the maximum number of entry types to be stored in the cache or
+     * the maximum number of bytes if the cache is sized by memory, which is
+     * the limit of the entry cache.
+     */
+    int getTypeCacheMaxSize() {
+        return typeCache.getLimit();
+    }
+
+    /**
+     * Returns the configured maximum number of entry types to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getTypeCacheConfiguredMaxSize() {
+        return typeCache.getConfiguredLimit();
     }
 
     /**
@@ -210,80 +844,480 @@ class BundleResourceCache {
     }
 
     /**
-     * Returns the maximum number of list entries to be stored in the cache.
-     * This number is currently fixed at {@link #LIST_CACHE_SIZE}
+     * Returns the estimated number of bytes used by the list cache if the
+     * cache is sized by memory. Otherwise this is the number of entries.
+     */
+    long getListCacheWeight() {
+        return listCache.weight();
+    }
+
+    /**
+     * Returns the maximum number of list entries to be stored in the cache or
+     * the maximum number of bytes if the cache is sized by memory.
      */
     int getListCacheMaxSize() {
-        return LIST_CACHE_SIZE;
+        return listCache.getLimit();
+    }
+
+    /**
+     * Returns the configured maximum number of list entries to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getListCacheConfiguredMaxSize() {
+        return listCache.getConfiguredLimit();
     }
 
-    // ---------- inner class
+    /**
+     * Returns the current number of child resource lists stored in the child
+     * resource cache.
+     */
+    int getChildCacheSize() {
+        return childCache.size();
+    }
 
     /**
-     * The <code>BundleResourceMap</code> class extends the
-     * <code>LinkedHashMap</code> class overwriting the
-     * {@link #removeEldestEntry(Entry)} method to implement the size limit,
-     * which is set in the constructor.
+     * Returns the estimated number of bytes used by the child resource cache
+     * if the cache is sized by memory. Otherwise this is the number of
+     * entries.
      */
-    private static class BundleResourceMap<K, V> extends LinkedHashMap<K, V> {
+    long getChildCacheWeight() {
+        return childCache.weight();
+    }
 
-        private static final long serialVersionUID = 7455098291380945276L;
+    /**
+     * Returns the maximum number of child resource lists to be stored in the
+     * cache or the maximum number of bytes if the cache is sized by memory,
+     * which is the limit of the list cache.
+     */
+    int getChildCacheMaxSize() {
+        return childCache.getLimit();
+    }
 
-        /**
-         * The default size of a bundle resource cache (value is 20).
-         */
-        private static final int DEFAULT_LIMIT = 20;
+    /**
+     * Returns the configured maximum number of child resource lists to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getChildCacheConfiguredMaxSize() {
+        return childCache.getConfiguredLimit();
+    }
 
-        /**
-         * The limit configured for this map.
-         */
-        private final int limit;
+    /**
+     * Returns the current number of ancestors stored in the JSON ancestor
+     * cache. This number includes "negative" entries for resource paths
+     * without resource.
+     */
+    int getAncestorCacheSize() {
+        return ancestorCache.size();
+    }
 
-        /**
-         * Creates a new instance of this size limited map.
-         *
-         * @param limit The maximum number of entries in this map. If this value
-         *            is less than or equal to zero, the default size of
-         *            {@link #DEFAULT_LIMIT} is used.
-         */
-        BundleResourceMap(int limit) {
-            // deliberately chosen initial size and load factor, but
-            // we need the access-order to implement the LRU mechanism
-            super(8, 0.75f, true);
-
-            // normalize size to a positive number
-            if (limit <= 0) {
-                limit = DEFAULT_LIMIT;
+    /**
+     * Returns the estimated number of bytes used by the JSON ancestor cache
+     * if the cache is sized by memory. Otherwise this is the number of
+     * entries.
+     */
+    long getAncestorCacheWeight() {
+        return ancestorCache.weight();
+    }
+
+    /**
+     * Returns the maximum number of ancestors to be stored in the cache or the
+     * maximum number of bytes if the cache is sized by memory, which is the
+     * limit of the entry cache.
+     */
+    int getAncestorCacheMaxSize() {
+        return ancestorCache.getLimit();
+    }
+
+    /**
+     * Returns the configured maximum number of ancestors to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getAncestorCacheConfiguredMaxSize() {
+        return ancestorCache.getConfiguredLimit();
+    }
+
+    /**
+     * Returns the current number of property maps stored in the JSON
+     * properties cache.
+     */
+    int getPropsCacheSize() {
+        return propsCache.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the JSON properties cache
+     * if the cache is sized by memory. Otherwise this is the number of entries.
+     */
+    long getPropsCacheWeight() {
+        return propsCache.weight();
+    }
+
+    /**
+     * Returns the maximum number of property maps to be stored in the cache or
+     * the maximum number of bytes if the cache is sized by memory.
+     */
+    int getPropsCacheMaxSize() {
+        return propsCache.getLimit();
+    }
+
+    /**
+     * Returns the configured maximum number of property maps to be stored in the cache
+     * or the maximum number of bytes if the cache is sized by memory, which
+     * differs from the current maximum with adaptive sizing.
+     */
+    int getPropsCacheConfiguredMaxSize() {
+        return propsCache.getConfiguredLimit();
+    }
+
+    /**
+     * Returns the number of entries, entry types, child lists and properties
+     * loaded from the bundle since the caches were last configured.
+     */
+    long getLoadCount() {
+        return cache.getLoadCount()
+                + typeCache.getLoadCount()
+                + listCache.getLoadCount()
+                + childCache.getLoadCount()
+                + ancestorCache.getLoadCount()
+                + propsCache.getLoadCount();
+    }
+
+    /**
+     * Returns the number of loads from the bundle saved since the caches were
+     * last configured by waiting for the concurrent load of the same entry,
+     * entry type, child list or properties.
+     */
+    long getSavedLoadCount() {
+        return cache.getSavedLoadCount()
+                + typeCache.getSavedLoadCount()
+                + listCache.getSavedLoadCount()
+                + childCache.getSavedLoadCount()
+                + ancestorCache.getSavedLoadCount()
+                + propsCache.getSavedLoadCount();
+    }
+
+    /**
+     * Returns the number of new entries, entry types and child lists not
+     * admitted to the caches since they were last configured, because the
+     * entries they would have replaced are accessed more often.
+     */
+    long getRejectedCount() {
+        return cache.getRejectedCount()
+                + typeCache.getRejectedCount()
+                + listCache.getRejectedCount()
+                + childCache.getRejectedCount()
+                + ancestorCache.getRejectedCount();
+    }
+
+    /**
+     * Returns the pool shared by the caches of all bundles or
+     * <code>null</code> if the caches of this bundle are limited on their own.
+     */
+    CachePool getCachePool() {
+        return pool;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache limits are adapted to the use of
+     * the caches and the available heap.
+     */
+    boolean isAdaptiveSizing() {
+        return pool == null && configuration.isAdaptiveSizing();
+    }
+
+    /**
+     * Returns <code>true</code> if the cache limits are estimated bytes
+     * instead of number of entries.
+     */
+    boolean isMemorySizing() {
+        return configuration.isMemorySizing();
+    }
+
+    /**
+     * Returns <code>true</code> if the bundle defines the entry cache limit
+     * in addition to the global configuration.
+     */
+    boolean isBundleEntryCacheLimit() {
+        return bundleEntryCacheLimit > 0;
+    }
+
+    /**
+     * Returns <code>true</code> if the bundle defines the list cache limit
+     * in addition to the global configuration.
+     */
+    boolean isBundleListCacheLimit() {
+        return bundleListCacheLimit > 0;
+    }
+
+    /**
+     * Returns the index of the bundle entries or <code>null</code> if the
+     * entries are not indexed.
+     */
+    BundleEntryIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the Bloom filter of the bundle entry paths or <code>null</code>
+     * if the entries are not filtered.
+     */
+    BundleEntryFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the currently applied global configuration.
+     */
+    BundleResourceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    // ---------- internal
+
+    /**
+     * Returns the entry paths of the roots of the mappings to be indexed with
+     * the given configuration.
+     */
+    private List<String> getIndexRoots(final BundleResourceConfiguration config) {
+        final List<String> indexRoots = new ArrayList<>();
+        if (config != null) {
+            for (final PathMapping path : roots) {
+                final Boolean indexed = path.getIndex();
+                if (indexed != null ? indexed : config.isIndexEnabled()) {
+                    indexRoots.add(path.getEntryRootFolder());
+                }
             }
+        }
+        return indexRoots;
+    }
+
+    /**
+     * Returns the entry paths of the roots of the mappings to be filtered with
+     * the given configuration, which are the roots not indexed.
+     */
+    private List<String> getFilterRoots(final BundleResourceConfiguration config) {
+        final List<String> filterRoots = new ArrayList<>();
+        if (config != null && config.isFilterEnabled()) {
+            final List<String> indexRoots = getIndexRoots(config);
+            for (final PathMapping path : roots) {
+                final String root = path.getEntryRootFolder();
+                if (!indexRoots.contains(root)) {
+                    filterRoots.add(root);
+                }
+            }
+        }
+        return filterRoots;
+    }
+
+    /**
+     * Creates a cache admitting entries by the TinyLFU policy, which is
+     * limited by the given shared pool or, if there is none, on its own by
+     * the given limit.
+     */
+    private static <K, V> BoundedCache<K, V> newCache(
+            final CachePool pool, final int limit, final ToIntBiFunction<K, V> weigher) {
+        return (pool != null) ? new BoundedCache<>(pool, weigher, true) : new BoundedCache<>(limit, weigher, true);
+    }
+
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * URL for the given path.
+     */
+    static int weighEntry(final String path, final CachedEntry entry) {
+        // the path is held by the key, the URL path and the URL file
+        return ENTRY_OVERHEAD + URL_OVERHEAD + 3 * path.length();
+    }
+
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * entry type for the given path and extension.
+     */
+    static int weighType(final TypeKey key, final EntryType type) {
+        return ENTRY_OVERHEAD + key.path.length();
+    }
+
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * list of child entries of the given path.
+     */
+    static int weighList(final String path, final ChildEntries list) {
+        // the parent path is shared with the key
+        int weight = ENTRY_OVERHEAD + path.length();
+        for (int i = 0; i < list.size(); i++) {
+            weight += CHILD_NAME_OVERHEAD + list.getName(i).length();
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * names of the child resources of the given path.
+     */
+    static int weighChildren(final String path, final ChildResourceNames names) {
+        int weight = ENTRY_OVERHEAD + path.length() + CHILD_NAME_OVERHEAD * names.getSubResourceCount();
+        for (int i = 0; i < names.size(); i++) {
+            // the sub resource names are shared with the names of the children
+            weight += CHILD_NAME_OVERHEAD + names.getName(i).length();
+        }
+        return weight;
+    }
 
-            this.limit = limit;
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * JSON ancestor of the given resource path.
+     */
+    static int weighAncestor(final String path, final JsonAncestor ancestor) {
+        // the ancestor path is a new string
+        return ENTRY_OVERHEAD + path.length() + (ancestor.path == null ? 0 : ENTRY_OVERHEAD + ancestor.path.length());
+    }
+
+    /**
+     * Returns the rough estimate of the memory in bytes used by caching the
+     * properties read from the JSON properties file at the given path.
+     */
+    static int weighProperties(final String path, final Map<String, Object> props) {
+        return ENTRY_OVERHEAD + path.length() + weighValue(props);
+    }
+
+    private static int weighValue(final Object value) {
+        if (value instanceof String string) {
+            return string.length();
+        } else if (value instanceof Map<?, ?> map) {
+            int weight = 0;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                weight += PROPERTY_OVERHEAD + entry.getKey().toString().length() + weighValue(entry.getValue());
+            }
+            return weight;
+        } else if (value instanceof List<?> list) {
+            int weight = 0;
+            for (final Object element : list) {
+                weight += LIST_ELEMENT_OVERHEAD + weighValue(element);
+            }
+            return weight;
+        } else if (value instanceof String[] strings) {
+            int weight = 0;
+            for (final String element : strings) {
+                weight += LIST_ELEMENT_OVERHEAD + element.length();
+            }
+            return weight;
+        } else if (value instanceof long[] longs) {
+            return longs.length * Long.BYTES;
+        } else if (value instanceof double[] doubles) {
+            return doubles.length * Double.BYTES;
+        } else if (value instanceof boolean[] booleans) {
+            return booleans.length;
         }
+        // boxed primitives and null are covered by the overhead
+        return 0;
+    }
+
+    /**
+     * The type of the entries of a path, see
+     * {@link BundleResourceCache#getEntryType(String, String)}.
+     */
+    enum EntryType {
+        /** There is a folder entry for the path */
+        FOLDER,
+        /** There is a file entry for the path */
+        FILE,
+        /** There is only a JSON properties file for the path */
+        PROPERTIES,
+        /** There is no entry for the path */
+        ABSENT
+    }
+
+    /**
+     * The key of the entry type cache, which is the path of the entries
+     * together with the JSON properties extension of the mapping, see
+     * {@link BundleResourceCache#getEntryType(String, String)}.
+     */
+    static final class TypeKey {
+
+        final String path;
 
         /**
-         * Returns <code>true</code> if the current number of elements in the
-         * map exceeds the configured limit.
+         * The JSON properties extension of the mapping or <code>null</code>
+         * if the mapping has no JSON properties.
          */
+        final String jsonExtension;
+
+        TypeKey(final String path, final String jsonExtension) {
+            this.path = path;
+            this.jsonExtension = jsonExtension;
+        }
+
         @Override
-        protected boolean removeEldestEntry(Entry<K, V> eldest) {
-            return size() > limit;
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TypeKey)) {
+                return false;
+            }
+            final TypeKey other = (TypeKey) obj;
+            return path.equals(other.path) && Objects.equals(jsonExtension, other.jsonExtension);
         }
 
         @Override
         public int hashCode() {
-            final int prime = 31;
-            int result = super.hashCode();
-            result = prime * result + limit;
-            return result;
+            return 31 * path.hashCode() + Objects.hashCode(jsonExtension);
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (this == obj) return true;
-            if (!super.equals(obj)) return false;
-            if (getClass() != obj.getClass()) return false;
-            @SuppressWarnings("rawtypes")
-            BundleResourceMap other = (BundleResourceMap) obj;
-            return limit == other.limit;
+        public String toString() {
+            return (jsonExtension == null) ? path : path + " (" + jsonExtension + ")";
+        }
+    }
+
+    /**
+     * The value of the JSON ancestor cache, which is the nearest ancestor
+     * entry of a resource path whose JSON properties define the resource.
+     */
+    static final class JsonAncestor {
+
+        /**
+         * The mapping of the resource path, as the ancestor is looked up
+         * below the root of the mapping.
+         */
+        final PathMapping mapping;
+
+        /**
+         * The resource path of the ancestor or <code>null</code> if no
+         * ancestor defines the resource, such that there is no resource.
+         */
+        final String path;
+
+        /**
+         * Whether the ancestor is a folder entry.
+         */
+        final boolean folder;
+
+        JsonAncestor(final PathMapping mapping, final String path, final boolean folder) {
+            this.mapping = mapping;
+            this.path = path;
+            this.folder = folder;
+        }
+    }
+
+    /**
+     * The value of the single entry cache.
+     */
+    static final class CachedEntry {
+
+        /**
+         * Marker for the content length not being requested yet.
+         */
+        static final int UNKNOWN_LENGTH = -2;
+
+        final URL url;
+
+        volatile int contentLength = UNKNOWN_LENGTH;
+
+        CachedEntry(final URL url) {
+            this.url = url;
         }
     }
 }
@@ -0,0 +1,502 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.sling.commons.osgi.OsgiUtil;
+import org.osgi.framework.BundleContext;
+
+/**
+ * The <code>BundleResourceConfiguration</code> holds the global configuration
+ * of the bundle resource providers as provided through the Configuration Admin
+ * service with the PID {@value #PID}. Instances of this class are immutable; a
+ * configuration update creates a new instance.
+ * <p>
+ * As the configuration is only provided after the bundle has been started,
+ * each property may also be set as a framework property prefixed with
+ * {@value #FRAMEWORK_PROPERTY_PREFIX}. These framework properties apply from
+ * the start and serve as defaults for the properties missing in the
+ * configuration.
+ */
+class BundleResourceConfiguration {
+
+    /**
+     * The PID of the configuration (value is
+     * "org.apache.sling.bundleresource.impl.BundleResourceProvider").
+     */
+    static final String PID = "org.apache.sling.bundleresource.impl.BundleResourceProvider";
+
+    /**
+     * The name of the property defining how the caches are sized, either
+     * {@value #SIZING_COUNT} or {@value #SIZING_MEMORY} (value is
+     * "cache.sizing").
+     */
+    static final String PROP_CACHE_SIZING = "cache.sizing";
+
+    /**
+     * Cache limits are the maximum number of cached entries (value is "count").
+     */
+    static final String SIZING_COUNT = "count";
+
+    /**
+     * Cache limits are the estimated maximum number of bytes used by the cached
+     * entries (value is "memory").
+     */
+    static final String SIZING_MEMORY = "memory";
+
+    /**
+     * The name of the property defining the limit of each of the entry cache,
+     * the entry type cache and the JSON ancestor cache of each bundle. The
+     * limit applies to each cache on its own rather than to the caches
+     * together (value is "entry.cache.limit").
+     */
+    static final String PROP_ENTRY_CACHE_LIMIT = "entry.cache.limit";
+
+    /**
+     * The name of the property defining the limit of each of the child entry
+     * cache and the child resource cache of each bundle. The limit applies to
+     * each cache on its own rather than to the caches together (value is
+     * "list.cache.limit").
+     */
+    static final String PROP_LIST_CACHE_LIMIT = "list.cache.limit";
+
+    /**
+     * The name of the property defining the limit of the cache of the parsed
+     * JSON properties of each bundle (value is "props.cache.limit").
+     */
+    static final String PROP_PROPS_CACHE_LIMIT = "props.cache.limit";
+
+    /**
+     * The name of the property defining the limit of a single pool shared by
+     * the caches of all bundles. If positive, the entries of all caches are
+     * evicted together once their number or estimated bytes exceed this
+     * limit, instead of limiting the caches of each bundle. This limit is not
+     * adapted, such that it excludes {@link #PROP_ADAPTIVE_ENABLED adaptive
+     * sizing} (value is "global.cache.limit").
+     */
+    static final String PROP_GLOBAL_CACHE_LIMIT = "global.cache.limit";
+
+    /**
+     * The name of the property enabling the in-memory index of the bundle
+     * entries for all bundles unless disabled by the bundle (value is
+     * "index.enabled").
+     */
+    static final String PROP_INDEX_ENABLED = "index.enabled";
+
+    /**
+     * The name of the property enabling the Bloom filter of the bundle entry
+     * paths for all bundles whose entries are not indexed (value is
+     * "filter.enabled").
+     */
+    static final String PROP_FILTER_ENABLED = "filter.enabled";
+
+    /**
+     * The name of the property enabling streaming child listings, which return
+     * the children of folders neither indexed nor cached in the order of the
+     * bundle as they are read instead of reading and sorting all children
+     * first (value is "list.streaming"). The order of the children is
+     * unspecified if enabled, as indexed or cached children are still sorted.
+     */
+    static final String PROP_LIST_STREAMING = "list.streaming";
+
+    /**
+     * The name of the property enabling the adaptive sizing of the caches,
+     * which raises the limits of the caches of busy bundles and lowers the
+     * limits of idle bundles and on heap pressure. Adaptive sizing is ignored
+     * with a warning if {@link #PROP_GLOBAL_CACHE_LIMIT a global cache limit}
+     * is set, as the limit of the shared pool is not adapted (value is
+     * "adaptive.enabled").
+     */
+    static final String PROP_ADAPTIVE_ENABLED = "adaptive.enabled";
+
+    /**
+     * The name of the property defining the factor by which adaptive sizing
+     * may raise the cache limits above the configured limits (value is
+     * "adaptive.max.factor").
+     */
+    static final String PROP_ADAPTIVE_MAX_FACTOR = "adaptive.max.factor";
+
+    /**
+     * The name of the property defining the interval in seconds in which the
+     * cache limits are adapted (value is "adaptive.interval").
+     */
+    static final String PROP_ADAPTIVE_INTERVAL = "adaptive.interval";
+
+    /**
+     * The name of the property defining the percentage of the maximum heap
+     * above which the cache limits are not raised and the limits are lowered
+     * once the heap still exceeds it after a garbage collection (value is
+     * "adaptive.heap.threshold").
+     */
+    static final String PROP_ADAPTIVE_HEAP_THRESHOLD = "adaptive.heap.threshold";
+
+    /**
+     * The name of the property enabling the registration of the providers of
+     * the bundles already active when this bundle starts in the background,
+     * preparing them in parallel, such that starting this bundle does not wait
+     * for them (value is "registration.async").
+     */
+    static final String PROP_REGISTRATION_ASYNC = "registration.async";
+
+    /**
+     * The name of the property defining the number of threads preparing the
+     * providers in parallel (value is "registration.threads").
+     */
+    static final String PROP_REGISTRATION_THREADS = "registration.threads";
+
+    /**
+     * The prefix of the framework properties providing defaults for the
+     * configuration properties (value is "sling.bundleresource.").
+     */
+    static final String FRAMEWORK_PROPERTY_PREFIX = "sling.bundleresource.";
+
+    /**
+     * The names of all configuration properties.
+     */
+    private static final String[] PROPERTY_NAMES = {
+        PROP_CACHE_SIZING,
+        PROP_ENTRY_CACHE_LIMIT,
+        PROP_LIST_CACHE_LIMIT,
+        PROP_PROPS_CACHE_LIMIT,
+        PROP_GLOBAL_CACHE_LIMIT,
+        PROP_INDEX_ENABLED,
+        PROP_FILTER_ENABLED,
+        PROP_LIST_STREAMING,
+        PROP_ADAPTIVE_ENABLED,
+        PROP_ADAPTIVE_MAX_FACTOR,
+        PROP_ADAPTIVE_INTERVAL,
+        PROP_ADAPTIVE_HEAP_THRESHOLD,
+        PROP_REGISTRATION_ASYNC,
+        PROP_REGISTRATION_THREADS
+    };
+
+    /**
+     * The default number of entries in the entry cache (value is 50).
+     */
+    static final int DEFAULT_ENTRY_CACHE_SIZE = 50;
+
+    /**
+     * The default number of entries in the child entry cache (value is 20).
+     */
+    static final int DEFAULT_LIST_CACHE_SIZE = 20;
+
+    /**
+     * The default number of entries in the JSON properties cache (value is
+     * 100).
+     */
+    static final int DEFAULT_PROPS_CACHE_SIZE = 100;
+
+    /**
+     * The default memory limit of the entry cache in bytes (value is 262144).
+     */
+    static final int DEFAULT_ENTRY_CACHE_MEMORY = 256 * 1024;
+
+    /**
+     * The default memory limit of the child entry cache in bytes (value is
+     * 262144).
+     */
+    static final int DEFAULT_LIST_CACHE_MEMORY = 256 * 1024;
+
+    /**
+     * The default memory limit of the JSON properties cache in bytes (value is
+     * 524288).
+     */
+    static final int DEFAULT_PROPS_CACHE_MEMORY = 512 * 1024;
+
+    /**
+     * The estimated number of bytes of an entry of the entry cache, by which
+     * the entry cache limit defined by a bundle, which is always a number of
+     * entries, is scaled with memory sizing. The default limits are taken to
+     * hold the same number of entries with either sizing.
+     */
+    static final int ENTRY_CACHE_ENTRY_BYTES = DEFAULT_ENTRY_CACHE_MEMORY / DEFAULT_ENTRY_CACHE_SIZE;
+
+    /**
+     * The estimated number of bytes of an entry of the child entry cache, by
+     * which the list cache limit defined by a bundle is scaled with memory
+     * sizing.
+     */
+    static final int LIST_CACHE_ENTRY_BYTES = DEFAULT_LIST_CACHE_MEMORY / DEFAULT_LIST_CACHE_SIZE;
+
+    /**
+     * The default factor by which adaptive sizing may raise the cache limits
+     * (value is 8).
+     */
+    static final int DEFAULT_ADAPTIVE_MAX_FACTOR = 8;
+
+    /**
+     * The default interval in seconds in which the cache limits are adapted
+     * (value is 60).
+     */
+    static final int DEFAULT_ADAPTIVE_INTERVAL = 60;
+
+    /**
+     * The default percentage of the maximum heap considered heap pressure
+     * (value is 80).
+     */
+    static final int DEFAULT_ADAPTIVE_HEAP_THRESHOLD = 80;
+
+    /**
+     * The configuration used as long as no configuration is provided.
+     */
+    static final BundleResourceConfiguration DEFAULT = new BundleResourceConfiguration(null);
+
+    private final boolean memorySizing;
+
+    private final int entryCacheLimit;
+
+    private final int listCacheLimit;
+
+    private final int propsCacheLimit;
+
+    private final int globalCacheLimit;
+
+    private final boolean indexEnabled;
+
+    private final boolean filterEnabled;
+
+    private final boolean listStreaming;
+
+    private final boolean adaptiveSizing;
+
+    private final int adaptiveMaxFactor;
+
+    private final int adaptiveInterval;
+
+    private final int adaptiveHeapThreshold;
+
+    private final boolean asyncRegistration;
+
+    private final int registrationThreads;
+
+    /**
+     * Creates a configuration from the given properties. Missing or invalid
+     * properties are replaced by their defaults.
+     *
+     * @param props The configuration properties, may be <code>null</code> to
+     *            create the default configuration.
+     */
+    BundleResourceConfiguration(final Dictionary<String, ?> props) {
+        this.memorySizing =
+                SIZING_MEMORY.equalsIgnoreCase(OsgiUtil.toString(get(props, PROP_CACHE_SIZING), SIZING_COUNT));
+        this.entryCacheLimit = OsgiUtil.toInteger(
+                get(props, PROP_ENTRY_CACHE_LIMIT),
+                this.memorySizing ? DEFAULT_ENTRY_CACHE_MEMORY : DEFAULT_ENTRY_CACHE_SIZE);
+        this.listCacheLimit = OsgiUtil.toInteger(
+                get(props, PROP_LIST_CACHE_LIMIT),
+                this.memorySizing ? DEFAULT_LIST_CACHE_MEMORY : DEFAULT_LIST_CACHE_SIZE);
+        this.propsCacheLimit = OsgiUtil.toInteger(
+                get(props, PROP_PROPS_CACHE_LIMIT),
+                this.memorySizing ? DEFAULT_PROPS_CACHE_MEMORY : DEFAULT_PROPS_CACHE_SIZE);
+        this.globalCacheLimit = Math.max(0, OsgiUtil.toInteger(get(props, PROP_GLOBAL_CACHE_LIMIT), 0));
+        this.indexEnabled = OsgiUtil.toBoolean(get(props, PROP_INDEX_ENABLED), false);
+        this.filterEnabled = OsgiUtil.toBoolean(get(props, PROP_FILTER_ENABLED), false);
+        this.listStreaming = OsgiUtil.toBoolean(get(props, PROP_LIST_STREAMING), false);
+        this.adaptiveSizing = OsgiUtil.toBoolean(get(props, PROP_ADAPTIVE_ENABLED), false);
+        this.adaptiveMaxFactor =
+                Math.max(1, OsgiUtil.toInteger(get(props, PROP_ADAPTIVE_MAX_FACTOR), DEFAULT_ADAPTIVE_MAX_FACTOR));
+        this.adaptiveInterval =
+                Math.max(1, OsgiUtil.toInteger(get(props, PROP_ADAPTIVE_INTERVAL), DEFAULT_ADAPTIVE_INTERVAL));
+        this.adaptiveHeapThreshold = Math.max(
+                1,
+                Math.min(
+                        99,
+                        OsgiUtil.toInteger(get(props, PROP_ADAPTIVE_HEAP_THRESHOLD), DEFAULT_ADAPTIVE_HEAP_THRESHOLD)));
+        this.asyncRegistration = OsgiUtil.toBoolean(get(props, PROP_REGISTRATION_ASYNC), false);
+        this.registrationThreads = Math.max(
+                1,
+                OsgiUtil.toInteger(
+                        get(props, PROP_REGISTRATION_THREADS),
+                        Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Returns the configuration properties set as framework properties.
+     *
+     * @param context The bundle context to read the framework properties
+     * @return The properties found, which may be empty
+     */
+    static Dictionary<String, Object> getFrameworkProperties(final BundleContext context) {
+        final Dictionary<String, Object> props = new Hashtable<>(); // NOSONAR
+        for (final String name : PROPERTY_NAMES) {
+            final String value = context.getProperty(FRAMEWORK_PROPERTY_PREFIX.concat(name));
+            if (value != null) {
+                props.put(name, value);
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache limits are estimated bytes
+     * instead of number of entries.
+     */
+    boolean isMemorySizing() {
+        return memorySizing;
+    }
+
+    /**
+     * Returns the limit of the entry cache of each bundle unless overwritten
+     * by the bundle.
+     */
+    int getEntryCacheLimit() {
+        return entryCacheLimit;
+    }
+
+    /**
+     * Returns the limit of the child entry cache of each bundle unless
+     * overwritten by the bundle.
+     */
+    int getListCacheLimit() {
+        return listCacheLimit;
+    }
+
+    /**
+     * Returns the limit of the entry cache of a bundle defining the given
+     * number of entries as its limit. The bundle may only raise the global
+     * limit. With memory sizing the number of entries is scaled to bytes by
+     * {@link #ENTRY_CACHE_ENTRY_BYTES}.
+     *
+     * @param bundleLimit The number of entries defined by the bundle or zero
+     */
+    int getEntryCacheLimit(final int bundleLimit) {
+        return Math.max(entryCacheLimit, toLimit(bundleLimit, ENTRY_CACHE_ENTRY_BYTES));
+    }
+
+    /**
+     * Returns the limit of the child entry cache of a bundle defining the
+     * given number of entries as its limit. The bundle may only raise the
+     * global limit. With memory sizing the number of entries is scaled to
+     * bytes by {@link #LIST_CACHE_ENTRY_BYTES}.
+     *
+     * @param bundleLimit The number of entries defined by the bundle or zero
+     */
+    int getListCacheLimit(final int bundleLimit) {
+        return Math.max(listCacheLimit, toLimit(bundleLimit, LIST_CACHE_ENTRY_BYTES));
+    }
+
+    private int toLimit(final int entries, final int entryBytes) {
+        return memorySizing ? (int) Math.min(Integer.MAX_VALUE, (long) entries * entryBytes) : entries;
+    }
+
+    /**
+     * Returns the limit of the JSON properties cache of each bundle.
+     */
+    int getPropsCacheLimit() {
+        return propsCacheLimit;
+    }
+
+    /**
+     * Returns the limit of the pool shared by the caches of all bundles or
+     * zero if the caches of each bundle are limited on their own.
+     */
+    int getGlobalCacheLimit() {
+        return globalCacheLimit;
+    }
+
+    /**
+     * Returns <code>true</code> if the bundle entries are indexed unless
+     * disabled by the bundle.
+     */
+    boolean isIndexEnabled() {
+        return indexEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the paths of the bundle entries which are
+     * not indexed are held in a Bloom filter.
+     */
+    boolean isFilterEnabled() {
+        return filterEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the children of folders which are neither
+     * indexed nor cached are listed in the order of the bundle while reading
+     * them, such that the order of the children is unspecified.
+     */
+    boolean isListStreaming() {
+        return listStreaming;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache limits are adapted to the use of
+     * the caches and the available heap.
+     */
+    boolean isAdaptiveSizing() {
+        return adaptiveSizing;
+    }
+
+    /**
+     * Returns the factor by which adaptive sizing may raise the cache limits
+     * above the configured limits.
+     */
+    int getAdaptiveMaxFactor() {
+        return adaptiveMaxFactor;
+    }
+
+    /**
+     * Returns the interval in seconds in which the cache limits are adapted.
+     */
+    int getAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    /**
+     * Returns the percentage of the maximum heap considered heap pressure.
+     */
+    int getAdaptiveHeapThreshold() {
+        return adaptiveHeapThreshold;
+    }
+
+    /**
+     * Returns <code>true</code> if the providers of the bundles already
+     * active when this bundle starts are registered in the background after
+     * being prepared in parallel.
+     */
+    boolean isAsyncRegistration() {
+        return asyncRegistration;
+    }
+
+    /**
+     * Returns the number of threads preparing the providers in parallel.
+     */
+    int getRegistrationThreads() {
+        return registrationThreads;
+    }
+
+    private static Object get(final Dictionary<String, ?> props, final String name) {
+        return (props == null) ? null : props.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "BundleResourceConfiguration: sizing=" + (memorySizing ? SIZING_MEMORY : SIZING_COUNT)
+                + ", entryCacheLimit=" + entryCacheLimit + ", listCacheLimit=" + listCacheLimit + ", propsCacheLimit="
+                + propsCacheLimit + ", globalCacheLimit=" + globalCacheLimit + ", indexEnabled="
+                + indexEnabled + ", filterEnabled=" + filterEnabled + ", listStreaming=" + listStreaming
+                + ", adaptiveSizing=" + adaptiveSizing
+                + ", adaptiveMaxFactor=" + adaptiveMaxFactor + ", adaptiveInterval=" + adaptiveInterval
+                + ", adaptiveHeapThreshold=" + adaptiveHeapThreshold + ", asyncRegistration=" + asyncRegistration
+                + ", registrationThreads="
+                + registrationThreads;
+    }
+}
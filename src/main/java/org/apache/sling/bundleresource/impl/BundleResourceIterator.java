@@ -18,24 +18,41 @@
  */
 package org.apache.sling.bundleresource.impl;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.TreeSet;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ResourceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The <code>BundleResourceIterator</code> class is a resource iterator, which
- * returns resources for each Bundle entry of an underlying enumeration of
- * Bundle entry paths.
+ * returns resources for each child entry of a bundle folder, in the order of
+ * the names of the children.
+ * <p>
+ * The sorted {@link ChildEntries} of the folder are used as they are unless
+ * the mapping has JSON properties. In this case the cached
+ * {@link ChildResourceNames} merging the entries with the sub resources of the
+ * parent are used, such that repeated listings only create the resources. A
+ * parent only defined by JSON has no entries, so its children are its sub
+ * resources in the order of their names, which the parsed JSON already holds.
+ * <p>
+ * The resources are created one at a time as the iterator advances. If
+ * {@link BundleResourceConfiguration#isListStreaming() streaming} is enabled
+ * and the children of a folder are neither indexed nor cached, the entry paths
+ * enumerated by the bundle are turned into resources as they are read, in the
+ * order of the bundle. Sub resources of the parent are returned after the
+ * entries in this case. Thus listing a large folder only costs time and
+ * memory for the children actually consumed.
+ * <p>
+ * The order of the children is thus unspecified with streaming: the same
+ * folder is listed in the order of the bundle while its children are neither
+ * indexed nor cached and sorted by name once they are, for example after
+ * {@link BundleResource#hasChildren()} has cached them.
  */
 class BundleResourceIterator implements Iterator<Resource> {
 
@@ -50,17 +67,47 @@ class BundleResourceIterator implements Iterator<Resource> {
 
     private final PathMapping mappedPath;
 
-    /** Underlying bundle entry path enumeration */
-    private final Iterator<String> entries;
+    /** The resource path of the parent, to which the child names are appended */
+    private final String parentPrefix;
 
-    /** The length of the parent entry path, see seek() */
-    private final int prefixLength;
+    /** The child entries, null if the mapping has JSON properties */
+    private final ChildEntries entries;
+
+    /** The merged child names, null if the mapping has no JSON properties */
+    private final ChildResourceNames names;
+
+    /** The sorted sub resource names if the parent is only defined by JSON */
+    private final List<String> jsonNames;
+
+    /** The entry paths enumerated by the bundle if the children are streamed */
+    private final Enumeration<String> stream;
+
+    /** The sub resources to return after the streamed entries */
+    private final Iterator<String> streamedSubResources;
+
+    /** The entry path of the parent, ending with a slash */
+    private final String parentEntryPath;
+
+    /** The JSON properties extension of the mapping, may be null */
+    private final String jsonExtension;
+
+    /** The number of children */
+    private final int size;
+
+    /** The index of the next child */
+    private int index;
 
     /** The prefetched next iterator entry, null at the end of iterating */
     private Resource nextResult;
 
     private final Map<String, Map<String, Object>> subResources;
 
+    /** The parent resource of the children, may be null */
+    private final BundleResource parent;
+
+    /** Whether the resource resolver is used for a bulk traversal */
+    private final boolean bulk;
+
     /**
      * Creates an instance using the given parent bundle resource.
      */
@@ -70,7 +117,9 @@ class BundleResourceIterator implements Iterator<Resource> {
                 parent.getBundle(),
                 parent.getMappedPath(),
                 parent.getPath(),
-                parent.getSubResources());
+                parent.getSubResources(),
+                parent,
+                parent.isBulkTraversal());
     }
 
     BundleResourceIterator(
@@ -78,52 +127,59 @@ class BundleResourceIterator implements Iterator<Resource> {
             final BundleResourceCache bundle,
             final PathMapping mappedPath,
             final String parentPath,
-            final Map<String, Map<String, Object>> subResources) {
+            final Map<String, Map<String, Object>> subResources,
+            final boolean bulk) {
+        this(resourceResolver, bundle, mappedPath, parentPath, subResources, null, bulk);
+    }
+
+    private BundleResourceIterator(
+            final ResourceResolver resourceResolver,
+            final BundleResourceCache bundle,
+            final PathMapping mappedPath,
+            final String parentPath,
+            final Map<String, Map<String, Object>> subResources,
+            final BundleResource parent,
+            final boolean bulk) {
 
         // trailing slash to enumerate children
-        final String parentEntryPath = mappedPath.getEntryPath(parentPath.concat("/"));
-        this.prefixLength = parentEntryPath.length();
+        this.parentEntryPath = mappedPath.getEntryPath(parentPath, "/");
+        this.parentPrefix = parentPath.endsWith("/") ? parentPath : parentPath.concat("/");
 
         this.resourceResolver = resourceResolver;
         this.cache = bundle;
-        this.subResources = subResources != null ? new HashMap<>(subResources) : null;
+        this.subResources = subResources;
+        this.parent = parent;
+        this.bulk = bulk;
         this.mappedPath = mappedPath;
-        this.entries = getFilteredEntries(parentEntryPath);
 
-        this.nextResult = (entries != null) ? seek() : null;
-    }
-
-    private Iterator<String> getFilteredEntries(final String parentEntryPath) {
-        final Set<String> bundleEntries = new TreeSet<>(cache.getEntryPaths(parentEntryPath));
-        if (this.mappedPath.getJSONPropertiesExtension() != null) {
-            final Set<String> add = new HashSet<>();
-            final Iterator<String> iter = bundleEntries.iterator();
-            while (iter.hasNext()) {
-                final String path = iter.next();
-                if (path.endsWith(this.mappedPath.getJSONPropertiesExtension())) {
-                    iter.remove();
-                    add.add(path.substring(
-                            0,
-                            path.length()
-                                    - this.mappedPath
-                                            .getJSONPropertiesExtension()
-                                            .length()));
-                }
-            }
-            bundleEntries.addAll(add);
-            if (subResources != null) {
-                for (final String name : subResources.keySet()) {
-                    final String fullPath = parentEntryPath.concat(name);
-                    if (!bundleEntries.contains(fullPath)) {
-                        bundleEntries.add(fullPath);
-                    } else {
-                        subResources.remove(name);
-                    }
-                }
-            }
+        this.jsonExtension = mappedPath.getJSONPropertiesExtension();
+        this.jsonNames = (parent != null && jsonExtension != null) ? parent.getJsonChildNames() : null;
+        this.stream = jsonNames == null ? cache.getStreamingEntryPaths(parentEntryPath) : null;
+        if (jsonNames != null) {
+            this.entries = null;
+            this.names = null;
+            this.size = jsonNames.size();
+            this.streamedSubResources = null;
+        } else if (stream != null) {
+            this.entries = null;
+            this.names = null;
+            this.size = 0;
+            this.streamedSubResources = (jsonExtension != null && subResources != null)
+                    ? subResources.keySet().iterator()
+                    : null;
+        } else if (jsonExtension == null) {
+            this.entries = cache.getEntryPaths(parentEntryPath, bulk);
+            this.names = null;
+            this.size = entries.size();
+            this.streamedSubResources = null;
+        } else {
+            this.entries = null;
+            this.names = cache.getChildResourceNames(parentEntryPath, jsonExtension, subResources, bulk);
+            this.size = names.size();
+            this.streamedSubResources = null;
         }
 
-        return (bundleEntries.isEmpty() ? null : bundleEntries.iterator());
+        this.nextResult = seek();
     }
 
     /** Returns true if there is another Resource available */
@@ -154,12 +210,54 @@ class BundleResourceIterator implements Iterator<Resource> {
     }
 
     /**
-     * Scans the entry path enumeration looking for the next entry being a
-     * direct child of the parent resource.
+     * Returns the resource for the next child.
      */
     private Resource seek() {
-        while (entries.hasNext()) {
-            String entry = entries.next();
+        if (stream != null) {
+            return seekStream();
+        }
+        if (index < size) {
+            final int current = index++;
+            final String name;
+            final boolean isFolder;
+            Map<String, Object> readProps = null;
+            if (jsonNames != null) {
+                name = jsonNames.get(current);
+                isFolder = false;
+                readProps = subResources.get(name);
+            } else if (names != null) {
+                name = names.getName(current);
+                isFolder = names.isFolder(current);
+                if (names.isSubResource(current) && subResources != null) {
+                    readProps = subResources.get(name);
+                }
+            } else {
+                final String entry = entries.getName(current);
+                isFolder = entry.endsWith("/");
+                name = isFolder ? entry.substring(0, entry.length() - 1) : entry;
+            }
+            log.debug("seek: Using child {}", name);
+
+            return new BundleResource(
+                    resourceResolver, cache, mappedPath, parentPrefix.concat(name), readProps, isFolder, parent, bulk);
+        }
+
+        // no more results
+        log.debug("seek: No more nodes, iterator exhausted");
+        return null;
+    }
+
+    /**
+     * Returns the resource for the next entry enumerated by the bundle being
+     * a direct child of the parent or for the next sub resource of the parent
+     * once all entries are read. The same rules as for merging the
+     * {@link ChildResourceNames} apply, checking the entries hiding a child
+     * one by one.
+     */
+    private Resource seekStream() {
+        final int prefixLength = parentEntryPath.length();
+        while (stream.hasMoreElements()) {
+            String entry = stream.nextElement();
 
             // require leading slash (sanity check, should always be the case)
             if (!entry.startsWith("/")) {
@@ -168,24 +266,62 @@ class BundleResourceIterator implements Iterator<Resource> {
 
             // another sanity check if the prefix is correct
             final int slash = entry.indexOf('/', prefixLength);
-            if (slash < 0 || slash == entry.length() - 1) {
-                log.debug("seek: Using entry {}", entry);
-                final boolean isFolder = entry.endsWith("/");
-                final String entryPath = isFolder ? entry.substring(0, entry.length() - 1) : entry;
+            if (entry.length() <= prefixLength
+                    || !entry.startsWith(parentEntryPath)
+                    || (slash >= 0 && slash != entry.length() - 1)) {
+                log.debug("seek: Ignoring entry {}", entry);
+                continue;
+            }
+
+            final boolean isFolder = slash >= 0;
+            String name = entry.substring(prefixLength, isFolder ? slash : entry.length());
+            Map<String, Object> readProps = null;
+            if (jsonExtension != null) {
+                if (isFolder) {
+                    if (subResources != null && subResources.containsKey(name) && !isHidden(name)) {
+                        readProps = subResources.get(name);
+                    }
+                } else if (name.endsWith(jsonExtension)) {
+                    name = name.substring(0, name.length() - jsonExtension.length());
+                    if (cache.exists(parentEntryPath.concat(name))) {
+                        // the file of the same name is returned instead
+                        continue;
+                    }
+                }
+            }
+            log.debug("seek: Using entry {}", entry);
+
+            return new BundleResource(
+                    resourceResolver, cache, mappedPath, parentPrefix.concat(name), readProps, isFolder, parent, bulk);
+        }
+
+        while (streamedSubResources != null && streamedSubResources.hasNext()) {
+            final String name = streamedSubResources.next();
+            if (!isHidden(name)) {
+                log.debug("seek: Using sub resource {}", name);
                 return new BundleResource(
                         resourceResolver,
                         cache,
                         mappedPath,
-                        mappedPath.getResourcePath(entryPath),
-                        this.subResources != null ? this.subResources.get(ResourceUtil.getName(entryPath)) : null,
-                        isFolder);
+                        parentPrefix.concat(name),
+                        subResources.get(name),
+                        false,
+                        parent,
+                        bulk);
             }
-
-            log.debug("seek: Ignoring entry {}", entry);
         }
 
         // no more results
-        log.debug("seek: No more nodes, iterator exhausted");
+        log.debug("seek: No more entries, iterator exhausted");
         return null;
     }
+
+    /**
+     * Returns <code>true</code> if the sub resource of the given name is
+     * hidden by a file or JSON properties file of the same name.
+     */
+    private boolean isHidden(final String name) {
+        final String path = parentEntryPath.concat(name);
+        return cache.exists(path) || cache.exists(path.concat(jsonExtension));
+    }
 }
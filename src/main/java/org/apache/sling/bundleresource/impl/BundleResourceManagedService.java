@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ManagedService;
+
+/**
+ * The <code>BundleResourceManagedService</code> receives the configuration of
+ * the bundle resource providers from the Configuration Admin Service and
+ * hands it to the {@link Activator}.
+ * <p>
+ * The <code>org.osgi.service.cm</code> package is imported optionally, such
+ * that the bundle also resolves without Configuration Admin. This class is
+ * thus only loaded and registered if the package is available, see
+ * {@link #isAvailable()}. Otherwise the configuration is only taken from the
+ * framework properties.
+ */
+class BundleResourceManagedService implements ManagedService {
+
+    private final Activator activator;
+
+    private BundleResourceManagedService(final Activator activator) {
+        this.activator = activator;
+    }
+
+    /**
+     * Returns <code>true</code> if the Configuration Admin API is available
+     * to this bundle, such that this service can be registered.
+     */
+    static boolean isAvailable() {
+        try {
+            BundleResourceManagedService.class.getClassLoader().loadClass("org.osgi.service.cm.ManagedService");
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) { // NOSONAR
+            return false;
+        }
+    }
+
+    /**
+     * Registers the managed service for the configuration of the bundle
+     * resource providers, which must only be called if the Configuration
+     * Admin API is available.
+     *
+     * @param context The bundle context to register the service with
+     * @param activator The activator to hand the configuration to
+     * @return The registration of the service
+     */
+    static ServiceRegistration<?> register(final BundleContext context, final Activator activator) {
+        final Dictionary<String, Object> props = new Hashtable<>(); // NOSONAR
+        props.put(Constants.SERVICE_PID, BundleResourceConfiguration.PID);
+        props.put(Constants.SERVICE_DESCRIPTION, "Configuration of the Bundle Resource Providers");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        return context.registerService(ManagedService.class, new BundleResourceManagedService(activator), props);
+    }
+
+    @Override
+    public void updated(final Dictionary<String, ?> properties) {
+        activator.updated(properties);
+    }
+}
@@ -18,13 +18,15 @@
  */
 package org.apache.sling.bundleresource.impl;
 
-import java.net.URL;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Iterator;
 
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.bundleresource.impl.BundleResourceCache.EntryType;
+import org.apache.sling.bundleresource.impl.BundleResourceCache.JsonAncestor;
 import org.apache.sling.spi.resource.provider.ResolveContext;
 import org.apache.sling.spi.resource.provider.ResourceContext;
 import org.apache.sling.spi.resource.provider.ResourceProvider;
@@ -37,14 +39,26 @@ public class BundleResourceProvider extends ResourceProvider<Object> {
 
     public static final String PROP_BUNDLE = BundleResourceProvider.class.getName();
 
+    /**
+     * The name of the resource resolver property marking the resolver as used
+     * for a bulk traversal, like indexing or sitemap generation. If set to
+     * <code>true</code>, the lookups of the resolver bypass the entry and child
+     * entry caches unless the entries are cached already, such that the
+     * traversal does not replace the entries used for rendering requests. The
+     * property is read when resolving or listing resources of the provider and
+     * is handed on to the resources created.
+     */
+    public static final String PROP_BULK_TRAVERSAL = "sling.bundleresource.bulkTraversal";
+
     /** The cache with the bundle providing the resources */
     private final BundleResourceCache cache;
 
     /** The root path */
     private final PathMapping root;
 
+    /** The registration, which may be unregistered by another thread */
     @SuppressWarnings("rawtypes")
-    private ServiceRegistration<ResourceProvider> serviceRegistration;
+    private volatile ServiceRegistration<ResourceProvider> serviceRegistration;
 
     /**
      * Creates Bundle resource provider accessing entries in the given Bundle an
@@ -75,18 +89,23 @@ public class BundleResourceProvider extends ResourceProvider<Object> {
         if (bundleContext == null) {
             throw new IllegalStateException("No BundleContext was found");
         }
-        serviceRegistration = bundleContext.registerService(ResourceProvider.class, this, props);
-        return (Long) serviceRegistration.getReference().getProperty(Constants.SERVICE_ID);
+        @SuppressWarnings("rawtypes")
+        final ServiceRegistration<ResourceProvider> registration =
+                bundleContext.registerService(ResourceProvider.class, this, props);
+        serviceRegistration = registration;
+        return (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
     }
 
     void unregisterService() {
-        if (serviceRegistration != null) {
+        final ServiceRegistration<?> registration = serviceRegistration;
+        if (registration != null) {
+            serviceRegistration = null;
             try {
-                serviceRegistration.unregister();
+                registration.unregister();
             } catch (final IllegalStateException ise) {
-                // this might happen on shutdown, so ignore
+                // this might happen on shutdown or if unregistered
+                // concurrently, so ignore
             }
-            serviceRegistration = null;
         }
     }
 
@@ -104,58 +123,149 @@ public class BundleResourceProvider extends ResourceProvider<Object> {
             final Resource parent) {
         final PathMapping mappedPath = getMappedPath(resourcePath);
         if (mappedPath != null) {
-            final String entryPath = mappedPath.getEntryPath(resourcePath);
-
-            // first try, whether the bundle has an entry with a trailing slash
-            // which would be a folder. In this case we check whether the
-            // repository contains an item with the same path. If so, we
-            // don't create a BundleResource but instead return null to be
-            // able to return an item-based resource
-            URL entry = cache.getEntry(entryPath.concat("/"));
-            final boolean isFolder = entry != null;
-
-            // if there is no entry with a trailing slash, try plain name
-            // which would then of course be a file
-            if (entry == null) {
-                entry = cache.getEntry(entryPath);
-                if (entry == null && this.root.getJSONPropertiesExtension() != null) {
-                    entry = cache.getEntry(entryPath + this.root.getJSONPropertiesExtension());
-                }
-            }
+            return getResource(ctx.getResourceResolver(), cache, mappedPath, resourcePath, null, isBulkTraversal(ctx));
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a BundleResource for the path mapped by the mapping if such an
+     * entry exists in the bundle or if the resource is defined by the JSON
+     * properties of an ancestor.
+     *
+     * @param resolver The resource resolver of the resource
+     * @param cache The cache of the bundle
+     * @param mappedPath The mapping, which maps the resource path
+     * @param resourcePath The path of the resource
+     * @param known A resource of the bundle known to exist, which is used
+     *            instead of resolving its path again while looking for the
+     *            ancestor defining the resource and is the parent of the
+     *            resource if it is its child, may be <code>null</code>
+     * @param bulk Whether the resolver is used for a bulk traversal
+     * @return The resource or <code>null</code> if there is no such resource
+     */
+    static Resource getResource(
+            final ResourceResolver resolver,
+            final BundleResourceCache cache,
+            final PathMapping mappedPath,
+            final String resourcePath,
+            final BundleResource known,
+            final boolean bulk) {
+        final String jsonExtension = mappedPath.getJSONPropertiesExtension();
+
+        // a folder entry is preferred over a file entry, which in turn is
+        // preferred over a JSON properties file entry
+        final EntryType type = cache.getEntryType(mappedPath.getEntryPath(resourcePath), jsonExtension, bulk);
+        final boolean isFolder = type == EntryType.FOLDER;
+
+        // here we either have a folder for which no same-named item exists
+        // or a bundle file
+        // check if a JSON props file is directly requested
+        // if so, we deny the access
+        if (type != EntryType.ABSENT && (jsonExtension == null || !resourcePath.endsWith(jsonExtension))) {
+
+            final BundleResource parent = (known != null && isParent(known.getPath(), resourcePath)) ? known : null;
+            return new BundleResource(resolver, cache, mappedPath, resourcePath, null, isFolder, parent, bulk);
+        }
+
+        // the bundle does not contain the path
+        // if JSON is enabled check for any parent
+        if (jsonExtension != null) {
+            return getJsonResource(resolver, cache, mappedPath, resourcePath, known, bulk);
+        }
 
-            // here we either have a folder for which no same-named item exists
-            // or a bundle file
-            // check if a JSON props file is directly requested
-            // if so, we deny the access
-            if (entry != null
-                    && (this.root.getJSONPropertiesExtension() == null
-                            || !entryPath.endsWith(this.root.getJSONPropertiesExtension()))) {
+        return null;
+    }
 
-                return new BundleResource(ctx.getResourceResolver(), cache, mappedPath, resourcePath, null, isFolder);
+    /**
+     * Returns the resource defined by the JSON properties of the nearest
+     * ancestor entry of the resource path which defines it.
+     * <p>
+     * The ancestor is looked up once by walking up the ancestors of the path
+     * within the mapping and is then cached along with whether there is such
+     * an ancestor at all, see {@link BundleResourceCache#getJsonAncestor(String)}.
+     * As only entries have JSON properties files, starting from the nearest
+     * ancestor entry yields the same resource as resolving each ancestor in
+     * turn. Resolving the same resource or missing resource again thus costs a
+     * single cache lookup besides getting the cached properties.
+     */
+    private static Resource getJsonResource(
+            final ResourceResolver resolver,
+            final BundleResourceCache cache,
+            final PathMapping mappedPath,
+            final String resourcePath,
+            final BundleResource known,
+            final boolean bulk) {
+        final JsonAncestor cached = cache.getJsonAncestor(resourcePath);
+        if (cached != null && cached.mapping == mappedPath) {
+            if (cached.path == null) {
+                return null;
             }
+            final BundleResource ancestor =
+                    (known != null && known.isEntry() && known.getPath().equals(cached.path))
+                            ? known
+                            : new BundleResource(
+                                    resolver, cache, mappedPath, cached.path, null, cached.folder, null, bulk);
+            return ancestor.getChildResource(resourcePath.substring(cached.path.length() + 1));
+        }
 
-            // the bundle does not contain the path
-            // if JSON is enabled check for any parent
-            if (this.root.getJSONPropertiesExtension() != null) {
-                String parentPath = ResourceUtil.getParent(resourcePath);
-                while (parentPath != null) {
-                    final Resource rsrc = getResource(ctx, parentPath, resourceContext, null);
-                    if (rsrc != null) {
-                        final Resource childResource = ((BundleResource) rsrc)
-                                .getChildResource(resourcePath.substring(parentPath.length() + 1));
-                        if (childResource != null) {
-                            return childResource;
-                        }
-                    }
-                    parentPath = ResourceUtil.getParent(parentPath);
-                    if (parentPath != null && this.getMappedPath(parentPath) == null) {
-                        parentPath = null;
-                    }
+        final String jsonExtension = mappedPath.getJSONPropertiesExtension();
+        Resource result = null;
+        JsonAncestor found = new JsonAncestor(mappedPath, null, false);
+        String parentPath = ResourceUtil.getParent(resourcePath);
+        while (result == null && parentPath != null && mappedPath.isChild(parentPath)) {
+            final BundleResource ancestor;
+            if (known != null && known.getPath().equals(parentPath)) {
+                ancestor = known;
+            } else {
+                final EntryType type = cache.getEntryType(mappedPath.getEntryPath(parentPath), jsonExtension, bulk);
+                ancestor = (type != EntryType.ABSENT && !parentPath.endsWith(jsonExtension))
+                        ? new BundleResource(
+                                resolver, cache, mappedPath, parentPath, null, type == EntryType.FOLDER, null, bulk)
+                        : null;
+            }
+            if (ancestor != null) {
+                result = ancestor.getChildResource(resourcePath.substring(parentPath.length() + 1));
+                if (result != null) {
+                    // a known resource with properties from the JSON of its
+                    // parent cannot be resolved from the cached ancestor
+                    found = ancestor.isEntry() ? new JsonAncestor(mappedPath, parentPath, ancestor.isFolder()) : null;
                 }
             }
+            parentPath = ResourceUtil.getParent(parentPath);
         }
 
-        return null;
+        // a bulk traversal does not replace the ancestors of regular lookups
+        if (cached == null && found != null && !bulk) {
+            cache.putJsonAncestor(resourcePath, found);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the parent of a resource of this provider. The parent of a
+     * bundle resource created by its parent is returned as is while it is
+     * still referenced elsewhere. Otherwise the
+     * parent path is resolved like by
+     * {@link #getResource(ResolveContext, String, ResourceContext, Resource)},
+     * which costs a cached entry type lookup for a parent being a bundle
+     * entry.
+     */
+    @Override
+    public Resource getParent(final ResolveContext<Object> ctx, final Resource child) {
+        if (child instanceof BundleResource br && br.getBundle() == this.cache) {
+            final BundleResource parent = br.getParentResource();
+            if (parent != null) {
+                return parent;
+            }
+        }
+
+        final String parentPath = ResourceUtil.getParent(child.getPath());
+        if (parentPath == null || getMappedPath(parentPath) == null) {
+            return null;
+        }
+        return getResource(ctx.getResourceResolver(), cache, root, parentPath, null, isBulkTraversal(ctx));
     }
 
     @Override
@@ -170,7 +280,8 @@ public class BundleResourceProvider extends ResourceProvider<Object> {
         String parentPath = parent.getPath();
         PathMapping mappedPath = getMappedPath(parentPath);
         if (mappedPath != null) {
-            return new BundleResourceIterator(parent.getResourceResolver(), cache, mappedPath, parentPath, null);
+            return new BundleResourceIterator(
+                    parent.getResourceResolver(), cache, mappedPath, parentPath, null, isBulkTraversal(ctx));
         }
 
         // the parent resource cannot have children in this provider,
@@ -191,6 +302,30 @@ public class BundleResourceProvider extends ResourceProvider<Object> {
 
     // ---------- internal
 
+    /**
+     * Returns <code>true</code> if the resource resolver is marked as being
+     * used for a bulk traversal, see {@link #PROP_BULK_TRAVERSAL}.
+     */
+    private static boolean isBulkTraversal(final ResolveContext<Object> ctx) {
+        final ResourceResolver resolver = ctx.getResourceResolver();
+        if (resolver == null) {
+            return false;
+        }
+        final Object value = resolver.getPropertyMap().get(PROP_BULK_TRAVERSAL);
+        return Boolean.TRUE.equals(value) || "true".equals(value);
+    }
+
+    /**
+     * Returns <code>true</code> if the resource path is a direct child of the
+     * parent path.
+     */
+    private static boolean isParent(final String parentPath, final String resourcePath) {
+        final int slash = resourcePath.lastIndexOf('/');
+        return slash >= 0
+                && (slash == 0 ? parentPath.equals("/") : resourcePath.regionMatches(0, parentPath, 0, slash))
+                && parentPath.length() == Math.max(1, slash);
+    }
+
     private PathMapping getMappedPath(final String resourcePath) {
         if (this.root.isChild(resourcePath)) {
             return root;
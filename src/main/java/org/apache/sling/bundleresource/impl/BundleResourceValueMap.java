@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+
+import static org.apache.jackrabbit.JcrConstants.NT_FILE;
+import static org.apache.jackrabbit.JcrConstants.NT_FOLDER;
+
+/**
+ * The <code>BundleResourceValueMap</code> is the immutable value map of the
+ * properties of a bundle resource. The names are held in a sorted array and
+ * the values in an array of the same order, and the resource type and super
+ * type are converted once when the map is created.
+ * <p>
+ * The last conversion of each property to another type is cached, such that
+ * repeatedly getting a property as the same type neither converts it again
+ * nor allocates. Array values are returned as they are, without copying, and
+ * are shared by all resources created from the same JSON properties file, so
+ * they must not be modified. The maps of resources without any properties
+ * besides their resource type are shared by all of them.
+ */
+final class BundleResourceValueMap extends AbstractMap<String, Object> implements ValueMap {
+
+    /** The name of the resource super type property */
+    static final String PROPERTY_RESOURCE_SUPER_TYPE = "sling:resourceSuperType";
+
+    /** The value map of file resources without properties */
+    static final BundleResourceValueMap FILE =
+            of(Collections.singletonMap(ResourceResolver.PROPERTY_RESOURCE_TYPE, NT_FILE));
+
+    /** The value map of folder resources without properties */
+    static final BundleResourceValueMap FOLDER =
+            of(Collections.singletonMap(ResourceResolver.PROPERTY_RESOURCE_TYPE, NT_FOLDER));
+
+    /** The sorted property names */
+    private final String[] names;
+
+    /** The property values in the order of the names */
+    private final Object[] values;
+
+    /** The last conversion of each property, null if there is none yet */
+    private final Conversion[] conversions;
+
+    private final String resourceType;
+
+    private final String resourceSuperType;
+
+    private BundleResourceValueMap(final String[] names, final Object[] values) {
+        this.names = names;
+        this.values = values;
+        this.conversions = new Conversion[names.length];
+        this.resourceType = get(ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class);
+        this.resourceSuperType = get(PROPERTY_RESOURCE_SUPER_TYPE, String.class);
+    }
+
+    /**
+     * Creates the value map of the properties, which are copied.
+     *
+     * @param properties The properties of the resource
+     * @return The value map
+     */
+    static BundleResourceValueMap of(final Map<String, Object> properties) {
+        final String[] names = properties.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        final Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = properties.get(names[i]);
+        }
+        return new BundleResourceValueMap(names, values);
+    }
+
+    /**
+     * Returns the resource type, converted to a string.
+     */
+    String getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * Returns the resource super type, converted to a string, or
+     * <code>null</code> if there is none.
+     */
+    String getResourceSuperType() {
+        return resourceSuperType;
+    }
+
+    private int indexOf(final Object name) {
+        return (name instanceof String) ? Arrays.binarySearch(names, name) : -1;
+    }
+
+    @Override
+    public Object get(final Object name) {
+        final int index = indexOf(name);
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String name, final Class<T> type) {
+        final int index = indexOf(name);
+        if (index < 0 || values[index] == null) {
+            return null;
+        }
+        final Object value = values[index];
+        if (type.isInstance(value)) {
+            return (T) value;
+        }
+
+        Conversion conversion = conversions[index];
+        if (conversion == null || conversion.type != type) {
+            // concurrent conversions yield equal results, of which any one
+            // is kept
+            conversion = new Conversion(type, convert(name, type));
+            conversions[index] = conversion;
+        }
+        return (T) conversion.value;
+    }
+
+    /**
+     * Converts the property to the type, which is not cached.
+     */
+    <T> T convert(final String name, final Class<T> type) {
+        return ValueMap.super.get(name, type);
+    }
+
+    @Override
+    public boolean containsKey(final Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                return new ArrayIterator<>(names.length) {
+                    @Override
+                    String get(final int index) {
+                        return names[index];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(final Object name) {
+                return containsKey(name);
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new ArrayIterator<>(names.length) {
+                    @Override
+                    Map.Entry<String, Object> get(final int index) {
+                        return new AbstractMap.SimpleImmutableEntry<>(names[index], values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    /**
+     * A value converted to a type.
+     */
+    private static final class Conversion {
+
+        final Class<?> type;
+
+        final Object value;
+
+        Conversion(final Class<?> type, final Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * An iterator over the indexes of the arrays.
+     */
+    private abstract static class ArrayIterator<E> implements Iterator<E> {
+
+        private final int size;
+
+        private int index;
+
+        ArrayIterator(final int size) {
+            this.size = size;
+        }
+
+        abstract E get(int index);
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public E next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            return get(index++);
+        }
+    }
+}
@@ -126,14 +126,136 @@ class BundleResourceWebConsolePlugin extends HttpServlet {
                 pw.println("</td>");
                 pw.println("</tr>");
 
+                final BundleResourceConfiguration config = cache.getConfiguration();
+
                 pw.println("<tr>");
                 pw.println("<td>Entry Cache</td>");
-                pw.printf("<td>Size: %d, Limit: %d</td>%n", cache.getEntryCacheSize(), cache.getEntryCacheMaxSize());
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getEntryCacheSize(),
+                                cache.getEntryCacheWeight(),
+                                cache.getEntryCacheMaxSize(),
+                                cache.getEntryCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                cache.isBundleEntryCacheLimit(),
+                                config != null ? config.getEntryCacheLimit() : 0));
+                pw.println("</tr>");
+
+                pw.println("<tr>");
+                pw.println("<td>Type Cache</td>");
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getTypeCacheSize(),
+                                cache.getTypeCacheWeight(),
+                                cache.getTypeCacheMaxSize(),
+                                cache.getTypeCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                cache.isBundleEntryCacheLimit(),
+                                config != null ? config.getEntryCacheLimit() : 0));
+                pw.println("</tr>");
+
+                pw.println("<tr>");
+                pw.println("<td>JSON Ancestor Cache</td>");
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getAncestorCacheSize(),
+                                cache.getAncestorCacheWeight(),
+                                cache.getAncestorCacheMaxSize(),
+                                cache.getAncestorCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                cache.isBundleEntryCacheLimit(),
+                                config != null ? config.getEntryCacheLimit() : 0));
                 pw.println("</tr>");
 
                 pw.println("<tr>");
                 pw.println("<td>List Cache</td>");
-                pw.printf("<td>Size: %d, Limit: %d</td>%n", cache.getListCacheSize(), cache.getListCacheMaxSize());
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getListCacheSize(),
+                                cache.getListCacheWeight(),
+                                cache.getListCacheMaxSize(),
+                                cache.getListCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                cache.isBundleListCacheLimit(),
+                                config != null ? config.getListCacheLimit() : 0));
+                pw.println("</tr>");
+
+                pw.println("<tr>");
+                pw.println("<td>Child Resource Cache</td>");
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getChildCacheSize(),
+                                cache.getChildCacheWeight(),
+                                cache.getChildCacheMaxSize(),
+                                cache.getChildCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                cache.isBundleListCacheLimit(),
+                                config != null ? config.getListCacheLimit() : 0));
+                pw.println("</tr>");
+
+                pw.println("<tr>");
+                pw.println("<td>Properties Cache</td>");
+                pw.printf(
+                        "<td>%s</td>%n",
+                        getCacheInfo(
+                                cache.isMemorySizing(),
+                                cache.getPropsCacheSize(),
+                                cache.getPropsCacheWeight(),
+                                cache.getPropsCacheMaxSize(),
+                                cache.getPropsCacheConfiguredMaxSize(),
+                                cache.isAdaptiveSizing(),
+                                false,
+                                0));
+                pw.println("</tr>");
+
+                final CachePool pool = cache.getCachePool();
+                if (pool != null) {
+                    pw.println("<tr>");
+                    pw.println("<td>Shared Cache Pool</td>");
+                    pw.printf(
+                            "<td>All bundles: %d%s, Limit: %d%s</td>%n",
+                            pool.weight(),
+                            cache.isMemorySizing() ? " bytes" : " entries",
+                            pool.getLimit(),
+                            cache.isMemorySizing() ? " bytes" : " entries");
+                    pw.println("</tr>");
+                }
+
+                pw.println("<tr>");
+                pw.println("<td>Loads</td>");
+                pw.printf(
+                        "<td>Loaded: %d, Saved by concurrent loads: %d, Not admitted: %d</td>%n",
+                        cache.getLoadCount(), cache.getSavedLoadCount(), cache.getRejectedCount());
+                pw.println("</tr>");
+
+                final BundleEntryIndex index = cache.getIndex();
+                pw.println("<tr>");
+                pw.println("<td>Index</td>");
+                if (index != null) {
+                    pw.printf("<td>Entries: %d, Folders: %d</td>%n", index.size(), index.getFolderCount());
+                } else {
+                    pw.println("<td>disabled</td>");
+                }
+                pw.println("</tr>");
+
+                final BundleEntryFilter filter = cache.getFilter();
+                pw.println("<tr>");
+                pw.println("<td>Filter</td>");
+                if (filter != null) {
+                    pw.printf("<td>Entries: %d, Bits: %d</td>%n", filter.size(), filter.getBitCount());
+                } else {
+                    pw.println("<td>disabled</td>");
+                }
                 pw.println("</tr>");
 
                 pw.println("</table>");
@@ -205,6 +327,39 @@ class BundleResourceWebConsolePlugin extends HttpServlet {
         }
     }
 
+    private String getCacheInfo(
+            final boolean memorySizing,
+            final int size,
+            final long weight,
+            final int limit,
+            final int configuredLimit,
+            final boolean adaptive,
+            final boolean bundleLimit,
+            final int globalLimit) {
+        final StringBuilder info = new StringBuilder();
+        info.append("Size: ").append(size);
+        if (memorySizing) {
+            info.append(" (").append(weight).append(" bytes)");
+        }
+        if (adaptive) {
+            info.append(", Target: ").append(limit);
+        } else {
+            info.append(", Limit: ").append(limit);
+        }
+        if (memorySizing) {
+            info.append(" bytes");
+        }
+        if (adaptive) {
+            info.append(" (adaptive, configured limit: ")
+                    .append(configuredLimit)
+                    .append(')');
+        }
+        if (bundleLimit) {
+            info.append(" (set by bundle, global limit: ").append(globalLimit).append(')');
+        }
+        return info.toString();
+    }
+
     private String getName(final Bundle bundle) {
         String name = bundle.getHeaders().get(Constants.BUNDLE_NAME);
         if (name == null) {
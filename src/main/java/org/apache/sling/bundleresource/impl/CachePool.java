@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The <code>CachePool</code> is the budget of one or more {@link BoundedCache}
+ * instances: the limit of the sum of the weights of their entries, the
+ * current sum and the CLOCK of all their entries, which is scanned for
+ * entries to evict once the limit is exceeded.
+ * <p>
+ * Each bounded cache uses a pool of its own unless a shared pool is given.
+ * With a shared pool the caches of all bundles are limited together and the
+ * entries evicted are the entries not used recently across all bundles, such
+ * that busy bundles may cache many entries while idle bundles cache almost
+ * none.
+ */
+class CachePool {
+
+    /**
+     * The entries of all caches of the pool in insertion order, scanned by
+     * the eviction "clock hand".
+     */
+    final Queue<BoundedCache.Node<?, ?>> clock = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Lock held by the single thread evicting entries.
+     */
+    final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * The sum of the weights of all entries of the caches of the pool.
+     */
+    final AtomicLong weight = new AtomicLong();
+
+    /**
+     * The number of entries of all caches of the pool.
+     */
+    final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The access frequencies of the keys of the caches applying the admission
+     * policy or <code>null</code> if no cache of the pool applies it. The
+     * sketch is only replaced while holding the eviction lock.
+     */
+    private volatile FrequencySketch sketch;
+
+    /**
+     * The limit configured for this pool.
+     */
+    private final int configuredLimit;
+
+    /**
+     * The current limit of this pool, which is the configured limit unless
+     * adapted.
+     */
+    private volatile int limit;
+
+    /**
+     * Creates a pool with the given limit.
+     *
+     * @param limit The maximum sum of the weights of the entries, which must
+     *            be positive
+     */
+    CachePool(final int limit) {
+        this.configuredLimit = limit;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the maximum sum of the weights of the entries of the caches.
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the maximum sum of the weights of the entries of the caches. The
+     * entries exceeding the new limit are evicted with the next entry added.
+     */
+    void setLimit(final int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the limit this pool has been created with.
+     */
+    int getConfiguredLimit() {
+        return configuredLimit;
+    }
+
+    /**
+     * Returns the frequency sketch of the pool, creating it sized for about
+     * the given number of keys if no cache of the pool has applied the
+     * admission policy yet.
+     */
+    synchronized FrequencySketch enableAdmission(final int capacity) {
+        if (sketch == null) {
+            sketch = new FrequencySketch(capacity);
+        }
+        return sketch;
+    }
+
+    /**
+     * Returns the frequency sketch of the pool or <code>null</code> if no
+     * cache of the pool applies the admission policy.
+     */
+    FrequencySketch getSketch() {
+        return sketch;
+    }
+
+    /**
+     * Replaces the frequency sketch by a larger one keeping the estimated
+     * frequencies if the pool holds more entries than the sketch is sized
+     * for. This is only called while holding the eviction lock.
+     */
+    void ensureSketchCapacity() {
+        final FrequencySketch frequencies = this.sketch;
+        final int entries = size.get();
+        if (frequencies != null && frequencies.getCapacity() < entries) {
+            this.sketch = frequencies.resize(2 * entries);
+        }
+    }
+
+    /**
+     * Returns the sum of the weights of the entries of all caches of the
+     * pool.
+     */
+    long weight() {
+        return weight.get();
+    }
+}
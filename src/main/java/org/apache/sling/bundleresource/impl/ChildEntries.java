@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+/**
+ * The <code>ChildEntries</code> are the immutable, sorted child entries of a
+ * bundle folder. Instead of the full entry paths only the names of the
+ * children are held, with a trailing slash for folders, such that the path of
+ * the parent folder is not repeated for each child.
+ * <p>
+ * As a list the child entries present the full entry paths, in the same order
+ * as the names. These paths are created on access, so iterating the
+ * {@link #getName(int) names} is preferred where the parent is known anyway.
+ */
+final class ChildEntries extends AbstractList<String> implements RandomAccess {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    /**
+     * The child entries of any folder without children.
+     */
+    static final ChildEntries EMPTY = new ChildEntries("/", NO_NAMES);
+
+    /**
+     * The entry path of the parent folder, ending with a slash.
+     */
+    private final String parent;
+
+    /**
+     * The sorted, unique names of the children.
+     */
+    private final String[] names;
+
+    private ChildEntries(final String parent, final String[] names) {
+        this.parent = parent;
+        this.names = names;
+    }
+
+    /**
+     * Creates the child entries of the parent from the entry paths as
+     * enumerated by <code>Bundle.getEntryPaths(String)</code>. Paths which are
+     * not direct children of the parent are ignored.
+     *
+     * @param parent The entry path of the parent folder, ending with a slash
+     * @param entries The entry paths of the children, may be <code>null</code>
+     * @return The child entries
+     */
+    static ChildEntries of(final String parent, final Enumeration<String> entries) {
+        if (entries == null || !entries.hasMoreElements()) {
+            return EMPTY;
+        }
+
+        final TreeSet<String> names = new TreeSet<>();
+        while (entries.hasMoreElements()) {
+            addName(names, parent, entries.nextElement());
+        }
+        return new ChildEntries(parent, names.toArray(NO_NAMES));
+    }
+
+    /**
+     * Creates the child entries of the parent from the entry paths. Paths
+     * which are not direct children of the parent are ignored.
+     *
+     * @param parent The entry path of the parent folder, ending with a slash
+     * @param entries The entry paths of the children
+     * @return The child entries
+     */
+    static ChildEntries of(final String parent, final Collection<String> entries) {
+        final TreeSet<String> names = new TreeSet<>();
+        for (final String entry : entries) {
+            addName(names, parent, entry);
+        }
+        return new ChildEntries(parent, names.toArray(NO_NAMES));
+    }
+
+    private static void addName(final TreeSet<String> names, final String parent, String entry) {
+        // require leading slash (sanity check, should always be the case)
+        if (!entry.startsWith("/")) {
+            entry = "/".concat(entry);
+        }
+
+        if (entry.length() > parent.length() && entry.startsWith(parent)) {
+            final String name = entry.substring(parent.length());
+            final int slash = name.indexOf('/');
+            if (slash < 0 || slash == name.length() - 1) {
+                names.add(name);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the child at the index, which ends with a slash for
+     * a folder.
+     */
+    String getName(final int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the index of the child with the given name or a negative value
+     * if there is no such child.
+     */
+    int indexOfName(final String name) {
+        return Arrays.binarySearch(names, name);
+    }
+
+    /**
+     * Returns the full entry path of the child at the index.
+     */
+    @Override
+    public String get(final int index) {
+        return parent.concat(names[index]);
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry path is the path of one of
+     * the children.
+     */
+    @Override
+    public boolean contains(final Object path) {
+        return path instanceof String string
+                && string.length() > parent.length()
+                && string.startsWith(parent)
+                && indexOfName(string.substring(parent.length())) >= 0;
+    }
+
+    @Override
+    public int indexOf(final Object path) {
+        if (path instanceof String string && string.length() > parent.length() && string.startsWith(parent)) {
+            final int index = indexOfName(string.substring(parent.length()));
+            return Math.max(-1, index);
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(final Object path) {
+        // the names are unique
+        return indexOf(path);
+    }
+}
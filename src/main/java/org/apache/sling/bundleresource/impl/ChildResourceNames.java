@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The <code>ChildResourceNames</code> are the immutable, sorted names of the
+ * child resources of a folder of a mapping with JSON properties. They merge
+ * the {@link ChildEntries} of the folder, with the JSON properties extension
+ * removed from the names of JSON properties files, with the names of the sub
+ * resources read from the JSON properties of the parent resource.
+ * <p>
+ * The merged names only depend on the bundle entries, the JSON properties
+ * extension and the sub resources of the parent, such that they are cached
+ * and listing the same folder again neither sorts nor merges the names. Each
+ * child carries whether it is a folder and whether it takes its properties
+ * from the sub resources of the parent.
+ */
+final class ChildResourceNames {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private static final byte FOLDER = 1;
+
+    private static final byte SUB_RESOURCE = 2;
+
+    /**
+     * The JSON properties extension the names were merged for.
+     */
+    private final String jsonExtension;
+
+    /**
+     * The names of all sub resources of the parent the names were merged
+     * with, including those hidden by an entry of the same name.
+     */
+    private final String[] subResourceNames;
+
+    /**
+     * The sorted names of the children, without trailing slash for folders.
+     */
+    private final String[] names;
+
+    private final byte[] flags;
+
+    private ChildResourceNames(
+            final String jsonExtension, final String[] subResourceNames, final String[] names, final byte[] flags) {
+        this.jsonExtension = jsonExtension;
+        this.subResourceNames = subResourceNames;
+        this.names = names;
+        this.flags = flags;
+    }
+
+    /**
+     * Merges the child entries of a folder with the sub resources of the
+     * parent resource. The children are sorted by the names of their entries,
+     * in which folders end with a slash. A sub resource whose name equals the
+     * name of a file or JSON properties file is hidden by the entry, which
+     * does not take the properties of the sub resource.
+     *
+     * @param entries The child entries of the folder
+     * @param jsonExtension The JSON properties extension of the mapping
+     * @param subResources The sub resources of the parent resource, may be
+     *            <code>null</code>
+     * @return The names of the child resources
+     */
+    static ChildResourceNames merge(
+            final ChildEntries entries, final String jsonExtension, final Map<String, ?> subResources) {
+        // entry name to flags, a folder name ends with a slash
+        final TreeMap<String, Byte> merged = new TreeMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            final String name = entries.getName(i);
+            if (name.endsWith(jsonExtension)) {
+                merged.put(name.substring(0, name.length() - jsonExtension.length()), (byte) 0);
+            } else {
+                merged.put(name, name.endsWith("/") ? FOLDER : 0);
+            }
+        }
+
+        String[] subResourceNames = NO_NAMES;
+        if (subResources != null && !subResources.isEmpty()) {
+            subResourceNames = subResources.keySet().toArray(NO_NAMES);
+            for (final String name : subResourceNames) {
+                if (!merged.containsKey(name)) {
+                    merged.put(name, SUB_RESOURCE);
+                    // a folder of the same name takes the properties, too
+                    merged.computeIfPresent(name.concat("/"), (folder, flag) -> (byte) (flag | SUB_RESOURCE));
+                }
+            }
+        }
+
+        final String[] names = new String[merged.size()];
+        final byte[] flags = new byte[merged.size()];
+        int i = 0;
+        for (final Map.Entry<String, Byte> entry : merged.entrySet()) {
+            final String name = entry.getKey();
+            flags[i] = entry.getValue();
+            names[i] = (flags[i] & FOLDER) != 0 ? name.substring(0, name.length() - 1) : name;
+            i++;
+        }
+        return new ChildResourceNames(jsonExtension, subResourceNames, names, flags);
+    }
+
+    /**
+     * Returns <code>true</code> if these names were merged for the JSON
+     * properties extension and the same sub resource names.
+     *
+     * @param jsonExtension The JSON properties extension of the mapping
+     * @param subResources The sub resources of the parent resource, may be
+     *            <code>null</code>
+     */
+    boolean isMergedFrom(final String jsonExtension, final Map<String, ?> subResources) {
+        if (!this.jsonExtension.equals(jsonExtension)) {
+            return false;
+        }
+        if (subResources == null) {
+            return subResourceNames.length == 0;
+        }
+        if (subResources.size() != subResourceNames.length) {
+            return false;
+        }
+        for (final String name : subResourceNames) {
+            if (!subResources.containsKey(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of child resources.
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of the child resource at the index.
+     */
+    String getName(final int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns <code>true</code> if the child resource at the index is a
+     * folder.
+     */
+    boolean isFolder(final int index) {
+        return (flags[index] & FOLDER) != 0;
+    }
+
+    /**
+     * Returns <code>true</code> if the child resource at the index takes the
+     * properties of the sub resource of the same name.
+     */
+    boolean isSubResource(final int index) {
+        return (flags[index] & SUB_RESOURCE) != 0;
+    }
+
+    /**
+     * Returns the number of sub resource names the names were merged with.
+     */
+    int getSubResourceCount() {
+        return subResourceNames.length;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>FrequencySketch</code> estimates how often keys have been
+ * accessed recently. It is the count-min sketch used by the TinyLFU admission
+ * policy of the {@link BoundedCache}: four 4-bit counters per key, packed
+ * sixteen to a <code>long</code>, of which the minimum is the estimate.
+ * <p>
+ * Once the number of recorded accesses reaches ten times the capacity, all
+ * counters are halved, such that keys which have been popular a long time ago
+ * age out of the sketch.
+ * <p>
+ * Accesses are not written to the counters by the threads reading the cache.
+ * They are {@link #record(Object) recorded} in small ring buffers, striped by
+ * thread, and {@link #drain() drained} into the counters by the thread holding
+ * the eviction lock of the cache, such that the counters are only updated by
+ * a single thread. The buffers are lossy: accesses recorded while a buffer is
+ * full overwrite older ones not drained yet, which merely makes the estimate
+ * slightly less accurate.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * The number of accesses buffered per stripe, a power of two.
+     */
+    static final int BUFFER_SIZE = 16;
+
+    private static final int BUFFER_SHIFT = 4;
+
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    /**
+     * The tails of the stripes are eight longs apart to not share a cache
+     * line.
+     */
+    private static final int PAD_SHIFT = 3;
+
+    private static final int STRIPES =
+            Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+
+    private final AtomicLongArray table;
+
+    private final int mask;
+
+    private final int capacity;
+
+    private final int sampleSize;
+
+    /**
+     * The hash codes of the keys accessed, {@link #BUFFER_SIZE} per stripe.
+     */
+    private final AtomicIntegerArray buffer = new AtomicIntegerArray(STRIPES << BUFFER_SHIFT);
+
+    /**
+     * The number of accesses recorded per stripe.
+     */
+    private final AtomicLongArray tails = new AtomicLongArray(STRIPES << PAD_SHIFT);
+
+    /**
+     * The number of accesses drained per stripe, only accessed while
+     * draining.
+     */
+    private final long[] heads = new long[STRIPES];
+
+    /**
+     * The number of counters incremented since the last reset, only accessed
+     * while draining.
+     */
+    private int additions;
+
+    /**
+     * Creates a sketch for about the given number of keys.
+     *
+     * @param capacity The expected number of keys in the cache
+     */
+    FrequencySketch(final int capacity) {
+        // a power of two number of counters, at least one per key
+        final int length = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 24)) - 1) << 1;
+        this.table = new AtomicLongArray(length);
+        this.mask = length - 1;
+        this.capacity = length;
+        this.sampleSize = 10 * length;
+    }
+
+    /**
+     * Returns the number of keys this sketch has been sized for.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a sketch for about the given number of keys, which estimates
+     * the same number of accesses for all keys as this sketch, such that the
+     * history is kept when the cache grows. The accesses recorded but not
+     * drained yet are drained first. Like {@link #drain()} this must only be
+     * called by one thread at a time.
+     *
+     * @param capacity The expected number of keys in the cache
+     * @return The larger sketch or this sketch if it has the capacity already
+     */
+    FrequencySketch resize(final int capacity) {
+        final FrequencySketch resized = new FrequencySketch(capacity);
+        if (resized.capacity <= this.capacity) {
+            return this;
+        }
+        drain();
+        // the index of a counter in the larger table only has additional
+        // high bits, so each counter is copied to all indexes it may move to
+        for (int i = 0; i < resized.table.length(); i++) {
+            resized.table.setOpaque(i, table.getOpaque(i & mask));
+        }
+        resized.additions = this.additions;
+        return resized;
+    }
+
+    /**
+     * Returns the estimated number of accesses of the key, which is at most
+     * {@value #MAX_COUNT}.
+     */
+    int frequency(final Object key) {
+        final int hash = rehash(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            final int offset = (start + i) << 2;
+            final long value = table.getOpaque(indexOf(hash, i));
+            frequency = Math.min(frequency, (int) ((value >>> offset) & 0xfL));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the key in the buffer of the stripe of the current
+     * thread, which is not reflected by {@link #frequency(Object)} before the
+     * buffer is {@link #drain() drained}.
+     *
+     * @return <code>true</code> if the buffer of the stripe is full and
+     *         should be drained
+     */
+    boolean record(final Object key) {
+        final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1); // NOSONAR
+        final long tail = tails.getAndIncrement(stripe << PAD_SHIFT);
+        buffer.setOpaque((stripe << BUFFER_SHIFT) + (int) (tail & BUFFER_MASK), key.hashCode());
+        return (tail & BUFFER_MASK) == BUFFER_MASK;
+    }
+
+    /**
+     * Increments the counters of the accesses recorded since the last drain.
+     * This must only be called by one thread at a time, which is the thread
+     * holding the eviction lock of the cache.
+     */
+    void drain() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final long tail = tails.get(stripe << PAD_SHIFT);
+            // the accesses overwritten in the meantime are lost
+            for (long head = Math.max(heads[stripe], tail - BUFFER_SIZE); head < tail; head++) {
+                increment(buffer.getOpaque((stripe << BUFFER_SHIFT) + (int) (head & BUFFER_MASK)));
+            }
+            heads[stripe] = tail;
+        }
+    }
+
+    /**
+     * Increments the counters of the key at once. Like {@link #drain()} this
+     * must only be called by one thread at a time.
+     */
+    void increment(final Object key) {
+        increment(key.hashCode());
+    }
+
+    private void increment(final int hashCode) {
+        final int hash = rehash(hashCode);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int offset = (start + i) << 2;
+            final long value = table.getOpaque(index);
+            if (((value >>> offset) & 0xfL) < MAX_COUNT) {
+                table.setOpaque(index, value + (1L << offset));
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.setOpaque(i, (table.getOpaque(i) >>> 1) & RESET_MASK);
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & mask;
+    }
+
+    private static int rehash(final int hashCode) {
+        int h = hashCode * 0x31848bab;
+        h ^= h >>> 14;
+        return h;
+    }
+}
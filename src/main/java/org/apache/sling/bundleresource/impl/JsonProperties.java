@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+
+/**
+ * The <code>JsonProperties</code> class reads the JSON properties files of
+ * bundle resources into property maps. Nested objects become nested maps,
+ * which describe child resources and are indexed by their paths, see
+ * {@link JsonPropertiesMap}.
+ * <p>
+ * The file is read with a streaming parser and the maps are built directly
+ * from the parser events, such that no intermediate tree of the whole file
+ * is held while reading it. Integral numbers become longs and other numbers
+ * doubles. Arrays of strings, integral numbers, other numbers or booleans only
+ * become <code>String[]</code>, <code>long[]</code>, <code>double[]</code> or
+ * <code>boolean[]</code> respectively, with an empty array becoming an empty
+ * <code>String[]</code>. Other arrays, including arrays of both integral and
+ * other numbers, become lists, such that no long loses precision.
+ * <p>
+ * The maps and lists returned are unmodifiable, such that they can be cached
+ * and shared by all resources created from the same file. For the same
+ * reason the arrays must not be modified.
+ */
+class JsonProperties {
+
+    private static final String[] NO_STRINGS = new String[0];
+
+    private JsonProperties() {
+        // static methods only
+    }
+
+    /**
+     * Reads the JSON object from the stream, which is closed afterwards.
+     *
+     * @param stream The stream providing the JSON object
+     * @return The unmodifiable map of the properties of the object
+     * @throws IOException If the stream cannot be read or does not provide a
+     *             JSON object
+     */
+    static JsonPropertiesMap read(final InputStream stream) throws IOException {
+        try (JsonParser parser = ParserFactory.INSTANCE.createParser(stream)) {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IOException("JSON properties must be an object");
+            }
+            return readObject(parser, new JsonPropertiesMap.Builder());
+        }
+    }
+
+    /**
+     * Reads the properties of the object up to its end, the start of which
+     * has just been read.
+     */
+    private static JsonPropertiesMap readObject(final JsonParser parser, final JsonPropertiesMap.Builder builder) {
+        String name = null;
+        while (parser.hasNext()) {
+            final JsonParser.Event event = parser.next();
+            switch (event) {
+                case KEY_NAME:
+                    name = parser.getString();
+                    break;
+                case START_OBJECT:
+                    builder.put(name, readObject(parser, builder.child(name)));
+                    break;
+                case START_ARRAY:
+                    builder.put(name, readArray(parser));
+                    break;
+                case END_OBJECT:
+                    return builder.build();
+                default:
+                    builder.put(name, getValue(parser, event));
+                    break;
+            }
+        }
+        // the parser fails on a premature end of the input
+        return builder.build();
+    }
+
+    /**
+     * Reads the values of the array up to its end, the start of which has
+     * just been read.
+     */
+    private static Object readArray(final JsonParser parser) {
+        final ArrayValues values = new ArrayValues();
+        while (parser.hasNext()) {
+            final JsonParser.Event event = parser.next();
+            switch (event) {
+                case START_OBJECT:
+                    // not a child resource, thus not part of the file index
+                    values.add(readObject(parser, new JsonPropertiesMap.Builder()));
+                    break;
+                case START_ARRAY:
+                    values.add(readArray(parser));
+                    break;
+                case END_ARRAY:
+                    return values.toValue();
+                default:
+                    values.add(getValue(parser, event));
+                    break;
+            }
+        }
+        return values.toValue();
+    }
+
+    private static Object getValue(final JsonParser parser, final JsonParser.Event event) {
+        switch (event) {
+            case VALUE_STRING:
+                return parser.getString();
+            case VALUE_NUMBER:
+                if (parser.isIntegralNumber()) {
+                    return parser.getLong();
+                }
+                return Double.parseDouble(parser.getString());
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                // VALUE_NULL
+                return null;
+        }
+    }
+
+    /**
+     * Holds the parser factory, which is created on first use as it looks up
+     * the JSON provider. Sharing it avoids looking up the provider for each
+     * file and lets the provider reuse its buffers.
+     */
+    private static final class ParserFactory {
+
+        static final JsonParserFactory INSTANCE = Json.createParserFactory(null);
+    }
+
+    /**
+     * The values of an array being read, which are turned into a typed array
+     * if all values have the same type.
+     */
+    private static final class ArrayValues {
+
+        private Object[] values = new Object[8];
+
+        private int size;
+
+        /** The common type of the values, null if there is none */
+        private Class<?> type;
+
+        void add(final Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            final Class<?> valueType = value == null ? null : value.getClass();
+            if (size == 0) {
+                type = valueType;
+            } else if (type != valueType) {
+                // mixed longs and doubles are kept as read as well
+                type = null;
+            }
+            values[size++] = value;
+        }
+
+        Object toValue() {
+            if (size == 0) {
+                return NO_STRINGS;
+            } else if (type == String.class) {
+                return Arrays.copyOf(values, size, String[].class);
+            } else if (type == Boolean.class) {
+                final boolean[] result = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Boolean) values[i];
+                }
+                return result;
+            } else if (type == Long.class) {
+                final long[] result = new long[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Long) values[i];
+                }
+                return result;
+            } else if (type == Double.class) {
+                final double[] result = new double[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = ((Number) values[i]).doubleValue();
+                }
+                return result;
+            }
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(values, size)));
+        }
+    }
+}
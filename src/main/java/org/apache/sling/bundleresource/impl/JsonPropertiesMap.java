@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The <code>JsonPropertiesMap</code> is the unmodifiable map of the properties
+ * of an object read from a JSON properties file. Nested objects are contained
+ * as nested <code>JsonPropertiesMap</code> instances, which describe child
+ * resources.
+ * <p>
+ * All objects of a file share a flattened index of the objects by their path
+ * relative to the outermost object, such that any nested object is found with
+ * a single lookup instead of descending through the objects above it. Each
+ * object also holds the sorted names of its nested objects, which are the
+ * names of the child resources it describes.
+ */
+final class JsonPropertiesMap extends AbstractMap<String, Object> {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    /**
+     * The properties of the object, which are unmodifiable.
+     */
+    private final Map<String, Object> properties;
+
+    /**
+     * The path of the object relative to the outermost object, which is the
+     * empty string for the outermost object itself.
+     */
+    private final String path;
+
+    /**
+     * The objects of the file by their relative paths, shared by all of them.
+     */
+    private final Map<String, JsonPropertiesMap> index;
+
+    /**
+     * The sorted names of the nested objects.
+     */
+    private final List<String> childNames;
+
+    private JsonPropertiesMap(
+            final Map<String, Object> properties,
+            final String path,
+            final Map<String, JsonPropertiesMap> index,
+            final List<String> childNames) {
+        this.properties = properties;
+        this.path = path;
+        this.index = index;
+        this.childNames = childNames;
+    }
+
+    /**
+     * The <code>Builder</code> collects the properties of an object while it
+     * is read and creates its map once all properties are read. The builders
+     * of the nested objects are created by the builder of the object
+     * containing them, such that they share the index of the file.
+     */
+    static final class Builder {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        private final String path;
+
+        private final Map<String, JsonPropertiesMap> index;
+
+        /**
+         * Creates the builder of the outermost object of a file.
+         */
+        Builder() {
+            this("", new HashMap<>());
+        }
+
+        private Builder(final String path, final Map<String, JsonPropertiesMap> index) {
+            this.path = path;
+            this.index = index;
+        }
+
+        /**
+         * Returns the builder of the nested object of the given name, whose
+         * map is to be added with {@link #put(String, Object)}. Names
+         * containing a slash cannot be addressed by a path, so such objects
+         * are indexed on their own to not make the paths ambiguous.
+         */
+        Builder child(final String name) {
+            final String childPath = path.isEmpty() ? name : path.concat("/").concat(name);
+            return new Builder(childPath, name.indexOf('/') < 0 ? index : new HashMap<>());
+        }
+
+        Builder put(final String name, final Object value) {
+            values.put(name, value);
+            return this;
+        }
+
+        /**
+         * Creates the map of the object, which must not be modified by this
+         * builder afterwards.
+         */
+        JsonPropertiesMap build() {
+            final List<String> names = new ArrayList<>();
+            for (final Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() instanceof JsonPropertiesMap) {
+                    names.add(entry.getKey());
+                }
+            }
+            final String[] childNames = names.toArray(NO_NAMES);
+            Arrays.sort(childNames);
+            final JsonPropertiesMap map = new JsonPropertiesMap(
+                    Collections.unmodifiableMap(values),
+                    path,
+                    index,
+                    Collections.unmodifiableList(Arrays.asList(childNames)));
+            index.put(path, map);
+            return map;
+        }
+    }
+
+    /**
+     * Returns the nested object at the path relative to this object.
+     *
+     * @param relPath The relative path of the nested object
+     * @return The object or <code>null</code> if there is no such object
+     */
+    JsonPropertiesMap getDescendant(final String relPath) {
+        return index.get(path.isEmpty() ? relPath : path.concat("/").concat(relPath));
+    }
+
+    /**
+     * Returns the unmodifiable, sorted names of the nested objects of this
+     * object, including those not indexed.
+     */
+    List<String> getChildNames() {
+        return childNames;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return properties.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return properties.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return properties.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return properties.entrySet();
+    }
+}
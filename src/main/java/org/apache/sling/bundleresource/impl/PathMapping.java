@@ -27,8 +27,25 @@ class PathMapping {
 
     public static final String DIR_PATH = "path";
     public static final String DIR_JSON = "propsJSON";
+    public static final String DIR_ENTRY_CACHE_LIMIT = "entryCacheLimit";
+    public static final String DIR_LIST_CACHE_LIMIT = "listCacheLimit";
+    public static final String DIR_INDEX = "index";
 
     private static final char PREFIX_SEPARATOR_CHAR = '!';
+
+    /**
+     * The maximum length of paths built in the per thread buffer, longer paths
+     * are built in a new buffer to not keep large buffers around.
+     */
+    private static final int MAX_BUFFER_LENGTH = 256;
+
+    /**
+     * The per thread buffer to build mapped paths without creating garbage
+     * other than the resulting string.
+     */
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(MAX_BUFFER_LENGTH));
+
     private final String resourceRoot;
     private final String resourceRootPrefix;
     private final String entryRoot;
@@ -36,6 +53,11 @@ class PathMapping {
 
     private final String jsonExpandExtension;
 
+    private final int entryCacheLimit;
+    private final int listCacheLimit;
+
+    private final Boolean index;
+
     public static PathMapping[] getRoots(final String rootList) {
         List<PathMapping> prefixList = new ArrayList<>();
 
@@ -44,16 +66,31 @@ class PathMapping {
             final String resourceRoot = entry.getValue();
             final String pathDirective = entry.getDirectiveValue(DIR_PATH);
             final String expandDirective = entry.getDirectiveValue(DIR_JSON);
+            final int entryCacheLimit = toLimit(entry.getDirectiveValue(DIR_ENTRY_CACHE_LIMIT));
+            final int listCacheLimit = toLimit(entry.getDirectiveValue(DIR_LIST_CACHE_LIMIT));
+            final String indexDirective = entry.getDirectiveValue(DIR_INDEX);
+            final Boolean index = (indexDirective != null) ? Boolean.valueOf(indexDirective.trim()) : null;
             if (pathDirective != null) {
-                prefixList.add(new PathMapping(resourceRoot, pathDirective, expandDirective));
+                prefixList.add(new PathMapping(
+                        resourceRoot, pathDirective, expandDirective, entryCacheLimit, listCacheLimit, index));
             } else {
-                prefixList.add(PathMapping.create(resourceRoot, expandDirective));
+                prefixList.add(
+                        PathMapping.create(resourceRoot, expandDirective, entryCacheLimit, listCacheLimit, index));
             }
         }
         return prefixList.toArray(new PathMapping[prefixList.size()]);
     }
 
     static PathMapping create(final String configPath, final String expandDirective) {
+        return create(configPath, expandDirective, 0, 0, null);
+    }
+
+    static PathMapping create(
+            final String configPath,
+            final String expandDirective,
+            final int entryCacheLimit,
+            final int listCacheLimit,
+            final Boolean index) {
         String resourceRoot;
         String entryRoot;
         int prefixSep = configPath.indexOf(PREFIX_SEPARATOR_CHAR);
@@ -64,10 +101,23 @@ class PathMapping {
             resourceRoot = configPath;
             entryRoot = null;
         }
-        return new PathMapping(resourceRoot, entryRoot, expandDirective);
+        return new PathMapping(resourceRoot, entryRoot, expandDirective, entryCacheLimit, listCacheLimit, index);
     }
 
     PathMapping(final String resourceRoot, final String entryRoot, final String expandDirective) {
+        this(resourceRoot, entryRoot, expandDirective, 0, 0, null);
+    }
+
+    PathMapping(
+            final String resourceRoot,
+            final String entryRoot,
+            final String expandDirective,
+            final int entryCacheLimit,
+            final int listCacheLimit,
+            final Boolean index) {
+        this.entryCacheLimit = entryCacheLimit;
+        this.listCacheLimit = listCacheLimit;
+        this.index = index;
         this.resourceRoot = ensureNoTrailingSlash(resourceRoot);
         this.resourceRootPrefix = ensureTrailingSlash(resourceRoot);
         this.entryRoot = ensureLeadingSlash(ensureNoTrailingSlash(entryRoot));
@@ -79,34 +129,100 @@ class PathMapping {
         return this.jsonExpandExtension;
     }
 
+    /**
+     * Returns <code>true</code> if the resource path is the resource root or
+     * below it.
+     */
     boolean isChild(final String resourcePath) {
-        return resourcePath.startsWith(resourceRootPrefix) || resourcePath.equals(resourceRoot);
+        return getRelativeStart(resourcePath, resourceRoot) >= 0;
     }
 
+    /**
+     * Returns the entry path of the resource path or <code>null</code> if the
+     * resource path is not mapped by this mapping.
+     */
     String getEntryPath(final String resourcePath) {
-        if (entryRootPrefix == null) {
-            return resourcePath;
-        }
+        return getEntryPath(resourcePath, null);
+    }
 
-        if (resourcePath.startsWith(resourceRootPrefix)) {
-            return entryRootPrefix.concat(resourcePath.substring(resourceRootPrefix.length()));
-        } else if (resourcePath.equals(resourceRoot)) {
-            return entryRoot;
+    /**
+     * Returns the entry path of the resource path with the suffix appended,
+     * such as a slash to address a folder entry or the JSON properties
+     * extension. Building the entry path this way creates a single string
+     * only.
+     *
+     * @param resourcePath The resource path to map
+     * @param suffix The suffix to append, may be <code>null</code>
+     * @return The entry path or <code>null</code> if the resource path is not
+     *         mapped by this mapping
+     */
+    String getEntryPath(final String resourcePath, final String suffix) {
+        if (entryRootPrefix == null) {
+            return suffix == null ? resourcePath : resourcePath.concat(suffix);
         }
-
-        return null;
+        return map(resourcePath, resourceRoot, entryRoot, suffix);
     }
 
     String getResourcePath(final String entryPath) {
         if (entryRootPrefix == null) {
             return entryPath;
         }
-        if (entryPath.startsWith(entryRootPrefix)) {
-            return resourceRootPrefix.concat(entryPath.substring(entryRootPrefix.length()));
-        } else if (entryPath.equals(entryRoot)) {
-            return resourceRoot;
+        return map(entryPath, entryRoot, resourceRoot, null);
+    }
+
+    /**
+     * Replaces the root of the path by the other root and appends the suffix.
+     * Returns <code>null</code> if the path is not the root or below it.
+     */
+    private static String map(final String path, final String fromRoot, final String toRoot, final String suffix) {
+        final int start = getRelativeStart(path, fromRoot);
+        if (start < 0) {
+            return null;
+        }
+
+        final int relativeLength = path.length() - start;
+        if (suffix == null && relativeLength == 0) {
+            return toRoot;
+        }
+
+        final int toRootLength = (toRoot == null) ? 0 : toRoot.length();
+        final int suffixLength = (suffix == null) ? 0 : suffix.length();
+        final int length = toRootLength + relativeLength + suffixLength;
+        final StringBuilder result;
+        if (length > MAX_BUFFER_LENGTH) {
+            result = new StringBuilder(length);
+        } else {
+            result = BUFFER.get();
+            result.setLength(0);
         }
-        return null;
+        if (toRoot != null) {
+            result.append(toRoot);
+        }
+        result.append(path, start, path.length());
+        if (suffix != null) {
+            result.append(suffix);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the index of the path where the part relative to the root
+     * starts, which is the length of the root, or -1 if the path is neither
+     * the root nor below it. A <code>null</code> root is the root folder.
+     */
+    private static int getRelativeStart(final String path, final String root) {
+        if (root == null) {
+            return path.startsWith("/") ? 0 : -1;
+        }
+
+        final int rootLength = root.length();
+        if (!path.startsWith(root)) {
+            return -1;
+        }
+        if (path.length() == rootLength || path.charAt(rootLength) == '/') {
+            return rootLength;
+        }
+        return -1;
     }
 
     String getResourceRoot() {
@@ -125,6 +241,53 @@ class PathMapping {
         return entryRootPrefix;
     }
 
+    /**
+     * Returns the entry path of the folder of the resource root, ending with
+     * a slash. This is <code>/</code>, the root folder of the bundle, if the
+     * resource root or the entry root is <code>/</code>.
+     */
+    String getEntryRootFolder() {
+        final String prefix = entryRootPrefix != null ? entryRootPrefix : resourceRootPrefix;
+        return prefix != null ? prefix : "/";
+    }
+
+    /**
+     * Returns the entry cache limit requested by the bundle for this mapping
+     * or zero if the global limit applies.
+     */
+    int getEntryCacheLimit() {
+        return entryCacheLimit;
+    }
+
+    /**
+     * Returns the child entry cache limit requested by the bundle for this
+     * mapping or zero if the global limit applies.
+     */
+    int getListCacheLimit() {
+        return listCacheLimit;
+    }
+
+    /**
+     * Returns whether the bundle requests to index the entries of this mapping
+     * or <code>null</code> if the global configuration applies.
+     */
+    Boolean getIndex() {
+        return index;
+    }
+
+    private static int toLimit(final String directive) {
+        if (directive == null || directive.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Integer.parseInt(directive.trim()));
+        } catch (final NumberFormatException nfe) {
+            // ignore invalid limits and use the global limit
+            return 0;
+        }
+    }
+
     private static String ensureLeadingDot(final String path) {
         if (path == null || path.isEmpty()) {
             return null;
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ResourceDecorator;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.security.ResourceAccessSecurity;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * Decides whether a bundle resource may get its children directly instead of
+ * through its resource resolver, see {@link BundleResource#getChild(String)}
+ * and {@link BundleResource#hasChildren()}. This is only the case if the
+ * resolver would return the same: no resource decorators and no resource
+ * access security services are registered, which the resolver applies to the
+ * resources, and no resource provider is mounted below the resource, whose
+ * resources the resolver returns instead of or along with those of the bundle.
+ * Neither may another resource provider be mounted at the path of the resource
+ * itself, which the resolver might ask for the children instead, such as a
+ * higher ranked bundle providing resources at the same root. Only the
+ * registrations of the bundle of the resource are ignored at its path.
+ * <p>
+ * The services are tracked while this bundle is active. Without tracking, like
+ * for resources created outside of a framework, children are always resolved
+ * directly.
+ */
+final class ResolverBypass {
+
+    private static volatile ResolverBypass instance;
+
+    static void open(final BundleContext context) {
+        if (instance == null) {
+            final ResolverBypass tmp = new ResolverBypass(context);
+            tmp.openTrackers();
+            instance = tmp;
+        }
+    }
+
+    static void close() {
+        final ResolverBypass tmp = instance;
+        if (tmp != null) {
+            instance = null;
+            tmp.closeTrackers();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the children of the resource at the path
+     * may be resolved without the resource resolver.
+     *
+     * @param resolver The resource resolver of the resource, may be
+     *            <code>null</code>
+     * @param path The path of the resource
+     * @param bundleId The id of the bundle providing the resource
+     */
+    static boolean isAllowed(final ResourceResolver resolver, final String path, final long bundleId) {
+        if (resolver == null) {
+            // there is no resolver to resolve the children
+            return true;
+        }
+        final ResolverBypass bypass = instance;
+        return bypass == null || bypass.allows(path, bundleId);
+    }
+
+    private final ServiceTracker<?, ?>[] trackers;
+
+    /** The roots of the tracked resource providers */
+    private final Map<ServiceReference<?>, String> providerRoots = new HashMap<>();
+
+    /**
+     * The bundles of the tracked bundle resource providers, which are
+     * <code>null</code> for other resource providers
+     */
+    private final Map<ServiceReference<?>, Long> providerBundles = new HashMap<>();
+
+    /** The number of tracked decorators and access security services */
+    private int resolverServices;
+
+    /** Whether decorators or access security services are registered */
+    private volatile boolean resolverServicesPresent;
+
+    /** The paths below which resource providers are mounted */
+    private volatile Set<String> nestingPaths = Collections.emptySet();
+
+    /**
+     * The bundles of the resource providers by the roots they are mounted at,
+     * containing <code>null</code> for other resource providers
+     */
+    private volatile Map<String, Set<Long>> mountedPaths = Collections.emptyMap();
+
+    // private constructor to force using static setup and shutdown
+    private ResolverBypass(final BundleContext context) {
+        this.trackers = new ServiceTracker<?, ?>[] {
+            new ServiceTracker<>(context, ResourceProvider.class.getName(), new Customizer(true)),
+            new ServiceTracker<>(context, ResourceDecorator.class.getName(), new Customizer(false)),
+            new ServiceTracker<>(context, ResourceAccessSecurity.class.getName(), new Customizer(false))
+        };
+    }
+
+    private void openTrackers() {
+        for (final ServiceTracker<?, ?> tracker : trackers) {
+            tracker.open();
+        }
+    }
+
+    private void closeTrackers() {
+        for (final ServiceTracker<?, ?> tracker : trackers) {
+            tracker.close();
+        }
+    }
+
+    private boolean allows(final String path, final long bundleId) {
+        if (resolverServicesPresent || nestingPaths.contains(path)) {
+            return false;
+        }
+        final Set<Long> bundles = mountedPaths.get(path);
+        return bundles == null || (bundles.size() == 1 && bundles.contains(bundleId));
+    }
+
+    private synchronized void addProvider(final ServiceReference<?> reference) {
+        final Object root = reference.getProperty(ResourceProvider.PROPERTY_ROOT);
+        if (root instanceof String) {
+            providerRoots.put(reference, (String) root);
+            final Object bundle = reference.getProperty(BundleResourceProvider.PROP_BUNDLE);
+            providerBundles.put(reference, (bundle instanceof Long) ? (Long) bundle : null);
+        } else {
+            providerRoots.remove(reference);
+            providerBundles.remove(reference);
+        }
+        updateNestingPaths();
+    }
+
+    private synchronized void removeProvider(final ServiceReference<?> reference) {
+        providerBundles.remove(reference);
+        if (providerRoots.remove(reference) != null) {
+            updateNestingPaths();
+        }
+    }
+
+    /**
+     * Collects the ancestors of the provider roots, which are the paths of
+     * the resources having providers mounted below them, and the bundles of
+     * the providers mounted at each root.
+     */
+    private void updateNestingPaths() {
+        final Set<String> paths = new HashSet<>();
+        final Map<String, Set<Long>> mounted = new HashMap<>();
+        for (final Map.Entry<ServiceReference<?>, String> entry : providerRoots.entrySet()) {
+            final String root = entry.getValue();
+            mounted.computeIfAbsent(root, key -> new HashSet<>()).add(providerBundles.get(entry.getKey()));
+            String parent = ResourceUtil.getParent(root);
+            // the ancestors of a path added already are added as well
+            while (parent != null && paths.add(parent)) {
+                parent = ResourceUtil.getParent(parent);
+            }
+        }
+        this.nestingPaths = paths;
+        this.mountedPaths = mounted;
+    }
+
+    private synchronized void updateResolverServices(final int delta) {
+        resolverServices += delta;
+        resolverServicesPresent = resolverServices > 0;
+    }
+
+    /**
+     * Tracks either the resource providers or services applied by the
+     * resource resolver.
+     */
+    private final class Customizer implements ServiceTrackerCustomizer<Object, ServiceReference<Object>> {
+
+        private final boolean providers;
+
+        Customizer(final boolean providers) {
+            this.providers = providers;
+        }
+
+        @Override
+        public ServiceReference<Object> addingService(final ServiceReference<Object> reference) {
+            if (providers) {
+                addProvider(reference);
+            } else {
+                updateResolverServices(1);
+            }
+            return reference;
+        }
+
+        @Override
+        public void modifiedService(final ServiceReference<Object> reference, final ServiceReference<Object> service) {
+            if (providers) {
+                // the root may have changed
+                addProvider(reference);
+            }
+        }
+
+        @Override
+        public void removedService(final ServiceReference<Object> reference, final ServiceReference<Object> service) {
+            if (providers) {
+                removeProvider(reference);
+            } else {
+                updateResolverServices(-1);
+            }
+        }
+    }
+}
@@ -18,15 +18,34 @@
  */
 package org.apache.sling.bundleresource.impl;
 
+import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
 
+import jakarta.servlet.Servlet;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ManagedService;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ActivatorTest {
@@ -67,4 +86,150 @@ class ActivatorTest {
         // Verify nothing happens (and does not throw).
         assertDoesNotThrow(() -> activator.bundleChanged(stoppedEvent));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void updated_appliesConfigurationToCachesAndRestoresDefaultsOnDeletion() throws Exception {
+        final BundleContext context = mock(BundleContext.class);
+        when(context.registerService(eq(ManagedService.class), any(ManagedService.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+        when(context.registerService(eq(Servlet.class), any(Servlet.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+        final Bundle resourceBundle = mockResourceBundle(1, context);
+        when(context.getBundles()).thenReturn(new Bundle[] {resourceBundle});
+
+        final Activator activator = new Activator();
+        activator.start(context);
+        try {
+            final ArgumentCaptor<ManagedService> managedService = ArgumentCaptor.forClass(ManagedService.class);
+            verify(context).registerService(eq(ManagedService.class), managedService.capture(), any(Dictionary.class));
+            final ArgumentCaptor<ResourceProvider> provider = ArgumentCaptor.forClass(ResourceProvider.class);
+            verify(context).registerService(eq(ResourceProvider.class), provider.capture(), any(Dictionary.class));
+            final BundleResourceProvider registered = (BundleResourceProvider) provider.getValue();
+
+            final Hashtable<String, Object> props = new Hashtable<>();
+            props.put(BundleResourceConfiguration.PROP_ENTRY_CACHE_LIMIT, 1000);
+            props.put(BundleResourceConfiguration.PROP_LIST_CACHE_LIMIT, 300);
+            props.put(BundleResourceConfiguration.PROP_CACHE_SIZING, BundleResourceConfiguration.SIZING_MEMORY);
+            managedService.getValue().updated(props);
+
+            BundleResourceCache cache = registered.getBundleResourceCache();
+            assertTrue(cache.isMemorySizing());
+            assertEquals(1000, cache.getEntryCacheMaxSize());
+            assertEquals(300, cache.getListCacheMaxSize());
+
+            // deleting the configuration restores the defaults
+            managedService.getValue().updated(null);
+            cache = registered.getBundleResourceCache();
+            assertFalse(cache.isMemorySizing());
+            assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE, cache.getEntryCacheMaxSize());
+            assertEquals(BundleResourceConfiguration.DEFAULT_LIST_CACHE_SIZE, cache.getListCacheMaxSize());
+        } finally {
+            activator.stop(context);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_registersProvidersPreparedInParallelInTheBackground() throws Exception {
+        final BundleContext context = mock(BundleContext.class);
+        when(context.getProperty(BundleResourceConfiguration.FRAMEWORK_PROPERTY_PREFIX
+                        + BundleResourceConfiguration.PROP_REGISTRATION_ASYNC))
+                .thenReturn("true");
+        when(context.getProperty(BundleResourceConfiguration.FRAMEWORK_PROPERTY_PREFIX
+                        + BundleResourceConfiguration.PROP_REGISTRATION_THREADS))
+                .thenReturn("2");
+        when(context.registerService(eq(ManagedService.class), any(ManagedService.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+        when(context.registerService(eq(Servlet.class), any(Servlet.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+
+        final Bundle[] bundles = new Bundle[5];
+        for (int i = 0; i < bundles.length; i++) {
+            bundles[i] = mockResourceBundle(i, context);
+        }
+        when(context.getBundles()).thenReturn(bundles);
+
+        // the preparation of the first bundle waits until start has returned
+        final CountDownLatch started = new CountDownLatch(1);
+        final Dictionary<String, String> headers = bundles[0].getHeaders();
+        when(bundles[0].getHeaders()).thenAnswer(invocation -> {
+            started.await();
+            return headers;
+        });
+
+        final Activator activator = new Activator();
+        activator.start(context);
+        try {
+            verify(context, never())
+                    .registerService(eq(ResourceProvider.class), any(ResourceProvider.class), any(Dictionary.class));
+            started.countDown();
+            verify(context, timeout(5000).times(bundles.length))
+                    .registerService(eq(ResourceProvider.class), any(ResourceProvider.class), any(Dictionary.class));
+
+            // a second start event for the same bundle does not register again
+            activator.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundles[0]));
+            verify(context, times(bundles.length))
+                    .registerService(eq(ResourceProvider.class), any(ResourceProvider.class), any(Dictionary.class));
+        } finally {
+            activator.stop(context);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_registersProvidersWithoutBlockingBundleEvents() throws Exception {
+        final BundleContext context = mock(BundleContext.class);
+        when(context.registerService(eq(ManagedService.class), any(ManagedService.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+        when(context.registerService(eq(Servlet.class), any(Servlet.class), any(Dictionary.class)))
+                .thenReturn(mock(ServiceRegistration.class));
+        final Bundle resourceBundle = mockResourceBundle(1, context);
+        when(context.getBundles()).thenReturn(new Bundle[] {resourceBundle});
+
+        // the bundle stops while a service listener handles the registration
+        final Activator activator = new Activator();
+        final ServiceReference<ResourceProvider<?>> ref = mock(ServiceReference.class);
+        when(ref.getProperty(Constants.SERVICE_ID)).thenReturn(1L);
+        final ServiceRegistration<ResourceProvider<?>> reg = mock(ServiceRegistration.class);
+        when(reg.getReference()).thenReturn(ref);
+        final boolean[] stopped = new boolean[1];
+        when(context.registerService(eq(ResourceProvider.class), any(ResourceProvider.class), any(Dictionary.class)))
+                .thenAnswer(invocation -> {
+                    final Thread thread = new Thread(
+                            () -> activator.bundleChanged(new BundleEvent(BundleEvent.STOPPED, resourceBundle)));
+                    thread.start();
+                    thread.join(5000);
+                    stopped[0] = !thread.isAlive();
+                    return reg;
+                });
+
+        activator.start(context);
+        try {
+            assertTrue(stopped[0]);
+            // the providers removed while being registered are unregistered
+            verify(reg).unregister();
+        } finally {
+            activator.stop(context);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bundle mockResourceBundle(final long id, final BundleContext context) {
+        final Bundle resourceBundle = mock(Bundle.class);
+        final Hashtable<String, String> headers = new Hashtable<>();
+        headers.put(Activator.BUNDLE_RESOURCE_ROOTS, "/libs/bundle" + id);
+        when(resourceBundle.getHeaders()).thenReturn(headers);
+        when(resourceBundle.getBundleId()).thenReturn(id);
+        when(resourceBundle.getState()).thenReturn(Bundle.ACTIVE);
+        when(resourceBundle.getBundleContext()).thenReturn(context);
+
+        final ServiceReference<ResourceProvider<?>> ref = mock(ServiceReference.class);
+        when(ref.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        final ServiceRegistration<ResourceProvider<?>> reg = mock(ServiceRegistration.class);
+        when(reg.getReference()).thenReturn(ref);
+        when(context.registerService(eq(ResourceProvider.class), any(ResourceProvider.class), any(Dictionary.class)))
+                .thenReturn((ServiceRegistration) reg);
+        return resourceBundle;
+    }
 }
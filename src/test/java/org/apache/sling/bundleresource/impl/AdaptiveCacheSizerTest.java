@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+class AdaptiveCacheSizerTest {
+
+    private MemoryMXBean memory;
+
+    private MemoryPoolMXBean pool;
+
+    private BundleResourceCache cache;
+
+    private AdaptiveCacheSizer sizer;
+
+    @BeforeEach
+    void setup() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_ENABLED, true);
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_INTERVAL, 3600);
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_HEAP_THRESHOLD, 80);
+
+        memory = mock(MemoryMXBean.class, withSettings().extraInterfaces(NotificationEmitter.class));
+        pool = mock(MemoryPoolMXBean.class);
+        when(pool.getType()).thenReturn(MemoryType.HEAP);
+        when(pool.isCollectionUsageThresholdSupported()).thenReturn(true);
+        when(pool.getUsage()).thenReturn(new MemoryUsage(0, 100, 1000, 1000));
+        cache = mock(BundleResourceCache.class);
+
+        sizer = new AdaptiveCacheSizer(
+                new BundleResourceConfiguration(props),
+                () -> Collections.singletonList(cache),
+                memory,
+                Collections.singletonList(pool));
+    }
+
+    @Test
+    void testStartAndStop() throws Exception {
+        sizer.start();
+        verify(pool).setCollectionUsageThreshold(800);
+        verify((NotificationEmitter) memory).addNotificationListener(eq(sizer), any(), any());
+
+        sizer.stop();
+        verify(pool).setCollectionUsageThreshold(0);
+        verify((NotificationEmitter) memory).removeNotificationListener(sizer);
+    }
+
+    @Test
+    void testKeepsExistingThreshold() {
+        when(pool.getCollectionUsageThreshold()).thenReturn(500L);
+        sizer.start();
+        sizer.stop();
+        verify(pool, never()).setCollectionUsageThreshold(800);
+        verify(pool, never()).setCollectionUsageThreshold(0);
+    }
+
+    @Test
+    void testAdaptWithHeapAvailable() {
+        when(memory.getHeapMemoryUsage()).thenReturn(new MemoryUsage(0, 100, 1000, 1000));
+        sizer.adapt();
+        verify(cache).adaptLimits(false, true);
+    }
+
+    @Test
+    void testAdaptWithFullHeap() {
+        when(memory.getHeapMemoryUsage()).thenReturn(new MemoryUsage(0, 900, 1000, 1000));
+        sizer.adapt();
+        verify(cache).adaptLimits(false, false);
+    }
+
+    @Test
+    void testThresholdNotificationShrinksCaches() {
+        when(memory.getHeapMemoryUsage()).thenReturn(new MemoryUsage(0, 100, 1000, 1000));
+        sizer.start();
+        try {
+            sizer.handleNotification(
+                    new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, memory, 1), null);
+            verify(cache, timeout(10_000)).adaptLimits(true, false);
+        } finally {
+            sizer.stop();
+        }
+    }
+}
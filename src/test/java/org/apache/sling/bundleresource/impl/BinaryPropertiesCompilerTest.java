@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPropertiesCompilerTest {
+
+    @TempDir
+    Path directory;
+
+    private void write(final String path, final String content) throws IOException {
+        final Path file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCompile() throws IOException {
+        write(
+                "META-INF/MANIFEST.MF",
+                "Manifest-Version: 1.0\n" + Activator.BUNDLE_RESOURCE_ROOTS
+                        + ": /libs/foo;propsJSON:=json,/libs/props;propsJSON:=props,/libs/bar\n");
+        write("libs/foo/test.json", "{\"title\":\"foo\",\"child\":{\"title\":\"bar\"}}");
+        write("libs/foo/test.props", "{\"title\":\"props\"}");
+        write("libs/foo/array.json", "[1,2]");
+        write("libs/foo/invalid.json", "{\"title\":");
+        write("libs/foo/test.txt", "text");
+        write("libs/props/test.props", "{\"title\":\"props\"}");
+        write("libs/bar/test.json", "{\"title\":\"bar\"}");
+        write("other/test.json", "{\"title\":\"other\"}");
+
+        assertEquals(2, BinaryPropertiesCompiler.compile(directory));
+        final Path binary = directory.resolve("META-INF/bundleresource/libs/foo/test.json.bin");
+        try (InputStream in = Files.newInputStream(binary)) {
+            final JsonPropertiesMap props = BinaryProperties.read(in);
+            assertEquals("foo", props.get("title"));
+            assertEquals("bar", props.getDescendant("child").get("title"));
+        }
+        assertTrue(Files.exists(directory.resolve("META-INF/bundleresource/libs/props/test.props.bin")));
+        assertFalse(Files.exists(directory.resolve("META-INF/bundleresource/libs/foo/array.json.bin")));
+        assertFalse(Files.exists(directory.resolve("META-INF/bundleresource/libs/foo/test.props.bin")));
+
+        // files outside of the mappings with JSON properties are not compiled
+        assertFalse(Files.exists(directory.resolve("META-INF/bundleresource/libs/bar/test.json.bin")));
+        assertFalse(Files.exists(directory.resolve("META-INF/bundleresource/other/test.json.bin")));
+
+        // compiling again keeps the binary forms of unchanged files
+        final long modified = Files.getLastModifiedTime(binary).toMillis();
+        Files.setLastModifiedTime(binary, FileTime.fromMillis(modified - 10_000));
+        assertEquals(2, BinaryPropertiesCompiler.compile(directory));
+        assertEquals(modified - 10_000, Files.getLastModifiedTime(binary).toMillis());
+
+        // but replaces those of changed files, also keeping their length
+        write("libs/foo/test.json", "{\"title\":\"baz\",\"child\":{\"title\":\"bar\"}}");
+        assertEquals(2, BinaryPropertiesCompiler.compile(directory));
+        try (InputStream in = Files.newInputStream(binary)) {
+            assertEquals("baz", BinaryProperties.read(in).get("title"));
+        }
+
+        // and removes those of files which cannot be compiled anymore
+        write("libs/foo/test.json", "{\"title\":");
+        assertEquals(1, BinaryPropertiesCompiler.compile(directory));
+        assertFalse(Files.exists(binary));
+    }
+
+    @Test
+    void testCompileWithoutHeader() throws IOException {
+        write("libs/foo/test.json", "{\"title\":\"foo\"}");
+        assertEquals(0, BinaryPropertiesCompiler.compile(directory));
+
+        write("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+        assertEquals(0, BinaryPropertiesCompiler.compile(directory));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPropertiesTest {
+
+    private static final String JSON = "{\"s\":\"x\",\"l\":42,\"d\":1.5,\"t\":true,\"n\":null,"
+            + "\"strings\":[\"x\",\"y\"],\"longs\":[1,2],\"doubles\":[1.5,2.0],\"numbers\":[1,2.5],\"booleans\":[false,true],"
+            + "\"mixed\":[\"x\",1,{\"a\":\"b\"}],\"child\":{\"p\":\"x\",\"grand\":{\"q\":[]}},\"c/d\":{\"e\":{}}}";
+
+    private static byte[] compile(final String json) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProperties.write(JsonProperties.read(new ByteArrayInputStream(bytes)), bytes, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        final JsonPropertiesMap props = BinaryProperties.read(new ByteArrayInputStream(compile(JSON)));
+        assertEquals("x", props.get("s"));
+        assertEquals(42L, props.get("l"));
+        assertEquals(1.5d, props.get("d"));
+        assertEquals(Boolean.TRUE, props.get("t"));
+        assertTrue(props.containsKey("n"));
+        assertNull(props.get("n"));
+        assertArrayEquals(new String[] {"x", "y"}, (String[]) props.get("strings"));
+        assertArrayEquals(new long[] {1, 2}, (long[]) props.get("longs"));
+        assertArrayEquals(new double[] {1.5, 2}, (double[]) props.get("doubles"));
+        assertEquals(Arrays.asList(1L, 2.5d), props.get("numbers"));
+        assertArrayEquals(new boolean[] {false, true}, (boolean[]) props.get("booleans"));
+        final List<?> mixed = (List<?>) props.get("mixed");
+        assertEquals(Arrays.asList("x", 1L), mixed.subList(0, 2));
+        assertEquals("b", ((Map<?, ?>) mixed.get(2)).get("a"));
+
+        // the strings are shared and the nested objects indexed
+        assertSame(props.get("s"), ((String[]) props.get("strings"))[0]);
+        assertEquals(Arrays.asList("c/d", "child"), props.getChildNames());
+        assertEquals("x", props.getDescendant("child").get("p"));
+        assertArrayEquals(
+                new String[0], (String[]) props.getDescendant("child/grand").get("q"));
+        assertNull(props.getDescendant("c/d/e"));
+    }
+
+    @Test
+    void testInvalid() throws IOException {
+        assertThrows(IOException.class, () -> BinaryProperties.read(new ByteArrayInputStream(JSON.getBytes())));
+
+        final byte[] binary = compile(JSON);
+        assertThrows(
+                IOException.class,
+                () -> BinaryProperties.read(new ByteArrayInputStream(Arrays.copyOf(binary, binary.length - 3))));
+
+        // another version
+        binary[4]++;
+        assertThrows(IOException.class, () -> BinaryProperties.read(new ByteArrayInputStream(binary)));
+    }
+
+    @Test
+    void testStaleBinaryForm() throws IOException {
+        final byte[] binary = compile(JSON);
+        final byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+        assertEquals(
+                "x",
+                BinaryProperties.read(new ByteArrayInputStream(binary), json.length)
+                        .get("s"));
+        assertTrue(BinaryProperties.isCompiledFrom(new ByteArrayInputStream(binary), json));
+
+        // another length of the JSON properties file is detected at runtime
+        assertNull(BinaryProperties.read(new ByteArrayInputStream(binary), json.length + 1));
+        // as is an unknown length
+        assertNull(BinaryProperties.read(new ByteArrayInputStream(binary), -1));
+        assertFalse(BinaryProperties.isCompiledFrom(
+                new ByteArrayInputStream(binary), Arrays.copyOf(json, json.length + 1)));
+
+        // other contents of the same length only by the build tool
+        json[6] = 'y';
+        assertFalse(BinaryProperties.isCompiledFrom(new ByteArrayInputStream(binary), json));
+        assertFalse(BinaryProperties.isCompiledFrom(new ByteArrayInputStream(new byte[3]), json));
+    }
+
+    @Test
+    void testEntryPath() {
+        assertEquals(
+                "/META-INF/bundleresource/libs/foo/test.json.bin",
+                BinaryProperties.getEntryPath("/libs/foo/test.json"));
+    }
+}
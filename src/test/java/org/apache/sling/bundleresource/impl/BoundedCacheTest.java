@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void testDefaultLimit() {
+        assertEquals(BoundedCache.DEFAULT_LIMIT, new BoundedCache<String, String>(0).getLimit());
+        assertEquals(BoundedCache.DEFAULT_LIMIT, new BoundedCache<String, String>(-5).getLimit());
+        assertEquals(7, new BoundedCache<String, String>(7).getLimit());
+    }
+
+    @Test
+    void testPutGetAndReplace() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        assertNull(cache.get("a"));
+
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void testEvictsNotRecentlyUsedEntries() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        // a is used, so b is the first entry without a second chance
+        cache.get("a");
+        cache.put("d", "4");
+
+        assertEquals(3, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    void testSizeIsLimitedByOwnLimit() {
+        // caches with the same content only differ by their limits
+        final BoundedCache<String, String> small = new BoundedCache<>(5);
+        final BoundedCache<String, String> large = new BoundedCache<>(10);
+        for (int i = 0; i < 8; i++) {
+            small.put("k" + i, "v" + i);
+            large.put("k" + i, "v" + i);
+        }
+        assertEquals(5, small.size());
+        assertEquals(5, small.getLimit());
+        assertEquals(8, large.size());
+        assertEquals(10, large.getLimit());
+
+        // the most recently added entry is always kept
+        assertEquals("v7", small.get("k7"));
+        for (int i = 0; i < 8; i++) {
+            assertEquals("v" + i, large.get("k" + i));
+        }
+
+        for (int i = 8; i < 30; i++) {
+            large.put("k" + i, "v" + i);
+            assertTrue(large.size() <= 10);
+        }
+        assertEquals(10, large.size());
+    }
+
+    @Test
+    void testEvictsInAccessOrder() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(5);
+        for (final String key : new String[] {"a", "b", "c", "d", "e"}) {
+            cache.put(key, key);
+        }
+
+        // the entries not accessed are evicted in the order of insertion
+        cache.get("a");
+        cache.get("c");
+        cache.get("e");
+        cache.put("f", "f");
+        assertNull(cache.peek("b"));
+        cache.put("g", "g");
+        assertNull(cache.peek("d"));
+
+        assertEquals(5, cache.size());
+        for (final String key : new String[] {"a", "c", "e", "f", "g"}) {
+            assertEquals(key, cache.peek(key));
+        }
+
+        // an entry accessed before each insertion is never evicted
+        for (int i = 0; i < 20; i++) {
+            assertEquals("a", cache.get("a"));
+            cache.put("x" + i, "x");
+        }
+        assertEquals(5, cache.size());
+        assertEquals("a", cache.peek("a"));
+    }
+
+    @Test
+    void testWeightedLimit() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10, (k, v) -> v.length());
+        cache.put("a", "12345");
+        cache.put("b", "1234");
+        assertEquals(9, cache.weight());
+
+        // replacing adjusts the weight
+        cache.put("b", "12");
+        assertEquals(7, cache.weight());
+
+        // exceeding the weight evicts entries
+        cache.put("c", "1234");
+        assertTrue(cache.weight() <= 10);
+        assertNull(cache.get("a"));
+
+        cache.clear();
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void testConcurrentAccessKeepsLimit() throws Exception {
+        final BoundedCache<Integer, Integer> cache = new BoundedCache<>(50);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        cache.put(offset + i, i);
+                        cache.get(offset + i / 2);
+                    }
+                }));
+            }
+            for (final Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // the last eviction run leaves the cache at its limit
+        cache.put(-1, -1);
+        assertTrue(cache.size() <= 50, "Cache must not exceed its limit: " + cache.size());
+    }
+
+    @Test
+    void testGetLoadsMissingValue() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("A", cache.get("a", k -> {
+            loads.incrementAndGet();
+            return k.toUpperCase();
+        }));
+        assertEquals("A", cache.get("a", k -> "other"));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(0, cache.getSavedLoadCount());
+    }
+
+    @Test
+    void testConcurrentLoadsAreCoalesced() throws Exception {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final int threads = 4;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.get("a", k -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return "1";
+            })));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            for (int t = 1; t < threads; t++) {
+                futures.add(executor.submit(() -> cache.get("a", k -> {
+                    loads.incrementAndGet();
+                    return "2";
+                })));
+            }
+
+            // wait for the other threads to join the pending load
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (cache.getSavedLoadCount() < threads - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (final Future<String> f : futures) {
+                assertEquals("1", f.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(threads - 1, cache.getSavedLoadCount());
+    }
+
+    @Test
+    void testLoadFailureIsPropagated() throws Exception {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> loader = executor.submit(() -> cache.get("a", k -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("failed");
+            }));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            final Future<String> waiter = executor.submit(() -> cache.get("a", k -> "2"));
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (cache.getSavedLoadCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            final ExecutionException loaderFailure = assertThrows(ExecutionException.class, loader::get);
+            assertTrue(loaderFailure.getCause() instanceof IllegalStateException);
+            final ExecutionException waiterFailure = assertThrows(ExecutionException.class, waiter::get);
+            assertTrue(waiterFailure.getCause() instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+
+        // a failed load is not cached, the next access loads again
+        assertNull(cache.get("a"));
+        assertEquals("3", cache.get("a", k -> "3"));
+    }
+
+    @Test
+    void testAdmissionKeepsFrequentEntries() {
+        final BoundedCache<String, String> admitting = new BoundedCache<>(10, null, true);
+        final BoundedCache<String, String> plain = new BoundedCache<>(10);
+        assertTrue(admitting.isAdmission());
+
+        // a scan of keys accessed once interleaved with regular accesses
+        int admittingLoads = 0;
+        int plainLoads = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String hot = "hot" + (i % 10);
+            admittingLoads += admitting.get(hot) == null ? 1 : 0;
+            admitting.get(hot, k -> k);
+            plainLoads += plain.get(hot) == null ? 1 : 0;
+            plain.get(hot, k -> k);
+
+            admitting.get("scan" + i, k -> k);
+            plain.get("scan" + i, k -> k);
+        }
+
+        assertTrue(admitting.size() <= 10);
+        assertTrue(admitting.getRejectedCount() > 0);
+        assertTrue(
+                admittingLoads < plainLoads / 2,
+                "Expected fewer misses of the hot keys: " + admittingLoads + " vs. " + plainLoads);
+    }
+
+    @Test
+    void testPeekDoesNotCountAsAccess() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3);
+        assertNull(cache.peek("a"));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        // a is only peeked and thus evicted first
+        assertEquals("1", cache.peek("a"));
+        cache.put("d", "4");
+        assertNull(cache.peek("a"));
+        assertEquals("2", cache.peek("b"));
+    }
+
+    @Test
+    void testAdaptLimit() {
+        final BoundedCache<String, String> cache = new BoundedCache<>(4);
+        assertEquals(4, cache.getConfiguredLimit());
+
+        // lookups are not counted by default
+        cache.get("a");
+        assertEquals(0, cache.getRequestCount());
+        cache.recordStats();
+        cache.get("a");
+        assertEquals(1, cache.getRequestCount());
+        assertEquals(0, cache.getHitCount());
+
+        // a full cache missing keys grows
+        for (int i = 0; i < 8; i++) {
+            cache.get("k" + i, k -> k);
+        }
+        assertEquals(8, cache.adaptLimit(1, 16, false, true));
+
+        // and keeps growing while the hit ratio improves
+        for (int i = 4; i < 8; i++) {
+            assertNotNull(cache.get("k" + i));
+        }
+        for (int i = 0; i < 8; i++) {
+            cache.get("m" + i, k -> k);
+        }
+        assertEquals(16, cache.adaptLimit(1, 32, false, true));
+
+        // growing stops once the hit ratio does not improve
+        for (int i = 0; i < 32; i++) {
+            cache.get("n" + i, k -> k);
+        }
+        assertEquals(16, cache.adaptLimit(1, 32, false, true));
+
+        // no growth without heap available
+        for (int i = 0; i < 32; i++) {
+            cache.get("o" + i, k -> k);
+        }
+        assertEquals(16, cache.adaptLimit(1, 32, false, false));
+
+        // idle caches and heap pressure shrink the cache
+        assertEquals(8, cache.adaptLimit(1, 32, false, true));
+        assertTrue(cache.weight() <= 8);
+        cache.get("a");
+        assertEquals(4, cache.adaptLimit(3, 32, true, true));
+        assertEquals(3, cache.adaptLimit(3, 32, true, true));
+        assertEquals(4, cache.getConfiguredLimit());
+    }
+
+    @Test
+    void testSharedPool() {
+        final CachePool pool = new CachePool(4);
+        final BoundedCache<String, String> busy = new BoundedCache<>(pool, null, false);
+        final BoundedCache<String, String> idle = new BoundedCache<>(pool, null, false);
+        assertTrue(busy.isSharedPool());
+
+        idle.put("a", "1");
+        idle.put("b", "2");
+        for (int i = 0; i < 4; i++) {
+            busy.put("k" + i, "v");
+            busy.get("k" + i);
+        }
+
+        // the entries not used recently are evicted across the caches
+        assertEquals(4, pool.weight());
+        assertEquals(0, idle.size());
+        assertEquals(4, busy.size());
+        assertEquals(4, busy.weight());
+
+        // clearing a cache returns its weight to the pool at once
+        busy.clear();
+        assertEquals(0, pool.weight());
+        idle.put("a", "1");
+        assertEquals(1, pool.weight());
+        assertEquals("1", idle.get("a"));
+
+        // the limit of a shared pool is not adapted
+        assertEquals(4, idle.adaptLimit(1, 16, true, false));
+    }
+
+    @Test
+    void testSharedPoolAdmissionKeepsFrequentEntries() {
+        final CachePool pool = new CachePool(10);
+        final BoundedCache<String, String> hot = new BoundedCache<>(pool, null, true);
+        final BoundedCache<String, String> scan = new BoundedCache<>(pool, null, true);
+        assertTrue(hot.isAdmission());
+
+        // the frequencies of both caches are recorded in the sketch of the pool,
+        // so a scan through one cache does not evict the hot keys of the other
+        int hotLoads = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String key = "hot" + (i % 5);
+            hotLoads += hot.get(key) == null ? 1 : 0;
+            hot.get(key, k -> k);
+            scan.get("scan" + i, k -> k);
+        }
+
+        assertTrue(pool.weight() <= 10);
+        assertTrue(scan.getRejectedCount() > 0);
+        assertTrue(hotLoads < 50, "Expected the hot keys to stay cached: " + hotLoads + " misses");
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hot" + i, hot.peek("hot" + i));
+        }
+    }
+
+    @Test
+    void testSharedPoolAdmissionAgesFrequenciesOfIdleCaches() {
+        final CachePool pool = new CachePool(10);
+        final BoundedCache<String, String> idle = new BoundedCache<>(pool, null, true);
+        final BoundedCache<String, String> busy = new BoundedCache<>(pool, null, true);
+
+        // keys accessed often once and never again
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 20; j++) {
+                idle.get("old" + i, k -> k);
+            }
+        }
+
+        // the accesses of the busy cache age the frequencies of the idle cache,
+        // such that its entries are eventually evicted for the keys in use
+        for (int i = 0; i < 2000; i++) {
+            busy.get("key" + (i % 10), k -> k);
+        }
+        assertEquals(0, idle.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("key" + i, busy.peek("key" + i));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BundleEntryFilterTest {
+
+    private static final int ENTRIES = 1000;
+
+    /**
+     * Creates a bundle with a folder /libs/foo/a/ and the files
+     * /libs/foo/a/file0 to /libs/foo/a/file999.
+     */
+    private Bundle getBundle() {
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            files.add("libs/foo/a/file" + i);
+        }
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntryPaths("/libs/foo/"))
+                .thenAnswer(i -> Collections.enumeration(Collections.singletonList("libs/foo/a/")));
+        when(bundle.getEntryPaths("/libs/foo/a/")).thenAnswer(i -> Collections.enumeration(files));
+        return bundle;
+    }
+
+    @Test
+    void testContainsAllEntries() {
+        final BundleEntryFilter filter = BundleEntryFilter.build(getBundle(), Collections.singletonList("/libs/foo"));
+        assertEquals(ENTRIES + 1, filter.size());
+        assertTrue(filter.getBitCount() >= filter.size() * BundleEntryFilter.BITS_PER_ENTRY);
+
+        assertTrue(filter.mightContain("/libs/foo/"));
+        assertTrue(filter.mightContain("/libs/foo/a/"));
+        for (int i = 0; i < ENTRIES; i++) {
+            assertTrue(filter.mightContain("/libs/foo/a/file" + i));
+            assertFalse(filter.isAbsent("/libs/foo/a/file" + i));
+        }
+    }
+
+    @Test
+    void testDetectsMostMissingEntries() {
+        final BundleEntryFilter filter = BundleEntryFilter.build(getBundle(), Collections.singletonList("/libs/foo"));
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (!filter.isAbsent("/libs/foo/a/file" + i + ".json")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < ENTRIES / 20, "Too many false positives: " + falsePositives);
+
+        // paths not covered are never absent
+        assertTrue(filter.covers("/libs/foo/x"));
+        assertFalse(filter.covers("/libs/bar/x"));
+        assertFalse(filter.isAbsent("/libs/bar/x"));
+    }
+
+    @Test
+    void testFilteredCacheDoesNotAccessBundleForMisses() throws Exception {
+        final Bundle bundle = getBundle();
+        when(bundle.getEntry("/libs/foo/a/file1")).thenReturn(new URL("file:/libs/foo/a/file1"));
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_FILTER_ENABLED, true);
+        final BundleResourceCache cache = new BundleResourceCache(
+                bundle, new BundleResourceConfiguration(props), PathMapping.getRoots("/libs/foo"));
+        assertNotNull(cache.getFilter());
+        assertNull(cache.getIndex());
+
+        assertNotNull(cache.getEntry("/libs/foo/a/file1"));
+        assertNull(cache.getEntry("/libs/foo/missing/"));
+        assertEquals(Collections.emptyList(), cache.getEntryPaths("/libs/foo/missing/"));
+        verify(bundle, never()).getEntry("/libs/foo/missing/");
+        verify(bundle, never()).getEntryPaths("/libs/foo/missing/");
+    }
+
+    @Test
+    void testNoFilterForIndexedEntries() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_FILTER_ENABLED, true);
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, true);
+        final BundleResourceCache cache = new BundleResourceCache(
+                getBundle(), new BundleResourceConfiguration(props), PathMapping.getRoots("/libs/foo"));
+        assertNotNull(cache.getIndex());
+        assertNull(cache.getFilter());
+    }
+}
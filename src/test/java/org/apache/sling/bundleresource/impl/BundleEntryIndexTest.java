@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BundleEntryIndexTest {
+
+    /**
+     * Creates a bundle with the entries below /libs/foo, returning the entry
+     * paths without leading slash like Apache Felix does.
+     */
+    private Bundle getBundle() {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntryPaths("/libs/foo/"))
+                .thenAnswer(
+                        i -> Collections.enumeration(Arrays.asList("libs/foo/b", "libs/foo/a/", "libs/foo/c.json")));
+        when(bundle.getEntryPaths("/libs/foo/a/"))
+                .thenAnswer(i -> Collections.enumeration(Arrays.asList("libs/foo/a/x", "libs/foo/a/empty/")));
+        return bundle;
+    }
+
+    @Test
+    void testContains() {
+        final BundleEntryIndex index = BundleEntryIndex.build(getBundle(), Collections.singletonList("/libs/foo"));
+        assertEquals(5, index.size());
+        assertEquals(2, index.getFolderCount());
+
+        assertTrue(index.contains("/libs/foo/"));
+        assertTrue(index.contains("/libs/foo/a/"));
+        assertTrue(index.contains("/libs/foo/a/empty/"));
+        assertTrue(index.contains("/libs/foo/a/x"));
+        assertTrue(index.contains("/libs/foo/b"));
+        assertTrue(index.contains("/libs/foo/c.json"));
+
+        assertFalse(index.contains("/libs/foo/a"));
+        assertFalse(index.contains("/libs/foo/b/"));
+        assertFalse(index.contains("/libs/foo/c"));
+        assertFalse(index.contains("/libs/foo/a/empty/y"));
+        assertFalse(index.contains("/libs/foo/missing/y"));
+    }
+
+    @Test
+    void testCoverage() {
+        final BundleEntryIndex index = BundleEntryIndex.build(getBundle(), Arrays.asList("/libs/foo/a", "/libs/foo"));
+        assertTrue(index.covers("/libs/foo/"));
+        assertTrue(index.covers("/libs/foo/a/x"));
+        assertFalse(index.covers("/libs/bar/x"));
+
+        assertTrue(index.isAbsent("/libs/foo/missing"));
+        assertFalse(index.isAbsent("/libs/foo/b"));
+        assertFalse(index.isAbsent("/libs/bar/x"));
+    }
+
+    @Test
+    void testRootNotAFolder() {
+        final BundleEntryIndex index =
+                BundleEntryIndex.build(getBundle(), Collections.singletonList("/SLING-INF/libs/foo/test.txt"));
+        assertEquals(0, index.size());
+        assertFalse(index.covers("/SLING-INF/libs/foo/test.txt"));
+        assertFalse(index.isAbsent("/SLING-INF/libs/foo/test.txt.json"));
+    }
+
+    @Test
+    void testGetChildren() {
+        final BundleEntryIndex index = BundleEntryIndex.build(getBundle(), Collections.singletonList("/libs/foo"));
+        assertEquals(Arrays.asList("/libs/foo/a/", "/libs/foo/b", "/libs/foo/c.json"), index.getChildren("/libs/foo/"));
+        assertEquals(Collections.emptyList(), index.getChildren("/libs/foo/a/empty/"));
+        assertEquals(Collections.emptyList(), index.getChildren("/libs/foo/missing/"));
+        assertNull(index.getChildren("/libs/bar/"));
+    }
+
+    @Test
+    void testIndexedCacheDoesNotAccessBundleForMisses() throws Exception {
+        final Bundle bundle = getBundle();
+        when(bundle.getEntry("/libs/foo/b")).thenReturn(new URL("file:/libs/foo/b"));
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, true);
+        final BundleResourceCache cache = new BundleResourceCache(
+                bundle, new BundleResourceConfiguration(props), PathMapping.getRoots("/libs/foo"));
+        assertNotNull(cache.getIndex());
+
+        assertNotNull(cache.getEntry("/libs/foo/b"));
+        assertNull(cache.getEntry("/libs/foo/missing"));
+        assertNull(cache.getEntry("/libs/foo/missing.json"));
+        verify(bundle, never()).getEntry("/libs/foo/missing");
+        verify(bundle, never()).getEntry("/libs/foo/missing.json");
+
+        final List<String> children = cache.getEntryPaths("/libs/foo/a/");
+        assertEquals(Arrays.asList("/libs/foo/a/empty/", "/libs/foo/a/x"), children);
+        assertEquals(0, cache.getListCacheSize());
+    }
+
+    @Test
+    void testBundleRoot() {
+        final Bundle bundle = getBundle();
+        when(bundle.getEntryPaths("/")).thenAnswer(i -> Collections.enumeration(Arrays.asList("libs/")));
+        when(bundle.getEntryPaths("/libs/")).thenAnswer(i -> Collections.enumeration(Arrays.asList("libs/foo/")));
+
+        final BundleEntryIndex index = BundleEntryIndex.build(bundle, Collections.singletonList(null));
+        assertTrue(index.covers("/libs/foo/a/x"));
+        assertTrue(index.contains("/libs/foo/a/x"));
+
+        // mappings of the resource root or the entry root / index the bundle
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, true);
+        for (final String root : new String[] {"/", "/apps/foo;" + PathMapping.DIR_PATH + ":=/"}) {
+            final BundleResourceCache cache =
+                    new BundleResourceCache(bundle, new BundleResourceConfiguration(props), PathMapping.getRoots(root));
+            assertNotNull(cache.getIndex());
+            assertTrue(cache.getIndex().contains("/libs/foo/b"));
+        }
+
+        // as well as the filter
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, false);
+        props.put(BundleResourceConfiguration.PROP_FILTER_ENABLED, true);
+        final BundleResourceCache cache =
+                new BundleResourceCache(bundle, new BundleResourceConfiguration(props), PathMapping.getRoots("/"));
+        assertNull(cache.getIndex());
+        assertNull(cache.getEntry("/libs/foo/missing"));
+        verify(bundle, never()).getEntry("/libs/foo/missing");
+    }
+
+    @Test
+    void testIndexDisabledByBundle() {
+        final Bundle bundle = getBundle();
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_INDEX_ENABLED, true);
+        final BundleResourceCache cache = new BundleResourceCache(
+                bundle,
+                new BundleResourceConfiguration(props),
+                PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_INDEX + ":=false"));
+        assertNull(cache.getIndex());
+        verify(bundle, never()).getEntryPaths(anyString());
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.bundleresource.impl.BundleResourceCache.EntryType;
+import org.apache.sling.bundleresource.impl.url.ResourceURLStreamHandler;
+import org.apache.sling.bundleresource.impl.url.ResourceURLStreamHandlerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BundleResourceCacheTest {
+
+    @BeforeEach
+    void setup() {
+        ResourceURLStreamHandlerFactory.init();
+    }
+
+    @AfterEach
+    void finish() {
+        ResourceURLStreamHandler.reset();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetPropertiesIsCached() throws Exception {
+        final Map<String, Object> child = new HashMap<>();
+        child.put("enabled", true);
+        final Map<String, Object> content = new HashMap<>();
+        content.put("title", "foo");
+        content.put("rank", 5L);
+        content.put("tags", Arrays.asList("a", "b"));
+        content.put("mixed", Arrays.asList("a", 1L));
+        content.put("child", child);
+        ResourceURLStreamHandler.addJSON("/libs/foo/test.json", content);
+
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/test.json")).thenReturn(new URL("resource:/libs/foo/test.json"));
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+
+        final Map<String, Object> props = cache.getProperties("/libs/foo/test.json");
+        assertEquals("foo", props.get("title"));
+        assertEquals(5L, props.get("rank"));
+        assertArrayEquals(new String[] {"a", "b"}, (String[]) props.get("tags"));
+        assertEquals(true, ((Map<String, Object>) props.get("child")).get("enabled"));
+        assertEquals(1, cache.getPropsCacheSize());
+
+        // the cached properties are shared and must not be modifiable
+        assertSame(props, cache.getProperties("/libs/foo/test.json"));
+        assertThrows(UnsupportedOperationException.class, () -> props.put("title", "bar"));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) props.get("mixed")).add("c"));
+        assertThrows(UnsupportedOperationException.class, () -> ((Map<String, Object>) props.get("child")).clear());
+        verify(bundle, times(1)).getEntry("/libs/foo/test.json");
+    }
+
+    @Test
+    void testGetPropertiesMissingEntry() throws Exception {
+        final BundleResourceCache cache = new BundleResourceCache(mock(Bundle.class));
+        assertNull(cache.getProperties("/libs/foo/missing.json"));
+        assertEquals(0, cache.getPropsCacheSize());
+    }
+
+    @Test
+    void testGetPropertiesPrefersBinaryForm(@TempDir final Path directory) throws Exception {
+        final byte[] json = "{\"title\":\"json\"}".getBytes(StandardCharsets.UTF_8);
+        ResourceURLStreamHandler.addContents("/libs/foo/test.json", "{\"title\":\"json\"}");
+        ResourceURLStreamHandler.addContents("/libs/foo/other.json", "{\"title\":\"json\"}");
+        ResourceURLStreamHandler.addContents("/libs/foo/stale.json", "{\"title\":\"json\"}");
+
+        // binary forms pretending to be compiled from the JSON or from other JSON
+        final Path binary = writeBinary(directory, "test.json.bin", json);
+        final Path stale =
+                writeBinary(directory, "stale.json.bin", "{\"title\":\"old\"}".getBytes(StandardCharsets.UTF_8));
+
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/test.json")).thenReturn(new URL("resource:/libs/foo/test.json"));
+        when(bundle.getEntry("/libs/foo/other.json")).thenReturn(new URL("resource:/libs/foo/other.json"));
+        when(bundle.getEntry("/libs/foo/stale.json")).thenReturn(new URL("resource:/libs/foo/stale.json"));
+        when(bundle.getEntry("/META-INF/bundleresource/libs/foo/test.json.bin"))
+                .thenReturn(binary.toUri().toURL());
+        when(bundle.getEntry("/META-INF/bundleresource/libs/foo/stale.json.bin"))
+                .thenReturn(stale.toUri().toURL());
+        when(bundle.getEntryPaths("/META-INF/bundleresource/"))
+                .thenAnswer(invocation -> Collections.enumeration(Arrays.asList("META-INF/bundleresource/libs/")));
+
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+        assertEquals("binary", cache.getProperties("/libs/foo/test.json").get("title"));
+        assertEquals("json", cache.getProperties("/libs/foo/other.json").get("title"));
+
+        // a stale binary form is ignored
+        assertEquals("json", cache.getProperties("/libs/foo/stale.json").get("title"));
+
+        // without binary forms in the bundle they are not looked up
+        final Bundle plain = mock(Bundle.class);
+        when(plain.getEntry("/libs/foo/test.json")).thenReturn(new URL("resource:/libs/foo/test.json"));
+        assertEquals(
+                "json",
+                new BundleResourceCache(plain)
+                        .getProperties("/libs/foo/test.json")
+                        .get("title"));
+        verify(plain, never()).getEntry("/META-INF/bundleresource/libs/foo/test.json.bin");
+    }
+
+    private static Path writeBinary(final Path directory, final String name, final byte[] json) throws IOException {
+        final Path file = directory.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            BinaryProperties.write(Collections.singletonMap("title", "binary"), json, out);
+        }
+        return file;
+    }
+
+    @Test
+    void testContentLengthIsCached() throws Exception {
+        ResourceURLStreamHandler.addContents("/libs/foo/test.txt", "Hello Text");
+
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/test.txt")).thenReturn(new URL("resource:/libs/foo/test.txt"));
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+
+        assertEquals(10, cache.getContentLength("/libs/foo/test.txt"));
+        assertEquals(-1, cache.getContentLength("/libs/foo/missing.txt"));
+
+        // the length is not taken from the entry again
+        ResourceURLStreamHandler.reset();
+        assertEquals(10, cache.getContentLength("/libs/foo/test.txt"));
+        verify(bundle, times(1)).getEntry("/libs/foo/test.txt");
+    }
+
+    @Test
+    void testEntryType() throws Exception {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/folder/")).thenReturn(new URL("file:/libs/foo/folder/"));
+        when(bundle.getEntry("/libs/foo/file")).thenReturn(new URL("file:/libs/foo/file"));
+        when(bundle.getEntry("/libs/foo/props.json")).thenReturn(new URL("file:/libs/foo/props.json"));
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+
+        assertEquals(EntryType.FOLDER, cache.getEntryType("/libs/foo/folder", ".json"));
+        assertEquals(EntryType.FILE, cache.getEntryType("/libs/foo/file", ".json"));
+        assertEquals(EntryType.PROPERTIES, cache.getEntryType("/libs/foo/props", ".json"));
+        assertEquals(EntryType.ABSENT, cache.getEntryType("/libs/foo/missing", ".json"));
+        assertEquals(EntryType.ABSENT, cache.getEntryType("/libs/foo/missing2", null));
+        assertEquals(5, cache.getTypeCacheSize());
+
+        // a cached type is answered by a single cache access
+        assertEquals(EntryType.ABSENT, cache.getEntryType("/libs/foo/missing", ".json"));
+        verify(bundle, times(1)).getEntry("/libs/foo/missing/");
+        verify(bundle, times(1)).getEntry("/libs/foo/missing");
+        verify(bundle, times(1)).getEntry("/libs/foo/missing.json");
+        verify(bundle, never()).getEntry("/libs/foo/missing2.json");
+
+        // the URLs of the entries are not cached by the type lookup
+        assertEquals(0, cache.getEntryCacheSize());
+    }
+
+    @Test
+    void testPropertiesWeight() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put("title", "foo");
+        assertTrue(BundleResourceCache.weighProperties("/a.json", props)
+                > BundleResourceCache.weighProperties("/a.json", new HashMap<>()));
+    }
+
+    @Test
+    void testBulkTraversalBypassesCaches() throws Exception {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/file")).thenReturn(new URL("file:/libs/foo/file"));
+        when(bundle.getEntryPaths("/libs/foo/"))
+                .thenAnswer(invocation -> Collections.enumeration(Arrays.asList("/libs/foo/file")));
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+
+        assertEquals(EntryType.FILE, cache.getEntryType("/libs/foo/file", null, true));
+        assertEquals(Arrays.asList("/libs/foo/file"), cache.getEntryPaths("/libs/foo/", true));
+        assertEquals(0, cache.getTypeCacheSize());
+        assertEquals(0, cache.getListCacheSize());
+
+        // entries cached by regular lookups are used by bulk traversals
+        assertEquals(EntryType.FILE, cache.getEntryType("/libs/foo/file", null));
+        assertEquals(EntryType.FILE, cache.getEntryType("/libs/foo/file", null, true));
+        assertEquals(1, cache.getTypeCacheSize());
+        verify(bundle, times(2)).getEntry("/libs/foo/file");
+    }
+
+    @Test
+    void testSharedPoolIsReclaimedOnClose() throws Exception {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntry("/libs/foo/file")).thenReturn(new URL("file:/libs/foo/file"));
+        final CachePool pool = new CachePool(100);
+        final BundleResourceCache cache =
+                new BundleResourceCache(bundle, BundleResourceConfiguration.DEFAULT, new PathMapping[0], pool);
+        assertSame(pool, cache.getCachePool());
+        assertFalse(cache.isAdaptiveSizing());
+
+        assertEquals(EntryType.FILE, cache.getEntryType("/libs/foo/file", null));
+        assertEquals("file:/libs/foo/file", cache.getEntry("/libs/foo/file").toString());
+        assertEquals(2, pool.weight());
+        assertEquals(100, cache.getEntryCacheMaxSize());
+
+        cache.close();
+        assertEquals(0, pool.weight());
+        assertEquals(0, cache.getEntryCacheSize());
+
+        // reconfiguring without pool limits the caches of the bundle again
+        cache.configure(BundleResourceConfiguration.DEFAULT, null);
+        assertNull(cache.getCachePool());
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE, cache.getEntryCacheMaxSize());
+    }
+
+    @Test
+    void testChildResourceNamesAreCached() {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getEntryPaths("/libs/foo/"))
+                .thenAnswer(invocation -> Collections.enumeration(Arrays.asList("/libs/foo/b.json", "/libs/foo/a")));
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+        final Map<String, Object> subResources = Collections.singletonMap("c", Collections.emptyMap());
+
+        final ChildResourceNames names = cache.getChildResourceNames("/libs/foo/", ".json", subResources, false);
+        assertEquals(3, names.size());
+        assertSame(names, cache.getChildResourceNames("/libs/foo/", ".json", subResources, false));
+        assertEquals(1, cache.getChildCacheSize());
+
+        // names merged for other sub resources are not returned
+        final ChildResourceNames other = cache.getChildResourceNames("/libs/foo/", ".json", null, false);
+        assertEquals(2, other.size());
+        assertSame(names, cache.getChildResourceNames("/libs/foo/", ".json", subResources, false));
+        verify(bundle, times(1)).getEntryPaths("/libs/foo/");
+    }
+}
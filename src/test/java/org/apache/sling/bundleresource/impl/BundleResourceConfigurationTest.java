@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class BundleResourceConfigurationTest {
+
+    @Test
+    void testDefaults() {
+        final BundleResourceConfiguration config = BundleResourceConfiguration.DEFAULT;
+        assertFalse(config.isMemorySizing());
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE, config.getEntryCacheLimit());
+        assertEquals(BundleResourceConfiguration.DEFAULT_LIST_CACHE_SIZE, config.getListCacheLimit());
+        assertEquals(0, config.getGlobalCacheLimit());
+        assertFalse(config.isListStreaming());
+    }
+
+    @Test
+    void testAdaptiveSizing() {
+        assertFalse(BundleResourceConfiguration.DEFAULT.isAdaptiveSizing());
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_ENABLED, "true");
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_MAX_FACTOR, 4);
+        props.put(BundleResourceConfiguration.PROP_ADAPTIVE_HEAP_THRESHOLD, 150);
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+        assertTrue(config.isAdaptiveSizing());
+        assertEquals(4, config.getAdaptiveMaxFactor());
+        assertEquals(BundleResourceConfiguration.DEFAULT_ADAPTIVE_INTERVAL, config.getAdaptiveInterval());
+        assertEquals(99, config.getAdaptiveHeapThreshold());
+
+        // the limits of the caches range from a quarter to the factor
+        final BundleResourceCache cache = new BundleResourceCache(mock(Bundle.class), config, new PathMapping[0]);
+        assertTrue(cache.isAdaptiveSizing());
+        cache.adaptLimits(false, true);
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE / 2, cache.getEntryCacheMaxSize());
+        cache.adaptLimits(true, false);
+        cache.adaptLimits(true, false);
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE / 4, cache.getEntryCacheMaxSize());
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE, cache.getEntryCacheConfiguredMaxSize());
+    }
+
+    @Test
+    void testMemorySizing() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_CACHE_SIZING, BundleResourceConfiguration.SIZING_MEMORY);
+        props.put(BundleResourceConfiguration.PROP_LIST_CACHE_LIMIT, "4096");
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+        assertTrue(config.isMemorySizing());
+        assertEquals(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_MEMORY, config.getEntryCacheLimit());
+        assertEquals(4096, config.getListCacheLimit());
+    }
+
+    @Test
+    void testCacheLimits() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_ENTRY_CACHE_LIMIT, 500);
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+
+        // global limits apply unless the bundle defines its own
+        BundleResourceCache cache = new BundleResourceCache(
+                mock(Bundle.class), config, new PathMapping[] {new PathMapping("/libs/foo", null, null)});
+        assertEquals(500, cache.getEntryCacheMaxSize());
+        assertEquals(BundleResourceConfiguration.DEFAULT_LIST_CACHE_SIZE, cache.getListCacheMaxSize());
+        assertFalse(cache.isBundleEntryCacheLimit());
+
+        cache = new BundleResourceCache(
+                mock(Bundle.class),
+                config,
+                PathMapping.getRoots("/libs/foo;"
+                        + PathMapping.DIR_ENTRY_CACHE_LIMIT + ":=2000,/libs/bar;" + PathMapping.DIR_LIST_CACHE_LIMIT
+                        + ":=200"));
+        assertEquals(2000, cache.getEntryCacheMaxSize());
+        assertEquals(200, cache.getListCacheMaxSize());
+        assertTrue(cache.isBundleEntryCacheLimit());
+        assertTrue(cache.isBundleListCacheLimit());
+
+        // reconfiguring keeps the bundle limits
+        cache.configure(BundleResourceConfiguration.DEFAULT);
+        assertEquals(2000, cache.getEntryCacheMaxSize());
+    }
+
+    @Test
+    void testBundleCacheLimitsOnlyRaiseCountLimits() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_ENTRY_CACHE_LIMIT, 500);
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+
+        final BundleResourceCache cache = new BundleResourceCache(
+                mock(Bundle.class),
+                config,
+                PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_ENTRY_CACHE_LIMIT + ":=100;"
+                        + PathMapping.DIR_LIST_CACHE_LIMIT + ":=200"));
+        assertEquals(500, cache.getEntryCacheMaxSize());
+        assertEquals(200, cache.getListCacheMaxSize());
+    }
+
+    @Test
+    void testBundleCacheLimitsScaledWithMemorySizing() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_CACHE_SIZING, BundleResourceConfiguration.SIZING_MEMORY);
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+
+        // the limits of the bundle are numbers of entries in either sizing
+        final BundleResourceCache cache = new BundleResourceCache(
+                mock(Bundle.class),
+                config,
+                PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_ENTRY_CACHE_LIMIT + ":=1000;"
+                        + PathMapping.DIR_LIST_CACHE_LIMIT + ":=10"));
+        assertEquals(1000 * BundleResourceConfiguration.ENTRY_CACHE_ENTRY_BYTES, cache.getEntryCacheMaxSize());
+        assertEquals(BundleResourceConfiguration.DEFAULT_LIST_CACHE_MEMORY, cache.getListCacheMaxSize());
+
+        // the default limits hold the same number of entries in either sizing
+        assertEquals(
+                BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_MEMORY,
+                config.getEntryCacheLimit(BundleResourceConfiguration.DEFAULT_ENTRY_CACHE_SIZE));
+        assertEquals(
+                BundleResourceConfiguration.DEFAULT_LIST_CACHE_MEMORY,
+                config.getListCacheLimit(BundleResourceConfiguration.DEFAULT_LIST_CACHE_SIZE));
+    }
+
+    @Test
+    void testBundleCacheLimitsWithSharedPool() {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(BundleResourceConfiguration.PROP_GLOBAL_CACHE_LIMIT, 100);
+        final BundleResourceConfiguration config = new BundleResourceConfiguration(props);
+        final CachePool pool = new CachePool(config.getGlobalCacheLimit());
+
+        // the caches of a bundle without limits share the pool
+        BundleResourceCache cache = new BundleResourceCache(
+                mock(Bundle.class), config, new PathMapping[] {new PathMapping("/libs/foo", null, null)}, pool);
+        assertEquals(100, cache.getEntryCacheMaxSize());
+        assertEquals(100, cache.getListCacheMaxSize());
+
+        // the caches limited by the bundle are kept out of the pool
+        cache = new BundleResourceCache(
+                mock(Bundle.class),
+                config,
+                PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_ENTRY_CACHE_LIMIT + ":=2000"),
+                pool);
+        assertEquals(2000, cache.getEntryCacheMaxSize());
+        assertEquals(100, cache.getListCacheMaxSize());
+        assertEquals(pool, cache.getCachePool());
+    }
+}
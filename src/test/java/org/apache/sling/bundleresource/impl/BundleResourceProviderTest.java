@@ -23,7 +23,10 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -42,7 +45,12 @@ import org.junit.jupiter.api.Test;
 import org.osgi.framework.Bundle;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class BundleResourceProviderTest {
@@ -170,6 +178,31 @@ class BundleResourceProviderTest {
         assertEquals("HELLOWORLD", getContent(rsrc));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void testMappingsOfSameFolderWithAndWithoutJSON() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/test.json", Collections.singletonMap("test", (Object) "foo"));
+
+        // both mappings look up the types of the same entries in one cache
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+        final BundleResourceProvider withJSON =
+                new BundleResourceProvider(cache, new PathMapping("/libs/foo", null, "json"));
+        final BundleResourceProvider withoutJSON =
+                new BundleResourceProvider(cache, new PathMapping("/apps/foo", "/libs/foo", null));
+
+        for (int i = 0; i < 2; i++) {
+            final Resource props = withJSON.getResource(
+                    mock(ResolveContext.class), "/libs/foo/test", mock(ResourceContext.class), null);
+            assertNotNull(props);
+            assertEquals("foo", props.getValueMap().get("test", String.class));
+            assertNull(withoutJSON.getResource(
+                    mock(ResolveContext.class), "/apps/foo/test", mock(ResourceContext.class), null));
+            assertNotNull(withoutJSON.getResource(
+                    mock(ResolveContext.class), "/apps/foo/test.json", mock(ResourceContext.class), null));
+        }
+    }
+
     @Test
     void testTreeWithoutDeepJSON() throws IOException {
         testTreeWithoutDeepJSON("");
@@ -354,4 +387,186 @@ class BundleResourceProviderTest {
         assertNotNull(rsrc);
         assertEquals("g2", rsrc.getValueMap().get("name", String.class));
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testStreamingChildren() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/", "DIR");
+        addContent(bundle, "/libs/foo/a", "A");
+        addContent(bundle, "/libs/foo/b", "B");
+        addContent(bundle, "/libs/foo/b.json", Collections.singletonMap("name", (Object) "b"));
+        addContent(bundle, "/libs/foo/d.json", Collections.singletonMap("name", (Object) "d"));
+        addContent(bundle, "/libs/foo/test/", "DIR");
+        final Map<String, Object> props = new HashMap<>();
+        props.put("a", Collections.singletonMap("name", "sa"));
+        props.put("e", Collections.singletonMap("name", "se"));
+        addContent(bundle, "/libs/foo.json", props);
+        when(bundle.getEntryPaths("/libs/foo/"))
+                .thenAnswer(i -> Collections.enumeration(Arrays.asList(
+                        "/libs/foo/test/", "/libs/foo/d.json", "/libs/foo/b.json", "/libs/foo/b", "/libs/foo/a")));
+
+        final Hashtable<String, Object> config = new Hashtable<>(); // NOSONAR
+        config.put(BundleResourceConfiguration.PROP_LIST_STREAMING, true);
+        final BundleResourceCache cache =
+                new BundleResourceCache(bundle, new BundleResourceConfiguration(config), new PathMapping[0]);
+        final BundleResourceProvider provider =
+                new BundleResourceProvider(cache, new PathMapping("/libs/foo", null, "json"));
+
+        final Resource rsrc =
+                provider.getResource(mock(ResolveContext.class), "/libs/foo", mock(ResourceContext.class), null);
+        assertNotNull(rsrc);
+
+        // in the order of the bundle, followed by the sub resources not hidden
+        final Iterator<Resource> children = provider.listChildren(mock(ResolveContext.class), rsrc);
+        final Resource test = children.next();
+        assertEquals("/libs/foo/test", test.getPath());
+        assertFalse(test.getValueMap().containsKey("name"));
+        assertEquals("/libs/foo/d", children.next().getPath());
+        assertEquals("/libs/foo/b", children.next().getPath());
+        final Resource a = children.next();
+        assertEquals("/libs/foo/a", a.getPath());
+        assertNull(a.getValueMap().get("name", String.class));
+        final Resource e = children.next();
+        assertEquals("/libs/foo/e", e.getPath());
+        assertEquals("se", e.getValueMap().get("name", String.class));
+        assertFalse(children.hasNext());
+
+        // the streamed children are not cached
+        assertEquals(0, cache.getListCacheSize());
+        assertEquals(0, cache.getChildCacheSize());
+
+        // the order is unspecified: once cached the children are sorted
+        assertFalse(cache.getEntryPaths("/libs/foo/").isEmpty());
+        assertEquals(
+                Arrays.asList("/libs/foo/a", "/libs/foo/b", "/libs/foo/d", "/libs/foo/e", "/libs/foo/test"),
+                getChildren(provider.listChildren(mock(ResolveContext.class), rsrc)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testHasChildrenIsCachedWhenStreaming() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/", "DIR");
+        addContent(bundle, "/libs/foo/a", "A");
+        finishContent(bundle);
+
+        final Hashtable<String, Object> config = new Hashtable<>(); // NOSONAR
+        config.put(BundleResourceConfiguration.PROP_LIST_STREAMING, true);
+        final BundleResourceCache cache =
+                new BundleResourceCache(bundle, new BundleResourceConfiguration(config), new PathMapping[0]);
+        final BundleResourceProvider provider =
+                new BundleResourceProvider(cache, new PathMapping("/libs/foo", null, null));
+
+        final Resource rsrc =
+                provider.getResource(mock(ResolveContext.class), "/libs/foo", mock(ResourceContext.class), null);
+        assertTrue(rsrc.hasChildren());
+        assertTrue(rsrc.hasChildren());
+        verify(bundle, times(1)).getEntryPaths("/libs/foo/");
+        assertEquals(1, cache.getListCacheSize());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testGetParent() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/", "DIR");
+        addContent(bundle, "/libs/foo/a", "A");
+        final Map<String, Object> d = new HashMap<>();
+        d.put("name", "d");
+        d.put("g", Collections.singletonMap("g2", Collections.singletonMap("name", "g2")));
+        addContent(bundle, "/libs/foo/d.json", d);
+        finishContent(bundle);
+
+        final BundleResourceProvider provider =
+                new BundleResourceProvider(new BundleResourceCache(bundle), new PathMapping("/libs/foo", null, "json"));
+        final ResolveContext<Object> ctx = mock(ResolveContext.class);
+
+        final Resource root = provider.getResource(ctx, "/libs/foo", mock(ResourceContext.class), null);
+        assertNotNull(root);
+        assertNull(provider.getParent(ctx, root));
+
+        // children listed by the parent return it as is
+        final Iterator<Resource> children = provider.listChildren(ctx, root);
+        while (children.hasNext()) {
+            assertSame(root, provider.getParent(ctx, children.next()));
+        }
+
+        final Resource a = provider.getResource(ctx, "/libs/foo/a", mock(ResourceContext.class), null);
+        assertEquals("/libs/foo", provider.getParent(ctx, a).getPath());
+
+        // resources defined by JSON know their parents
+        final Resource g2 = provider.getResource(ctx, "/libs/foo/d/g/g2", mock(ResourceContext.class), null);
+        assertNotNull(g2);
+        final Resource g = provider.getParent(ctx, g2);
+        assertEquals("/libs/foo/d/g", g.getPath());
+        assertSame(g, ((BundleResource) g2).getParentResource());
+        final Resource parentOfG = provider.getParent(ctx, g);
+        assertEquals("/libs/foo/d", parentOfG.getPath());
+        assertEquals("d", parentOfG.getValueMap().get("name", String.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testJsonAncestorIsCached() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/", "DIR");
+        addContent(bundle, "/libs/foo/d.json", Collections.singletonMap("g", Collections.singletonMap("name", "g")));
+        finishContent(bundle);
+
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+        final BundleResourceProvider provider =
+                new BundleResourceProvider(cache, new PathMapping("/libs/foo", null, "json"));
+        final ResolveContext<Object> ctx = mock(ResolveContext.class);
+
+        assertEquals(
+                "g",
+                provider.getResource(ctx, "/libs/foo/d/g", mock(ResourceContext.class), null)
+                        .getValueMap()
+                        .get("name", String.class));
+        assertNull(provider.getResource(ctx, "/libs/foo/d/missing/x", mock(ResourceContext.class), null));
+        assertEquals(2, cache.getAncestorCacheSize());
+
+        // resolving again neither looks up the entries of the ancestors again
+        clearInvocations(bundle);
+        assertEquals(
+                "g",
+                provider.getResource(ctx, "/libs/foo/d/g", mock(ResourceContext.class), null)
+                        .getValueMap()
+                        .get("name", String.class));
+        assertNull(provider.getResource(ctx, "/libs/foo/d/missing/x", mock(ResourceContext.class), null));
+        verify(bundle, never()).getEntry(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testBulkTraversalHintIsResolverProperty() throws IOException {
+        final Bundle bundle = getBundle();
+        addContent(bundle, "/libs/foo/", "DIR");
+        addContent(bundle, "/libs/foo/a", "A");
+        addContent(bundle, "/libs/foo/b", "B");
+        finishContent(bundle);
+
+        final BundleResourceCache cache = new BundleResourceCache(bundle);
+        final BundleResourceProvider provider =
+                new BundleResourceProvider(cache, new PathMapping("/libs/foo", null, null));
+
+        // the lookups of a bulk traversal, also of the children, are not cached
+        final ResourceResolver resolver = mock(ResourceResolver.class);
+        when(resolver.getPropertyMap())
+                .thenReturn(Collections.<String, Object>singletonMap(BundleResourceProvider.PROP_BULK_TRAVERSAL, true));
+        final ResolveContext<Object> ctx = mock(ResolveContext.class);
+        when(ctx.getResourceResolver()).thenReturn(resolver);
+        final Resource parent = provider.getResource(ctx, "/libs/foo", mock(ResourceContext.class), null);
+        assertNotNull(parent);
+        assertEquals(Arrays.asList("/libs/foo/a", "/libs/foo/b"), getChildren(provider.listChildren(ctx, parent)));
+        assertNotNull(parent.getChild("a"));
+        assertEquals(0, cache.getTypeCacheSize());
+        assertEquals(0, cache.getListCacheSize());
+
+        // regular lookups are cached
+        final ResolveContext<Object> regular = mock(ResolveContext.class);
+        assertNotNull(provider.getResource(regular, "/libs/foo/a", mock(ResourceContext.class), null));
+        assertEquals(1, cache.getTypeCacheSize());
+    }
 }
@@ -19,14 +19,21 @@
 package org.apache.sling.bundleresource.impl;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.bundleresource.impl.BundleResourceCache.EntryType;
 import org.apache.sling.bundleresource.impl.url.ResourceURLStreamHandler;
 import org.apache.sling.bundleresource.impl.url.ResourceURLStreamHandlerFactory;
 import org.junit.jupiter.api.AfterEach;
@@ -35,8 +42,18 @@ import org.junit.jupiter.api.Test;
 import org.osgi.framework.Bundle;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class BundleResourceTest {
@@ -66,6 +83,7 @@ class BundleResourceTest {
 
         ResourceURLStreamHandler.addJSON(path, content);
         when(cache.getEntry(path)).thenReturn(url);
+        when(cache.getProperties(path)).thenAnswer(i -> JsonProperties.read(url.openStream()));
     }
 
     void addContent(BundleResourceCache cache, String path, String content) throws IOException {
@@ -85,6 +103,8 @@ class BundleResourceTest {
         assertNull(rsrc.getResourceSuperType());
         final ValueMap vm = rsrc.getValueMap();
         assertEquals(JcrConstants.NT_FILE, vm.get(ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class));
+        // resources without properties share their value map
+        assertSame(BundleResourceValueMap.FILE, vm);
     }
 
     @Test
@@ -122,4 +142,123 @@ class BundleResourceTest {
         assertEquals(JcrConstants.NT_FILE, vm.get(ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class));
         assertEquals("foo", vm.get("test", String.class));
     }
+
+    @Test
+    void testPropertiesAndMetadataAreLazy() throws IOException {
+        final BundleResourceCache cache = getBundleResourceCache();
+        addContent(cache, "/libs/foo/test.txt", "Hello Text");
+        addContent(cache, "/libs/foo/test.txt.json", Collections.singletonMap("test", (Object) "foo"));
+        when(cache.getContentLength("/libs/foo/test.txt")).thenReturn(10);
+        final BundleResource rsrc = new BundleResource(
+                null, cache, new PathMapping("/libs/foo", null, "json"), "/libs/foo/test.txt", null, false);
+        assertEquals("test.txt", rsrc.getName());
+        verify(cache, never()).getProperties(anyString());
+        verify(cache, never()).getContentLength(anyString());
+
+        assertEquals("foo", rsrc.getValueMap().get("test", String.class));
+        assertEquals(JcrConstants.NT_FILE, rsrc.getResourceType());
+        verify(cache, times(1)).getProperties("/libs/foo/test.txt.json");
+        verify(cache, never()).getContentLength(anyString());
+
+        final ResourceMetadata metadata = rsrc.getResourceMetadata();
+        assertEquals(10, metadata.getContentLength());
+        assertEquals("/libs/foo/test.txt", metadata.getResolutionPath());
+        assertSame(metadata, rsrc.getResourceMetadata());
+    }
+
+    @Test
+    void testGetChildAndHasChildren() throws IOException {
+        final BundleResourceCache cache = getBundleResourceCache();
+        final ResourceResolver resolver = null;
+        final PathMapping mapping = new PathMapping("/libs/foo", null, "json");
+        when(cache.getEntryType(anyString(), anyString(), anyBoolean())).thenReturn(EntryType.ABSENT);
+        when(cache.getEntryType("/libs/foo/folder/x", ".json", false)).thenReturn(EntryType.FILE);
+        when(cache.getEntryPaths(anyString(), anyBoolean())).thenReturn(ChildEntries.EMPTY);
+        when(cache.getEntryPaths("/libs/foo/folder/", false))
+                .thenReturn(ChildEntries.of("/libs/foo/folder/", Arrays.asList("/libs/foo/folder/x")));
+        final Map<String, Object> child = new HashMap<>();
+        child.put("name", "c");
+        child.put("grand", Collections.singletonMap("name", "g"));
+        addContent(cache, "/libs/foo/test.json", Collections.singletonMap("child", child));
+
+        // children defined by JSON
+        final BundleResource test = new BundleResource(resolver, cache, mapping, "/libs/foo/test", null, false);
+        assertTrue(test.hasChildren());
+        assertEquals("c", test.getChild("child").getValueMap().get("name", String.class));
+        assertEquals("/libs/foo/test/child/grand", test.getChild("child/grand").getPath());
+        assertEquals("g", test.getChild("child/grand").getValueMap().get("name", String.class));
+        assertNull(test.getChild("missing"));
+        assertFalse(test.getChild("child").getChild("grand").hasChildren());
+
+        // children being entries
+        final BundleResource folder = new BundleResource(resolver, cache, mapping, "/libs/foo/folder", null, true);
+        assertTrue(folder.hasChildren());
+        assertEquals("/libs/foo/folder/x", folder.getChild("x").getPath());
+        assertFalse(new BundleResource(resolver, cache, mapping, "/libs/foo/empty", null, true).hasChildren());
+        verify(cache, never()).getEntryPaths("/libs/foo/test/", false);
+    }
+
+    @Test
+    void testChildDoesNotRetainAncestors() throws IOException {
+        final BundleResourceCache cache = getBundleResourceCache();
+        final PathMapping mapping = new PathMapping("/libs/foo", null, "json");
+        when(cache.getEntryType(anyString(), anyString(), anyBoolean())).thenReturn(EntryType.ABSENT);
+        addContent(
+                cache,
+                "/libs/foo/test.json",
+                Collections.singletonMap("a", Collections.singletonMap("b", Collections.singletonMap("name", "b"))));
+
+        BundleResource test = new BundleResource(null, cache, mapping, "/libs/foo/test", null, false);
+        final BundleResource b = (BundleResource) test.getChildResource("a/b");
+        assertNotNull(b);
+        final WeakReference<BundleResource> ancestor = new WeakReference<>(test);
+        test = null;
+        for (int i = 0; i < 50 && ancestor.get() != null; i++) {
+            System.gc(); // NOSONAR
+        }
+        assertNull(ancestor.get());
+        assertNull(b.getParentResource());
+        assertEquals("b", b.getValueMap().get("name", String.class));
+    }
+
+    @Test
+    void testNestedJsonResources() throws IOException {
+        final BundleResourceCache cache = getBundleResourceCache();
+        final PathMapping mapping = new PathMapping("/libs/foo", null, "json");
+        when(cache.getEntryType(anyString(), anyString(), anyBoolean())).thenReturn(EntryType.ABSENT);
+        final Map<String, Object> b = new HashMap<>();
+        b.put("name", "b");
+        b.put("z", Collections.singletonMap("name", "z"));
+        b.put("y", Collections.singletonMap("name", "y"));
+        addContent(cache, "/libs/foo/test.json", Collections.singletonMap("a", Collections.singletonMap("b", b)));
+
+        // the nested resource is found without reading the properties in between
+        final BundleResource test = new BundleResource(null, cache, mapping, "/libs/foo/test", null, false);
+        final Resource z = test.getChildResource("a/b/z");
+        assertEquals("/libs/foo/test/a/b/z", z.getPath());
+        assertEquals("z", z.getValueMap().get("name", String.class));
+        final BundleResource parent = ((BundleResource) z).getParentResource();
+        assertEquals("/libs/foo/test/a/b", parent.getPath());
+        // the resource in between is only weakly referenced by its child
+        final BundleResource a = parent.getParentResource();
+        if (a != null) {
+            assertEquals("/libs/foo/test/a", a.getPath());
+            assertSame(test, a.getParentResource());
+        }
+        verify(cache, never()).getProperties("/libs/foo/test/a.json");
+        assertNull(test.getChildResource("a/b/missing"));
+
+        // the children of a resource only defined by JSON are its sub resources
+        final Iterator<Resource> children = new BundleResourceIterator(parent);
+        assertEquals("/libs/foo/test/a/b/y", children.next().getPath());
+        assertEquals("/libs/foo/test/a/b/z", children.next().getPath());
+        assertFalse(children.hasNext());
+        verify(cache, never()).getChildResourceNames(anyString(), anyString(), any(), anyBoolean());
+
+        // a resource in between with its own JSON properties adds sub resources
+        when(cache.getEntryType("/libs/foo/test/a", ".json", false)).thenReturn(EntryType.PROPERTIES);
+        addContent(cache, "/libs/foo/test/a.json", Collections.singletonMap("x", Collections.emptyMap()));
+        assertEquals("z", test.getChildResource("a/b/z").getValueMap().get("name", String.class));
+        assertEquals("/libs/foo/test/a/x", test.getChildResource("a/x").getPath());
+    }
 }
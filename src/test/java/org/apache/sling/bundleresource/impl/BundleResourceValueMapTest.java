@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class BundleResourceValueMapTest {
+
+    private static BundleResourceValueMap create() {
+        final Map<String, Object> props = new HashMap<>();
+        props.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, "foo/bar");
+        props.put(BundleResourceValueMap.PROPERTY_RESOURCE_SUPER_TYPE, "foo/base");
+        props.put("title", "Title");
+        props.put("rank", 5L);
+        props.put("tags", new String[] {"a", "b"});
+        props.put("date", "2020-01-02T03:04:05.000Z");
+        props.put("count", 3);
+        props.put("empty", null);
+        return BundleResourceValueMap.of(props);
+    }
+
+    @Test
+    void testGet() {
+        final BundleResourceValueMap map = create();
+        assertEquals(8, map.size());
+        assertEquals("foo/bar", map.getResourceType());
+        assertEquals("foo/base", map.getResourceSuperType());
+        assertEquals("Title", map.get("title"));
+        assertEquals("Title", map.get("title", String.class));
+        assertEquals(5L, map.get("rank"));
+        assertEquals(5L, map.get("rank", Number.class));
+        assertEquals(7, map.get("missing", 7));
+        assertEquals("Title", map.get("title", "default"));
+        assertTrue(map.containsKey("empty"));
+        assertNull(map.get("empty", String.class));
+        assertNull(map.get("missing"));
+        assertNull(map.get(42));
+        assertFalse(map.containsKey("missing"));
+        assertEquals(
+                Arrays.asList(
+                        "count",
+                        "date",
+                        "empty",
+                        "rank",
+                        BundleResourceValueMap.PROPERTY_RESOURCE_SUPER_TYPE,
+                        ResourceResolver.PROPERTY_RESOURCE_TYPE,
+                        "tags",
+                        "title"),
+                Arrays.asList(map.keySet().toArray()));
+    }
+
+    @Test
+    void testArraysAreShared() {
+        final BundleResourceValueMap map = create();
+        final String[] tags = (String[]) map.get("tags");
+        assertArrayEquals(new String[] {"a", "b"}, tags);
+        assertSame(tags, map.get("tags"));
+        assertSame(tags, map.get("tags", String[].class));
+        assertSame(tags, map.get("tags", Object[].class));
+        for (final Map.Entry<String, Object> entry : map.entrySet()) {
+            if ("tags".equals(entry.getKey())) {
+                assertSame(tags, entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    void testConversionIsCached() {
+        final BundleResourceValueMap map = spy(create());
+        final Integer rank = 5;
+        doReturn(rank).when(map).convert("rank", Integer.class);
+        doReturn("5").when(map).convert("rank", String.class);
+
+        assertSame(rank, map.get("rank", Integer.class));
+        assertSame(rank, map.get("rank", Integer.class));
+        verify(map, times(1)).convert("rank", Integer.class);
+
+        // only the last conversion is kept
+        assertEquals("5", map.get("rank", String.class));
+        assertSame(rank, map.get("rank", Integer.class));
+        verify(map, times(2)).convert("rank", Integer.class);
+        verify(map, times(1)).convert("rank", String.class);
+    }
+
+    @Test
+    void testEqualsComparesArraysByReference() {
+        final BundleResourceValueMap map = create();
+        final Map<String, Object> copy = new HashMap<>(map);
+        assertEquals(map, copy);
+        assertEquals(copy, map);
+        assertEquals(copy.hashCode(), map.hashCode());
+
+        // like any map, array values are compared by identity
+        copy.put("tags", new String[] {"a", "b"});
+        assertNotEquals(map, copy);
+        assertNotEquals(map, create());
+        copy.remove("tags");
+        assertNotEquals(map, copy);
+
+        final Map<String, Object> props = new HashMap<>(map);
+        props.remove("empty");
+        props.put("other", null);
+        assertNotEquals(map, BundleResourceValueMap.of(props));
+        assertNotEquals(map, props);
+    }
+
+    @Test
+    void testImmutable() {
+        final BundleResourceValueMap map = create();
+        assertThrows(UnsupportedOperationException.class, () -> map.put("title", "x"));
+        assertThrows(UnsupportedOperationException.class, () -> map.remove("title"));
+        assertThrows(UnsupportedOperationException.class, map::clear);
+        assertThrows(UnsupportedOperationException.class, () -> map.keySet().remove("title"));
+    }
+
+    @Test
+    void testShared() {
+        assertEquals(JcrConstants.NT_FILE, BundleResourceValueMap.FILE.getResourceType());
+        assertEquals(JcrConstants.NT_FOLDER, BundleResourceValueMap.FOLDER.getResourceType());
+        assertNull(BundleResourceValueMap.FILE.getResourceSuperType());
+        assertEquals(1, BundleResourceValueMap.FOLDER.size());
+    }
+}
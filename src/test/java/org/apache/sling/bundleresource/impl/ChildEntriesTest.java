@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChildEntriesTest {
+
+    @Test
+    void testSortedNames() {
+        final ChildEntries children = ChildEntries.of(
+                "/libs/foo/",
+                Collections.enumeration(
+                        Arrays.asList("libs/foo/b", "/libs/foo/a/", "libs/foo/c.json", "libs/foo/b", "/libs/bar")));
+        assertEquals(3, children.size());
+        assertEquals("a/", children.getName(0));
+        assertEquals("b", children.getName(1));
+        assertEquals("c.json", children.getName(2));
+        assertEquals(Arrays.asList("/libs/foo/a/", "/libs/foo/b", "/libs/foo/c.json"), children);
+    }
+
+    @Test
+    void testIgnoresNestedEntries() {
+        final ChildEntries children =
+                ChildEntries.of("/libs/foo/", Arrays.asList("/libs/foo/a/x", "/libs/foo/", "/libs/foo/b"));
+        assertEquals(Collections.singletonList("/libs/foo/b"), children);
+    }
+
+    @Test
+    void testLookup() {
+        final ChildEntries children = ChildEntries.of("/libs/foo/", Arrays.asList("/libs/foo/b", "/libs/foo/a/"));
+        assertEquals(0, children.indexOfName("a/"));
+        assertTrue(children.indexOfName("a") < 0);
+
+        assertTrue(children.contains("/libs/foo/b"));
+        assertFalse(children.contains("/libs/foo/a"));
+        assertFalse(children.contains("/libs/bar/b"));
+        assertEquals(1, children.indexOf("/libs/foo/b"));
+        assertEquals(-1, children.indexOf("/libs/foo/c"));
+        assertEquals(1, children.lastIndexOf("/libs/foo/b"));
+    }
+
+    @Test
+    void testEmpty() {
+        assertSame(ChildEntries.EMPTY, ChildEntries.of("/libs/foo/", Collections.emptyEnumeration()));
+        assertSame(ChildEntries.EMPTY, ChildEntries.of("/libs/foo/", (Enumeration<String>) null));
+        assertTrue(ChildEntries.EMPTY.isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChildResourceNamesTest {
+
+    private static final ChildEntries ENTRIES = ChildEntries.of(
+            "/libs/foo/", Arrays.asList("/libs/foo/b", "/libs/foo/a/", "/libs/foo/c.json", "/libs/foo/b.json"));
+
+    @Test
+    void testMerge() {
+        final Map<String, Object> subResources = new HashMap<>();
+        subResources.put("a", Collections.emptyMap());
+        subResources.put("b", Collections.emptyMap());
+        subResources.put("d", Collections.emptyMap());
+
+        final ChildResourceNames names = ChildResourceNames.merge(ENTRIES, ".json", subResources);
+        assertEquals(5, names.size());
+
+        // sorted by entry names, in which folders end with a slash
+        assertEquals("a", names.getName(0));
+        assertFalse(names.isFolder(0));
+        assertTrue(names.isSubResource(0));
+        assertEquals("a", names.getName(1));
+        assertTrue(names.isFolder(1));
+        assertTrue(names.isSubResource(1));
+
+        // the file hides the sub resource of the same name
+        assertEquals("b", names.getName(2));
+        assertFalse(names.isFolder(2));
+        assertFalse(names.isSubResource(2));
+
+        assertEquals("c", names.getName(3));
+        assertFalse(names.isSubResource(3));
+        assertEquals("d", names.getName(4));
+        assertTrue(names.isSubResource(4));
+    }
+
+    @Test
+    void testIsMergedFrom() {
+        final Map<String, Object> subResources = Collections.singletonMap("d", Collections.emptyMap());
+        final ChildResourceNames names = ChildResourceNames.merge(ENTRIES, ".json", subResources);
+        assertTrue(names.isMergedFrom(".json", subResources));
+        assertTrue(names.isMergedFrom(".json", new HashMap<>(subResources)));
+        assertFalse(names.isMergedFrom(".props", subResources));
+        assertFalse(names.isMergedFrom(".json", null));
+        assertFalse(names.isMergedFrom(".json", Collections.singletonMap("e", Collections.emptyMap())));
+
+        final ChildResourceNames plain = ChildResourceNames.merge(ENTRIES, ".json", null);
+        assertEquals(3, plain.size());
+        assertTrue(plain.isMergedFrom(".json", null));
+        assertTrue(plain.isMergedFrom(".json", Collections.emptyMap()));
+        assertFalse(plain.isMergedFrom(".json", subResources));
+    }
+}
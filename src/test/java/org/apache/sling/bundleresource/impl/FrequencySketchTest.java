@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void testCapacityIsPowerOfTwo() {
+        assertEquals(16, new FrequencySketch(0).getCapacity());
+        assertEquals(16, new FrequencySketch(16).getCapacity());
+        assertEquals(32, new FrequencySketch(17).getCapacity());
+        assertEquals(1024, new FrequencySketch(1000).getCapacity());
+    }
+
+    @Test
+    void testFrequency() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        sketch.increment("b");
+
+        assertEquals(5, sketch.frequency("a"));
+        assertEquals(1, sketch.frequency("b"));
+
+        // counters saturate
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    void testResizeKeepsFrequencies() {
+        final FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < i % 8; j++) {
+                sketch.increment("key" + i);
+            }
+        }
+        // accesses not drained yet are kept as well
+        sketch.record("recorded");
+        sketch.record("recorded");
+
+        final FrequencySketch resized = sketch.resize(1000);
+        assertEquals(1024, resized.getCapacity());
+        assertEquals(2, resized.frequency("recorded"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(sketch.frequency("key" + i), resized.frequency("key" + i));
+        }
+
+        // a sketch is never shrunk
+        assertSame(resized, resized.resize(16));
+    }
+
+    @Test
+    void testRecordedAccessesCountOnceDrained() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(sketch.record("a"));
+        }
+        assertEquals(0, sketch.frequency("a"));
+
+        sketch.drain();
+        assertEquals(3, sketch.frequency("a"));
+
+        // draining again does not count the same accesses twice
+        sketch.drain();
+        assertEquals(3, sketch.frequency("a"));
+    }
+
+    @Test
+    void testRecordingIsLossyOnceBufferIsFull() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        int full = 0;
+        for (int i = 0; i < 2 * FrequencySketch.BUFFER_SIZE; i++) {
+            if (sketch.record("key" + i)) {
+                full++;
+            }
+        }
+        assertEquals(2, full);
+
+        // only the accesses still in the buffer are counted
+        sketch.drain();
+        assertEquals(0, sketch.frequency("key0"));
+        assertEquals(1, sketch.frequency("key" + (2 * FrequencySketch.BUFFER_SIZE - 1)));
+    }
+
+    @Test
+    void testCountersAreHalvedPeriodically() {
+        final FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("a");
+        }
+
+        // ten accesses per counter of the sketch trigger the reset
+        for (int i = 0; i < 10 * 16; i++) {
+            sketch.increment("key" + i);
+        }
+        assertTrue(sketch.frequency("a") < 8, "Expected halved frequency: " + sketch.frequency("a"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonPropertiesMapTest {
+
+    private static JsonPropertiesMap read(final String json) throws IOException {
+        return JsonProperties.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testNestedObjectsAreIndexed() throws IOException {
+        final JsonPropertiesMap root =
+                read("{\"p\":1,\"b\":{\"q\":true,\"d\":{\"r\":\"x\"}},\"a\":{},\"c/d\":{\"e\":{}}}");
+        assertEquals(4, root.size());
+        assertEquals(1L, root.get("p"));
+        assertEquals(Arrays.asList("a", "b", "c/d"), root.getChildNames());
+
+        final JsonPropertiesMap b = (JsonPropertiesMap) root.get("b");
+        assertSame(b, root.getDescendant("b"));
+        assertSame(b.get("d"), root.getDescendant("b/d"));
+        assertSame(b.get("d"), b.getDescendant("d"));
+        assertEquals("x", b.getDescendant("d").get("r"));
+        assertNull(root.getDescendant("b/q"));
+        assertNull(root.getDescendant("missing"));
+
+        // names with a slash are not addressable by a path
+        assertNull(root.getDescendant("c/d"));
+        assertNull(root.getDescendant("c/d/e"));
+        final JsonPropertiesMap cd = (JsonPropertiesMap) root.get("c/d");
+        assertSame(cd.get("e"), cd.getDescendant("e"));
+    }
+
+    @Test
+    void testMapsAreUnmodifiable() throws IOException {
+        final JsonPropertiesMap root = read("{\"a\":{\"b\":[1,2]}}");
+        final Map<String, Object> a = root.getDescendant("a");
+        assertThrows(UnsupportedOperationException.class, () -> root.put("x", "y"));
+        assertThrows(UnsupportedOperationException.class, () -> a.remove("b"));
+        assertThrows(
+                UnsupportedOperationException.class, () -> root.getChildNames().clear());
+    }
+}
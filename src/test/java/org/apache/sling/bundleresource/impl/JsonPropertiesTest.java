@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.json.stream.JsonParsingException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonPropertiesTest {
+
+    private static JsonPropertiesMap read(final String json) throws IOException {
+        return JsonProperties.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testValues() throws IOException {
+        final Map<String, Object> props =
+                read("{\"s\":\"x\",\"l\":42,\"d\":1.5,\"t\":true,\"f\":false,\"n\":null,\"o\":{\"a\":1}}");
+        assertEquals("x", props.get("s"));
+        assertEquals(42L, props.get("l"));
+        assertEquals(1.5d, props.get("d"));
+        assertEquals(Boolean.TRUE, props.get("t"));
+        assertEquals(Boolean.FALSE, props.get("f"));
+        assertTrue(props.containsKey("n"));
+        assertNull(props.get("n"));
+        assertEquals(Collections.singletonMap("a", 1L), props.get("o"));
+    }
+
+    @Test
+    void testArrays() throws IOException {
+        final Map<String, Object> props = read("{\"s\":[\"a\",\"b\"],\"l\":[1,2],\"d\":[1.5,2.5],\"b\":[true,false],"
+                + "\"e\":[],\"m\":[\"a\",1,null],\"n\":[[1],{\"x\":\"y\"}]}");
+        assertArrayEquals(new String[] {"a", "b"}, (String[]) props.get("s"));
+        assertArrayEquals(new long[] {1, 2}, (long[]) props.get("l"));
+        assertArrayEquals(new double[] {1.5, 2.5}, (double[]) props.get("d"));
+        assertArrayEquals(new boolean[] {true, false}, (boolean[]) props.get("b"));
+        assertArrayEquals(new String[0], (String[]) props.get("e"));
+        assertEquals(Arrays.asList("a", 1L, null), props.get("m"));
+
+        final List<?> nested = assertInstanceOf(List.class, props.get("n"));
+        assertArrayEquals(new long[] {1}, (long[]) nested.get(0));
+        assertEquals(Collections.singletonMap("x", "y"), nested.get(1));
+        assertThrows(UnsupportedOperationException.class, () -> nested.remove(0));
+    }
+
+    @Test
+    void testMixedNumberArraysKeepLongs() throws IOException {
+        // 2^53 + 1 cannot be represented as a double
+        final Map<String, Object> props = read("{\"m\":[9007199254740993,1.5],\"x\":[1.5,9007199254740993]}");
+        assertEquals(Arrays.asList(9007199254740993L, 1.5d), props.get("m"));
+        assertEquals(Arrays.asList(1.5d, 9007199254740993L), props.get("x"));
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IOException.class, () -> read("[1,2]"));
+        assertThrows(JsonParsingException.class, () -> read("{\"a\":"));
+    }
+}
@@ -21,7 +21,9 @@ package org.apache.sling.bundleresource.impl;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PathMappingTest {
 
@@ -46,4 +48,78 @@ class PathMappingTest {
         assertEquals("/libs/foo/", paths[0].getResourceRootPrefix());
         assertEquals(".json", paths[0].getJSONPropertiesExtension());
     }
+
+    @Test
+    void testCacheLimitDirectives() {
+        final PathMapping[] paths = PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_ENTRY_CACHE_LIMIT + ":=1000;"
+                + PathMapping.DIR_LIST_CACHE_LIMIT + ":=100,/libs/bar;" + PathMapping.DIR_ENTRY_CACHE_LIMIT
+                + ":=invalid");
+        assertEquals(2, paths.length);
+        assertEquals(1000, paths[0].getEntryCacheLimit());
+        assertEquals(100, paths[0].getListCacheLimit());
+        assertEquals(0, paths[1].getEntryCacheLimit());
+        assertEquals(0, paths[1].getListCacheLimit());
+    }
+
+    @Test
+    void testIsChild() {
+        final PathMapping path = PathMapping.getRoots("/libs/foo")[0];
+        assertTrue(path.isChild("/libs/foo"));
+        assertTrue(path.isChild("/libs/foo/"));
+        assertTrue(path.isChild("/libs/foo/bar"));
+        assertFalse(path.isChild("/libs/foobar"));
+        assertFalse(path.isChild("/libs/fo"));
+        assertFalse(path.isChild("/libs"));
+    }
+
+    @Test
+    void testEntryPathWithoutEntryRoot() {
+        final PathMapping path = PathMapping.getRoots("/libs/foo")[0];
+        assertEquals("/libs/foo/bar", path.getEntryPath("/libs/foo/bar"));
+        assertEquals("/libs/foo/bar/", path.getEntryPath("/libs/foo/bar", "/"));
+        assertEquals("/libs/foo/bar.json", path.getEntryPath("/libs/foo/bar", ".json"));
+        assertEquals("/libs/foo/bar", path.getResourcePath("/libs/foo/bar"));
+    }
+
+    @Test
+    void testEntryPathWithEntryRoot() {
+        final PathMapping path = PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_PATH + ":=/SLING-INF/foo")[0];
+        assertEquals("/SLING-INF/foo", path.getEntryPath("/libs/foo"));
+        assertEquals("/SLING-INF/foo/", path.getEntryPath("/libs/foo", "/"));
+        assertEquals("/SLING-INF/foo/", path.getEntryPath("/libs/foo/"));
+        assertEquals("/SLING-INF/foo/bar/x", path.getEntryPath("/libs/foo/bar/x"));
+        assertEquals("/SLING-INF/foo/bar/", path.getEntryPath("/libs/foo/bar", "/"));
+        assertEquals("/SLING-INF/foo/bar.json", path.getEntryPath("/libs/foo/bar", ".json"));
+        assertNull(path.getEntryPath("/libs/foobar"));
+        assertNull(path.getEntryPath("/libs/foobar", "/"));
+
+        assertEquals("/libs/foo", path.getResourcePath("/SLING-INF/foo"));
+        assertEquals("/libs/foo/bar", path.getResourcePath("/SLING-INF/foo/bar"));
+        assertNull(path.getResourcePath("/SLING-INF/foobar"));
+    }
+
+    @Test
+    void testEntryRootFolder() {
+        assertEquals("/libs/foo/", PathMapping.getRoots("/libs/foo")[0].getEntryRootFolder());
+        assertEquals(
+                "/SLING-INF/foo/",
+                PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_PATH + ":=/SLING-INF/foo")[0].getEntryRootFolder());
+
+        // a root of / is the root folder of the bundle
+        final PathMapping root = PathMapping.getRoots("/")[0];
+        assertNull(root.getEntryPath(root.getResourceRoot()));
+        assertEquals("/", root.getEntryRootFolder());
+        final PathMapping entryRoot = PathMapping.getRoots("/libs/foo;" + PathMapping.DIR_PATH + ":=/")[0];
+        assertEquals("/", entryRoot.getEntryRootFolder());
+        assertEquals("/bar", entryRoot.getEntryPath("/libs/foo/bar"));
+    }
+
+    @Test
+    void testEntryPathOfMappedFile() {
+        // SLING-10140 - the JSON properties of a mapped file are its sibling
+        final PathMapping path = new PathMapping("/libs/foo/test.txt", "/SLING-INF/libs/foo/test.txt", "json");
+        assertEquals(
+                "/SLING-INF/libs/foo/test.txt.json",
+                path.getEntryPath("/libs/foo/test.txt", path.getJSONPropertiesExtension()));
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import java.util.Collections;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceDecorator;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.security.ResourceAccessSecurity;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResolverBypassTest {
+
+    private final ResourceResolver resolver = mock(ResourceResolver.class);
+
+    private ArgumentCaptor<ServiceListener> listeners;
+
+    private ArgumentCaptor<String> filters;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final BundleContext context = mock(BundleContext.class);
+        ResolverBypass.open(context);
+
+        listeners = ArgumentCaptor.forClass(ServiceListener.class);
+        filters = ArgumentCaptor.forClass(String.class);
+        verify(context, times(3)).addServiceListener(listeners.capture(), filters.capture());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ResolverBypass.close();
+    }
+
+    @Test
+    void testProviderMountedBelowResource() {
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+
+        final ServiceReference<?> provider = mockProvider("/libs/foo/bar/baz");
+        fire(ResourceProvider.class, ServiceEvent.REGISTERED, provider);
+        assertFalse(ResolverBypass.isAllowed(resolver, "/", 1L));
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo/bar", 1L));
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo/bar/baz", 1L));
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo/bar/baz/qux", 1L));
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo/other", 1L));
+
+        // resources without resolver are always resolved directly
+        assertTrue(ResolverBypass.isAllowed(null, "/libs/foo", 1L));
+
+        fire(ResourceProvider.class, ServiceEvent.UNREGISTERING, provider);
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+    }
+
+    @Test
+    void testProviderMountedAtResource() {
+        final ServiceReference<?> own = mockProvider("/libs/foo");
+        when(own.getProperty(BundleResourceProvider.PROP_BUNDLE)).thenReturn(1L);
+        fire(ResourceProvider.class, ServiceEvent.REGISTERED, own);
+
+        // the registrations of the bundle of the resource are ignored
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 2L));
+
+        // another bundle providing resources at the same root
+        final ServiceReference<?> bundle = mockProvider("/libs/foo");
+        when(bundle.getProperty(BundleResourceProvider.PROP_BUNDLE)).thenReturn(2L);
+        fire(ResourceProvider.class, ServiceEvent.REGISTERED, bundle);
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+        fire(ResourceProvider.class, ServiceEvent.UNREGISTERING, bundle);
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+
+        // any other resource provider mounted at the path of the resource
+        final ServiceReference<?> other = mockProvider("/libs/foo");
+        fire(ResourceProvider.class, ServiceEvent.REGISTERED, other);
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo/bar", 1L));
+        fire(ResourceProvider.class, ServiceEvent.UNREGISTERING, other);
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+    }
+
+    @Test
+    void testResolverServices() {
+        final ServiceReference<?> decorator = mock(ServiceReference.class);
+        final ServiceReference<?> security = mock(ServiceReference.class);
+        fire(ResourceDecorator.class, ServiceEvent.REGISTERED, decorator);
+        fire(ResourceAccessSecurity.class, ServiceEvent.REGISTERED, security);
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+
+        fire(ResourceDecorator.class, ServiceEvent.UNREGISTERING, decorator);
+        assertFalse(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+        fire(ResourceAccessSecurity.class, ServiceEvent.UNREGISTERING, security);
+        assertTrue(ResolverBypass.isAllowed(resolver, "/libs/foo", 1L));
+    }
+
+    @Test
+    void testChildrenOfResourceAreResolvedByResolver() {
+        final Bundle bundle = mock(Bundle.class);
+        final BundleResourceCache cache = mock(BundleResourceCache.class);
+        when(cache.getBundle()).thenReturn(bundle);
+        final BundleResource resource = new BundleResource(
+                resolver, cache, new PathMapping("/libs/foo", null, null), "/libs/foo", Collections.emptyMap(), true);
+
+        fire(ResourceDecorator.class, ServiceEvent.REGISTERED, mock(ServiceReference.class));
+        final Resource child = mock(Resource.class);
+        when(resolver.getResource(resource, "child")).thenReturn(child);
+        when(resolver.hasChildren(resource)).thenReturn(true);
+        assertSame(child, resource.getChild("child"));
+        assertTrue(resource.hasChildren());
+        verify(cache, never()).getEntryPaths(anyString(), anyBoolean());
+    }
+
+    private ServiceReference<?> mockProvider(final String root) {
+        final ServiceReference<?> reference = mock(ServiceReference.class);
+        when(reference.getProperty(ResourceProvider.PROPERTY_ROOT)).thenReturn(root);
+        return reference;
+    }
+
+    private void fire(final Class<?> type, final int eventType, final ServiceReference<?> reference) {
+        for (int i = 0; i < filters.getAllValues().size(); i++) {
+            if (filters.getAllValues().get(i).contains(type.getName())) {
+                listeners.getAllValues().get(i).serviceChanged(new ServiceEvent(eventType, reference));
+            }
+        }
+    }
+}